@@ -596,6 +596,8 @@ public class Parser {
         // first add tables to database
         Database.getCatalog().loadSchema(argv[0]);
         TableStats.computeStatistics();
+        // 后台加载上次检查点时缓冲池中的页
+        Database.getBufferPool().warmUp(Database.getLogFile().getHotPagesFile());
 
         String queryFile = null;
 
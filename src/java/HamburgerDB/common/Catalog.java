@@ -1,7 +1,11 @@
 package HamburgerDB.common;
 
+import HamburgerDB.index.BTreeFile;
+import HamburgerDB.storage.BufferPool;
+import HamburgerDB.storage.ColumnarFile;
 import HamburgerDB.storage.DbFile;
 import HamburgerDB.storage.HeapFile;
+import HamburgerDB.storage.HeapPageFormat;
 import HamburgerDB.storage.TupleDesc;
 
 import java.io.BufferedReader;
@@ -173,6 +177,84 @@ public class Catalog {
         throw new NoSuchElementException("not found DbFile for table" + tableId);
     }
 
+    /**
+     * Serve the pages of a heap file table from a memory mapping of its file,
+     * see {@link HeapFile#setMemoryMapped}. Meant for large tables that are
+     * read much more than they are written. In a catalog file, a table is
+     * mapped by putting the option mmap after its schema.
+     *
+     * @throws NoSuchElementException   if the table doesn't exist
+     * @throws IllegalArgumentException if the table is not stored in a heap
+     *                                  file
+     */
+    public void setMemoryMapped(int tableId, boolean enabled) {
+        DbFile file = getDatabaseFile(tableId);
+        if (!(file instanceof HeapFile)) {
+            throw new IllegalArgumentException("table " + tableId + " is not a heap file");
+        }
+        ((HeapFile) file).setMemoryMapped(enabled);
+    }
+
+    /**
+     * Choose the page format of a heap file table, see
+     * {@link HeapFile#setPageFormat}. In a catalog file, a table gets slotted
+     * pages with variable-length records by putting the option slotted after
+     * its schema. Likewise, the option compressed keeps the pages of a table
+     * compressed on disk, see {@link HeapFile#HeapFile(File, TupleDesc, boolean)},
+     * and the option columnar stores the table column by column in a
+     * {@link ColumnarFile}.
+     *
+     * @throws NoSuchElementException   if the table doesn't exist
+     * @throws IllegalArgumentException if the table is not stored in a heap
+     *                                  file
+     */
+    public void setPageFormat(int tableId, HeapPageFormat format) {
+        DbFile file = getDatabaseFile(tableId);
+        if (!(file instanceof HeapFile)) {
+            throw new IllegalArgumentException("table " + tableId + " is not a heap file");
+        }
+        ((HeapFile) file).setPageFormat(format);
+    }
+
+    /**
+     * Choose the size of the pages of a table, see {@link HeapFile#setPageSize}
+     * and {@link ColumnarFile#setPageSize}. It must be set before the table
+     * holds pages and is not stored in the table file, so a table must always
+     * be opened with the same page size. In a catalog file, a table gets
+     * pages of 16 KB by putting the option pagesize=16k (or pagesize=16384)
+     * after its schema.
+     *
+     * @throws NoSuchElementException   if the table doesn't exist
+     * @throws IllegalArgumentException if the table cannot choose its page
+     *                                  size or the size is not allowed, see
+     *                                  {@link BufferPool#checkPageSize}
+     */
+    public void setPageSize(int tableId, int pageSize) {
+        DbFile file = getDatabaseFile(tableId);
+        if (file instanceof HeapFile) {
+            ((HeapFile) file).setPageSize(pageSize);
+        } else if (file instanceof ColumnarFile) {
+            ((ColumnarFile) file).setPageSize(pageSize);
+        } else if (file instanceof BTreeFile) {
+            ((BTreeFile) file).setPageSize(pageSize);
+        } else {
+            throw new IllegalArgumentException("table " + tableId + " cannot choose its page size");
+        }
+    }
+
+    /**
+     * Parse the value of a pagesize option: a number of bytes, or of
+     * kilobytes if it ends in k.
+     *
+     * @throws NumberFormatException if the value is not a number
+     */
+    private static int parsePageSize(String value) {
+        if (value.endsWith("k") || value.endsWith("K")) {
+            return Integer.parseInt(value.substring(0, value.length() - 1)) * 1024;
+        }
+        return Integer.parseInt(value);
+    }
+
     public String getPrimaryKey(int tableId) {
         // some code goes here
         Table table = this.integerTableMap.getOrDefault(tableId, null);
@@ -223,10 +305,11 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(catalogFile));
 
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [option ...]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                String options = line.substring(line.indexOf(")") + 1).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<>();
                 ArrayList<Type> types = new ArrayList<>();
@@ -254,14 +337,57 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
-                addTable(tabHf, name, primaryKey);
+                // 存储方式和压缩决定文件格式，要在创建文件之前确定
+                List<String> tableOptions = new ArrayList<>(Arrays.asList(options.split("\\s+")));
+                tableOptions.removeIf(String::isEmpty);
+                boolean compressed = tableOptions.removeIf(o -> o.equalsIgnoreCase("compressed"));
+                boolean columnar = tableOptions.removeIf(o -> o.equalsIgnoreCase("columnar"));
+                int pageSize = 0;
+                for (Iterator<String> it = tableOptions.iterator(); it.hasNext(); ) {
+                    String option = it.next();
+                    if (option.toLowerCase().startsWith("pagesize=")) {
+                        pageSize = parsePageSize(option.substring("pagesize=".length()));
+                        BufferPool.checkPageSize(pageSize);
+                        it.remove();
+                    }
+                }
+                File dataFile = new File(baseFolder + "/" + name + ".dat");
+                DbFile tabFile;
+                if (columnar) {
+                    if (!tableOptions.isEmpty()) {
+                        System.out.println("Table option " + tableOptions.get(0) + " does not apply to columnar tables");
+                        System.exit(0);
+                    }
+                    ColumnarFile tabCf = new ColumnarFile(dataFile, t, compressed);
+                    if (pageSize > 0) {
+                        tabCf.setPageSize(pageSize);
+                    }
+                    tabFile = tabCf;
+                } else {
+                    HeapFile tabHf = new HeapFile(dataFile, t, compressed);
+                    if (pageSize > 0) {
+                        tabHf.setPageSize(pageSize);
+                    }
+                    // 表级选项
+                    for (String option : tableOptions) {
+                        if (option.equalsIgnoreCase("mmap")) {
+                            tabHf.setMemoryMapped(true);
+                        } else if (option.equalsIgnoreCase("slotted")) {
+                            tabHf.setPageFormat(HeapPageFormat.SLOTTED);
+                        } else {
+                            System.out.println("Unknown table option " + option);
+                            System.exit(0);
+                        }
+                    }
+                    tabFile = tabHf;
+                }
+                addTable(tabFile, name, primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
-        } catch (IndexOutOfBoundsException e) {
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
             System.out.println("Invalid catalog entry : " + line);
             System.exit(0);
         }
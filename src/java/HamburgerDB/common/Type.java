@@ -6,6 +6,8 @@ import HamburgerDB.storage.IntField;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -29,6 +31,15 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                return new IntField(buf.getInt());
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -47,6 +58,60 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                int start = buf.position();
+                int strLen = buf.getInt();
+                if (strLen < 0 || strLen > STRING_LEN) {
+                    throw new ParseException("bad string length " + strLen, start);
+                }
+                byte[] bs = new byte[strLen];
+                buf.get(bs);
+                buf.position(start + getLen());
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public int getCompactLen(Field f) {
+            return 2 + Math.min(((StringField) f).getValue().length(), STRING_LEN);
+        }
+
+        @Override
+        public void serializeCompact(Field f, ByteBuffer buf) {
+            String s = ((StringField) f).getValue();
+            int len = Math.min(s.length(), STRING_LEN);
+            buf.putShort((short) len);
+            // 与serialize一样，每个字符只写低8位，但不补齐到STRING_LEN
+            for (int i = 0; i < len; i++) {
+                buf.put((byte) s.charAt(i));
+            }
+        }
+
+        @Override
+        public Field parseCompact(ByteBuffer buf) throws ParseException {
+            try {
+                int strLen = buf.getShort() & 0xffff;
+                if (strLen > STRING_LEN) {
+                    throw new ParseException("bad string length " + strLen, buf.position() - 2);
+                }
+                byte[] bs = new byte[strLen];
+                buf.get(bs);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public void skipCompact(ByteBuffer buf) {
+            int strLen = buf.getShort() & 0xffff;
+            buf.position(buf.position() + strLen);
+        }
     };
 
     public static final int STRING_LEN = 128;
@@ -66,4 +131,48 @@ public enum Type implements Serializable {
      */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+    /**
+     * @param buf The buffer to read from, starting at its position
+     * @return a Field object of the same type as this object that has contents
+     * read from the specified buffer. The position of buf is advanced by
+     * {@link #getLen()}.
+     * @throws ParseException if the data read from the buffer is not of the
+     *                        appropriate type.
+     */
+    public abstract Field parse(ByteBuffer buf) throws ParseException;
+
+    /**
+     * The compact encoding stores a field in as few bytes as its value needs,
+     * e.g. a string without the padding to {@link #STRING_LEN}. It is used by
+     * formats with variable-length records.
+     *
+     * @return the number of bytes f takes in the compact encoding
+     */
+    public int getCompactLen(Field f) {
+        return getLen();
+    }
+
+    /**
+     * Write f in the compact encoding at the position of buf.
+     */
+    public void serializeCompact(Field f, ByteBuffer buf) {
+        f.serialize(buf);
+    }
+
+    /**
+     * Read a field in the compact encoding from the position of buf.
+     *
+     * @throws ParseException if the data is not a field of this type
+     */
+    public Field parseCompact(ByteBuffer buf) throws ParseException {
+        return parse(buf);
+    }
+
+    /**
+     * Advance the position of buf past a field in the compact encoding.
+     */
+    public void skipCompact(ByteBuffer buf) {
+        buf.position(buf.position() + getLen());
+    }
+
 }
@@ -13,6 +13,7 @@ import HamburgerDB.transaction.TransactionId;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Inserts tuples read from the child operator into the tableId specified in the
@@ -21,6 +22,12 @@ import java.util.Iterator;
 public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of child tuples handed to the buffer pool at a time.
+     */
+    public static final int BATCH_SIZE = 1024;
+
     private TransactionId t;
     private OpIterator child;
     private int tableId;
@@ -57,13 +64,18 @@ public class Insert extends Operator {
         // some code goes here
         child.open();
         int count = 0;
+        //攒够一批再插入，一页可以一次填满
+        List<Tuple> batch = new ArrayList<>();
         while (child.hasNext()) {
-            Tuple next = child.next();
+            batch.add(child.next());
             count++;
-            try {
-                Database.getBufferPool().insertTuple(this.t, this.tableId, next);
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (batch.size() == BATCH_SIZE || !child.hasNext()) {
+                try {
+                    Database.getBufferPool().insertTuples(this.t, this.tableId, batch);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                batch = new ArrayList<>();
             }
         }
         Tuple tuple = new Tuple(getTupleDesc());
@@ -114,13 +114,17 @@ public class Query implements Serializable {
         System.out.println();
 
         this.start();
-        int cnt = 0;
-        while (this.hasNext()) {
-            Tuple tup = this.next();
-            System.out.println(tup);
-            cnt++;
+        try {
+            int cnt = 0;
+            while (this.hasNext()) {
+                Tuple tup = this.next();
+                System.out.println(tup);
+                cnt++;
+            }
+            System.out.println("\n " + cnt + " rows.");
+        } finally {
+            //出错时也要关闭，放开迭代器钉住的页
+            this.close();
         }
-        System.out.println("\n " + cnt + " rows.");
-        this.close();
     }
 }
@@ -1,6 +1,8 @@
 package HamburgerDB.execution;
 
 import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.storage.BufferAccessStrategy;
 import HamburgerDB.storage.DbFile;
 import HamburgerDB.transaction.TransactionAbortedException;
 import HamburgerDB.transaction.TransactionId;
@@ -25,6 +27,9 @@ public class SeqScan implements OpIterator {
     private int tableId;
     private String tableAlias;
     private DbFileIterator dbFileIterator;
+    private int[] columns;
+    //整表加一个读锁，不再逐页加锁
+    private boolean lockTable;
 
 
     /**
@@ -86,10 +91,39 @@ public class SeqScan implements OpIterator {
         this.tableAlias = tableAlias;
     }
 
+    /**
+     * Tell the scan which fields of the table the plan above it uses. Files
+     * that store columns apart then read only those columns, and the other
+     * fields of the returned tuples are null.
+     *
+     * @param columns the indexes of the fields used, or null for all of them
+     */
+    public void setColumns(int[] columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Choose whether the scan locks the whole table in shared mode when it
+     * opens, instead of locking each page as it reads it. Worth it when the
+     * scan reads many pages, as each page lock costs a call into the lock
+     * manager and memory until the transaction ends.
+     */
+    public void setLockTable(boolean lockTable) {
+        this.lockTable = lockTable;
+    }
+
+    public boolean isLockTable() {
+        return lockTable;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
+        if (lockTable) {
+            Database.getBufferPool().lockTable(this.transactionId, this.tableId, Permissions.READ_ONLY);
+        }
         DbFile dbFile = Database.getCatalog().getDatabaseFile(this.tableId);
-        DbFileIterator iterator = dbFile.iterator(this.transactionId);
+        //大表的顺序扫描使用环形缓冲区，避免冲掉缓冲池中的热点页
+        DbFileIterator iterator = dbFile.iterator(this.transactionId, BufferAccessStrategy.forScan(dbFile), columns);
         this.dbFileIterator = iterator;
         iterator.open();
     }
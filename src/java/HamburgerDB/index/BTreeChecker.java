@@ -68,18 +68,19 @@ public class BTreeChecker {
     public static void checkRep(BTreeFile bt, TransactionId tid, Map<PageId, Page> dirtypages,
                                 boolean checkOccupancy) throws
             DbException, IOException, TransactionAbortedException {
-        BTreeRootPtrPage rtptr = bt.getRootPtrPage(tid, dirtypages);
+        BTreeFile.PinnedPages pages = new BTreeFile.PinnedPages(dirtypages);
+        BTreeRootPtrPage rtptr = bt.getRootPtrPage(tid, pages);
 
         if (rtptr.getRootId() == null) { // non existent root is a legal state.
         } else {
-            SubtreeSummary res = checkSubTree(bt, tid, dirtypages,
+            SubtreeSummary res = checkSubTree(bt, tid, pages,
                     rtptr.getRootId(), null, null, rtptr.getId(), checkOccupancy, 0);
             assert (res.ptrLeft == null);
             assert (res.ptrRight == null);
         }
     }
 
-    static SubtreeSummary checkSubTree(BTreeFile bt, TransactionId tid, Map<PageId, Page> dirtypages,
+    static SubtreeSummary checkSubTree(BTreeFile bt, TransactionId tid, BTreeFile.PinnedPages dirtypages,
                                        BTreePageId pageId, Field lowerBound, Field upperBound,
                                        BTreePageId parentId, boolean checkOccupancy, int depth) throws
             TransactionAbortedException, DbException {
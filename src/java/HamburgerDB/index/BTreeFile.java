@@ -32,6 +32,9 @@ public class BTreeFile implements DbFile {
     private final TupleDesc td;
     private final int tableid;
     private final int keyField;
+    private final PageStore store;
+    // 0表示使用BufferPool的默认页大小
+    private volatile int pageSize;
 
     /**
      * Constructs a B+ tree file backed by the specified file.
@@ -42,10 +45,25 @@ public class BTreeFile implements DbFile {
      * @param td  - the tuple descriptor of tuples in the file
      */
     public BTreeFile(File f, int key, TupleDesc td) {
+        this(f, key, td, false);
+    }
+
+    /**
+     * Constructs a B+ tree file backed by the specified file, whose pages are
+     * kept compressed on disk if compressed is set, see
+     * {@link CompressedPageStore}. A file must always be opened the same way.
+     *
+     * @param f   - the file that stores the on-disk backing store for this B+ tree
+     *            file.
+     * @param key - the field which index is keyed on
+     * @param td  - the tuple descriptor of tuples in the file
+     */
+    public BTreeFile(File f, int key, TupleDesc td, boolean compressed) {
         this.f = f;
         this.tableid = f.getAbsoluteFile().hashCode();
         this.keyField = key;
         this.td = td;
+        this.store = compressed ? new CompressedPageStore(f) : new PageStore(f);
     }
 
     /**
@@ -87,31 +105,20 @@ public class BTreeFile implements DbFile {
     public Page readPage(PageId pid) {
         BTreePageId id = (BTreePageId) pid;
 
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f))) {
+        try {
             if (id.pgcateg() == BTreePageId.ROOT_PTR) {
                 //指向根节点指针
-                byte[] pageBuf = new byte[BTreeRootPtrPage.getPageSize()];
-                int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
-                if (retval == -1) {
+                byte[] pageBuf = store.read(0, BTreeRootPtrPage.getPageSize());
+                if (pageBuf == null) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
-                if (retval < BTreeRootPtrPage.getPageSize()) {
-                    throw new IllegalArgumentException("Unable to read " + BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
-                }
                 Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
                 return new BTreeRootPtrPage(id, pageBuf);
             } else {
-                byte[] pageBuf = new byte[BufferPool.getPageSize()];
-                if (bis.skip(BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) != BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException("Unable to seek to correct place in BTreeFile");
-                }
-                int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
-                if (retval == -1) {
+                byte[] pageBuf = store.read(pageOffset(id.getPageNumber()), getPageSize());
+                if (pageBuf == null) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
-                if (retval < BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException("Unable to read " + BufferPool.getPageSize() + " bytes from BTreeFile");
-                }
                 Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
                 //分别是三种节点
                 if (id.pgcateg() == BTreePageId.INTERNAL) {
@@ -125,8 +132,6 @@ public class BTreeFile implements DbFile {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Close the file on success or error
-        // Ignore failures closing the file
     }
 
     /**
@@ -138,24 +143,94 @@ public class BTreeFile implements DbFile {
     public void writePage(Page page) throws IOException {
         BTreePageId id = (BTreePageId) page.getId();
 
-        byte[] data = page.getPageData();
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
         if (id.pgcateg() == BTreePageId.ROOT_PTR) {
-            rf.write(data);
-            rf.close();
+            store.write(0, page.getPageData());
         } else {
-            rf.seek(BTreeRootPtrPage.getPageSize() + (long) (page.getId().getPageNumber() - 1) * BufferPool.getPageSize());
-            rf.write(data);
-            rf.close();
+            store.write(pageOffset(id.getPageNumber()), page, getPageSize());
         }
     }
 
+    /**
+     * Write several pages to disk, coalescing pages with adjacent page
+     * numbers into one write. This should not be called directly but should
+     * be called from the BufferPool when pages are flushed to disk
+     *
+     * @param pages - the pages to write, sorted by page number
+     */
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        int size = getPageSize();
+        int i = 0;
+        while (i < pages.size()) {
+            BTreePageId id = (BTreePageId) pages.get(i).getId();
+            if (id.pgcateg() == BTreePageId.ROOT_PTR) {
+                store.write(0, pages.get(i).getPageData());
+                i++;
+                continue;
+            }
+            int j = i + 1;
+            while (j < pages.size()
+                    && pages.get(j).getId().getPageNumber() == pages.get(j - 1).getId().getPageNumber() + 1) {
+                j++;
+            }
+            store.write(pageOffset(id.getPageNumber()), pages.subList(i, j), size);
+            i = j;
+        }
+    }
+
+    /**
+     * Returns the offset in the file of the page with the given page number.
+     * The root pointer page comes first, followed by page 1, page 2, ...
+     */
+    private long pageOffset(int pageNumber) {
+        return BTreeRootPtrPage.getPageSize() + (long) (pageNumber - 1) * getPageSize();
+    }
+
+    /**
+     * Returns the PageStore this BTreeFile reads and writes its pages through.
+     */
+    public PageStore getPageStore() {
+        return store;
+    }
+
     /**
      * Returns the number of pages in this BTreeFile.
      */
     public int numPages() {
         // we only ever write full pages
-        return (int) ((f.length() - BTreeRootPtrPage.getPageSize()) / BufferPool.getPageSize());
+        try {
+            return (int) ((store.length() - BTreeRootPtrPage.getPageSize()) / getPageSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Choose the size of the pages of this file other than the root pointer
+     * page, which defaults to {@link BufferPool#getPageSize()}. Larger leaves
+     * make range scans read fewer pages and the tree shallower. It must be
+     * set before the file holds pages.
+     *
+     * @throws IllegalArgumentException if the size is not allowed, see
+     *                                  {@link BufferPool#checkPageSize}
+     */
+    public void setPageSize(int pageSize) {
+        BufferPool.checkPageSize(pageSize);
+        this.pageSize = pageSize;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public int getPageSize() {
+        int size = pageSize;
+        return size > 0 ? size : BufferPool.getPageSize();
+    }
+
+    /**
+     * Returns whether the pages of this BTreeFile are compressed on disk.
+     */
+    public boolean isCompressed() {
+        return store instanceof CompressedPageStore;
     }
 
     /**
@@ -180,7 +255,7 @@ public class BTreeFile implements DbFile {
      * @param f          - the field to search for
      * @return the left-most leaf page possibly containing the key field f
      */
-    private BTreeLeafPage findLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Permissions perm, Field f) throws DbException, TransactionAbortedException {
+    private BTreeLeafPage findLeafPage(TransactionId tid, PinnedPages dirtypages, BTreePageId pid, Permissions perm, Field f) throws DbException, TransactionAbortedException {
         // some code goes here
         //1. 如果是叶子节点，直接返回
         if (pid.pgcateg() == BTreePageId.LEAF) {
@@ -223,10 +298,10 @@ public class BTreeFile implements DbFile {
      * @param pid - the current page being searched
      * @param f   - the field to search for
      * @return the left-most leaf page possibly containing the key field f
-     * @see #findLeafPage(TransactionId, Map, BTreePageId, Permissions, Field)
+     * @see #findLeafPage(TransactionId, PinnedPages, BTreePageId, Permissions, Field)
      */
     BTreeLeafPage findLeafPage(TransactionId tid, BTreePageId pid, Field f) throws DbException, TransactionAbortedException {
-        return findLeafPage(tid, new HashMap<>(), pid, Permissions.READ_ONLY, f);
+        return findLeafPage(tid, new PinnedPages(new HashMap<>()), pid, Permissions.READ_ONLY, f);
     }
 
     /**
@@ -247,9 +322,13 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #getParentWithEmptySlots(TransactionId, Map, BTreePageId, Field)
+     * @see #getParentWithEmptySlots(TransactionId, PinnedPages, BTreePageId, Field)
      */
     public BTreeLeafPage splitLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage page, Field field) throws DbException, IOException, TransactionAbortedException {
+        return splitLeafPage(tid, new PinnedPages(dirtypages), page, field);
+    }
+
+    private BTreeLeafPage splitLeafPage(TransactionId tid, PinnedPages dirtypages, BTreeLeafPage page, Field field) throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         //
         // Split the leaf page by adding a new page on the right of the existing
@@ -318,10 +397,14 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #getParentWithEmptySlots(TransactionId, Map, BTreePageId, Field)
-     * @see #updateParentPointers(TransactionId, Map, BTreeInternalPage)
+     * @see #getParentWithEmptySlots(TransactionId, PinnedPages, BTreePageId, Field)
+     * @see #updateParentPointers(TransactionId, PinnedPages, BTreeInternalPage)
      */
     public BTreeInternalPage splitInternalPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage page, Field field) throws DbException, IOException, TransactionAbortedException {
+        return splitInternalPage(tid, new PinnedPages(dirtypages), page, field);
+    }
+
+    private BTreeInternalPage splitInternalPage(TransactionId tid, PinnedPages dirtypages, BTreeInternalPage page, Field field) throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         //
         // Split the internal page by adding a new page on the right of the existing
@@ -382,7 +465,7 @@ public class BTreeFile implements DbFile {
      * @throws TransactionAbortedException
      * @see #splitInternalPage(TransactionId, Map, BTreeInternalPage, Field)
      */
-    private BTreeInternalPage getParentWithEmptySlots(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId parentId, Field field) throws DbException, IOException, TransactionAbortedException {
+    private BTreeInternalPage getParentWithEmptySlots(TransactionId tid, PinnedPages dirtypages, BTreePageId parentId, Field field) throws DbException, IOException, TransactionAbortedException {
 
         BTreeInternalPage parent = null;
 
@@ -423,7 +506,7 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws TransactionAbortedException
      */
-    private void updateParentPointer(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, BTreePageId child) throws DbException, TransactionAbortedException {
+    private void updateParentPointer(TransactionId tid, PinnedPages dirtypages, BTreePageId pid, BTreePageId child) throws DbException, TransactionAbortedException {
 
         BTreePage p = (BTreePage) getPage(tid, dirtypages, child, Permissions.READ_ONLY);
 
@@ -443,9 +526,9 @@ public class BTreeFile implements DbFile {
      * @param page       - the parent page
      * @throws DbException
      * @throws TransactionAbortedException
-     * @see #updateParentPointer(TransactionId, Map, BTreePageId, BTreePageId)
+     * @see #updateParentPointer(TransactionId, PinnedPages, BTreePageId, BTreePageId)
      */
-    private void updateParentPointers(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage page) throws DbException, TransactionAbortedException {
+    private void updateParentPointers(TransactionId tid, PinnedPages dirtypages, BTreeInternalPage page) throws DbException, TransactionAbortedException {
         Iterator<BTreeEntry> it = page.iterator();
         BTreePageId pid = page.getId();
         BTreeEntry e = null;
@@ -476,16 +559,91 @@ public class BTreeFile implements DbFile {
      * @throws IOException
      * @throws TransactionAbortedException
      */
-    Page getPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Permissions perm) throws DbException, TransactionAbortedException {
+    Page getPage(TransactionId tid, PinnedPages dirtypages, BTreePageId pid, Permissions perm) throws DbException, TransactionAbortedException {
         if (dirtypages.containsKey(pid)) {
             return dirtypages.get(pid);
+        } else if (perm == Permissions.READ_WRITE) {
+            return dirtypages.fetch(tid, pid);
         } else {
-            Page p = Database.getBufferPool().getPage(tid, pid, perm);
-            if (perm == Permissions.READ_WRITE) {
-                dirtypages.put(pid, p);
+            return Database.getBufferPool().getPage(tid, pid, perm);
+        }
+    }
+
+    /**
+     * The dirty pages of one insert or delete. The pages are pinned in the
+     * buffer pool while the operation changes them, so that a split or merge
+     * that reads more pages than the pool has free frames does not evict a
+     * page it has half changed. The public split, merge and redistribution
+     * methods wrap the map of their caller, without pinning.
+     */
+    static class PinnedPages {
+        private final Map<PageId, Page> pages;
+        // 为null时不钉住页
+        private final List<Page> pinned;
+
+        PinnedPages() {
+            this.pages = new HashMap<>();
+            this.pinned = new ArrayList<>();
+        }
+
+        PinnedPages(Map<PageId, Page> pages) {
+            this.pages = pages;
+            this.pinned = null;
+        }
+
+        /**
+         * Retrieve pid for writing, pin it if pages are pinned, and record it
+         * as dirty.
+         */
+        Page fetch(TransactionId tid, BTreePageId pid) throws DbException, TransactionAbortedException {
+            Page p;
+            if (pinned != null) {
+                p = Database.getBufferPool().pinPage(tid, pid, Permissions.READ_WRITE);
+                pinned.add(p);
+            } else {
+                p = Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
             }
+            pages.put(pid, p);
             return p;
         }
+
+        boolean containsKey(PageId pid) {
+            return pages.containsKey(pid);
+        }
+
+        Page get(PageId pid) {
+            return pages.get(pid);
+        }
+
+        void put(PageId pid, Page p) {
+            pages.put(pid, p);
+        }
+
+        void remove(PageId pid) {
+            pages.remove(pid);
+        }
+
+        Collection<Page> values() {
+            return pages.values();
+        }
+
+        /**
+         * Unpin all pages. The pages that are still part of the operation
+         * are marked dirty first, so that they cannot be evicted as clean
+         * pages before the buffer pool caches them.
+         */
+        void unpinAll(TransactionId tid) {
+            if (pinned == null) {
+                return;
+            }
+            for (Page p : pages.values()) {
+                p.markDirty(true, tid);
+            }
+            for (Page p : pinned) {
+                Database.getBufferPool().unpinPage(tid, p);
+            }
+            pinned.clear();
+        }
     }
 
     /**
@@ -499,7 +657,15 @@ public class BTreeFile implements DbFile {
      * @see #splitLeafPage(TransactionId, Map, BTreeLeafPage, Field)
      */
     public List<Page> insertTuple(TransactionId tid, Tuple t) throws DbException, IOException, TransactionAbortedException {
-        Map<PageId, Page> dirtypages = new HashMap<>();
+        PinnedPages dirtypages = new PinnedPages();
+        try {
+            return insertTuple(tid, dirtypages, t);
+        } finally {
+            dirtypages.unpinAll(tid);
+        }
+    }
+
+    private List<Page> insertTuple(TransactionId tid, PinnedPages dirtypages, Tuple t) throws DbException, IOException, TransactionAbortedException {
 
         // get a read lock on the root pointer page and use it to locate the root page
         BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages);
@@ -535,10 +701,10 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #handleMinOccupancyLeafPage(TransactionId, Map, BTreeLeafPage, BTreeInternalPage, BTreeEntry, BTreeEntry)
-     * @see #handleMinOccupancyInternalPage(TransactionId, Map, BTreeInternalPage, BTreeInternalPage, BTreeEntry, BTreeEntry)
+     * @see #handleMinOccupancyLeafPage(TransactionId, PinnedPages, BTreeLeafPage, BTreeInternalPage, BTreeEntry, BTreeEntry)
+     * @see #handleMinOccupancyInternalPage(TransactionId, PinnedPages, BTreeInternalPage, BTreeInternalPage, BTreeEntry, BTreeEntry)
      */
-    private void handleMinOccupancyPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePage page) throws DbException, IOException, TransactionAbortedException {
+    private void handleMinOccupancyPage(TransactionId tid, PinnedPages dirtypages, BTreePage page) throws DbException, IOException, TransactionAbortedException {
         BTreePageId parentId = page.getParentId();
         BTreeEntry leftEntry = null;
         BTreeEntry rightEntry = null;
@@ -585,7 +751,7 @@ public class BTreeFile implements DbFile {
      * @see #mergeLeafPages(TransactionId, Map, BTreeLeafPage, BTreeLeafPage, BTreeInternalPage, BTreeEntry)
      * @see #stealFromLeafPage(BTreeLeafPage, BTreeLeafPage, BTreeInternalPage, BTreeEntry, boolean)
      */
-    private void handleMinOccupancyLeafPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage page, BTreeInternalPage parent, BTreeEntry leftEntry, BTreeEntry rightEntry) throws DbException, IOException, TransactionAbortedException {
+    private void handleMinOccupancyLeafPage(TransactionId tid, PinnedPages dirtypages, BTreeLeafPage page, BTreeInternalPage parent, BTreeEntry leftEntry, BTreeEntry rightEntry) throws DbException, IOException, TransactionAbortedException {
         BTreePageId leftSiblingId = null;
         BTreePageId rightSiblingId = null;
         if (leftEntry != null) leftSiblingId = leftEntry.getLeftChild();
@@ -678,7 +844,7 @@ public class BTreeFile implements DbFile {
      * @see #stealFromLeftInternalPage(TransactionId, Map, BTreeInternalPage, BTreeInternalPage, BTreeInternalPage, BTreeEntry)
      * @see #stealFromRightInternalPage(TransactionId, Map, BTreeInternalPage, BTreeInternalPage, BTreeInternalPage, BTreeEntry)
      */
-    private void handleMinOccupancyInternalPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage page, BTreeInternalPage parent, BTreeEntry leftEntry, BTreeEntry rightEntry) throws DbException, IOException, TransactionAbortedException {
+    private void handleMinOccupancyInternalPage(TransactionId tid, PinnedPages dirtypages, BTreeInternalPage page, BTreeInternalPage parent, BTreeEntry leftEntry, BTreeEntry rightEntry) throws DbException, IOException, TransactionAbortedException {
         BTreePageId leftSiblingId = null;
         BTreePageId rightSiblingId = null;
         if (leftEntry != null) leftSiblingId = leftEntry.getLeftChild();
@@ -720,9 +886,13 @@ public class BTreeFile implements DbFile {
      * @param parentEntry - the entry in the parent pointing to the two internal pages
      * @throws DbException
      * @throws TransactionAbortedException
-     * @see #updateParentPointers(TransactionId, Map, BTreeInternalPage)
+     * @see #updateParentPointers(TransactionId, PinnedPages, BTreeInternalPage)
      */
     public void stealFromLeftInternalPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage page, BTreeInternalPage leftSibling, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, TransactionAbortedException {
+        stealFromLeftInternalPage(tid, new PinnedPages(dirtypages), page, leftSibling, parent, parentEntry);
+    }
+
+    private void stealFromLeftInternalPage(TransactionId tid, PinnedPages dirtypages, BTreeInternalPage page, BTreeInternalPage leftSibling, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, TransactionAbortedException {
         // some code goes here
         // Move some of the entries from the left sibling to the page so
         // that the entries are evenly distributed. Be sure to update
@@ -779,9 +949,13 @@ public class BTreeFile implements DbFile {
      * @param parentEntry  - the entry in the parent pointing to the two internal pages
      * @throws DbException
      * @throws TransactionAbortedException
-     * @see #updateParentPointers(TransactionId, Map, BTreeInternalPage)
+     * @see #updateParentPointers(TransactionId, PinnedPages, BTreeInternalPage)
      */
     public void stealFromRightInternalPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage page, BTreeInternalPage rightSibling, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, TransactionAbortedException {
+        stealFromRightInternalPage(tid, new PinnedPages(dirtypages), page, rightSibling, parent, parentEntry);
+    }
+
+    private void stealFromRightInternalPage(TransactionId tid, PinnedPages dirtypages, BTreeInternalPage page, BTreeInternalPage rightSibling, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, TransactionAbortedException {
         // some code goes here
         // Move some of the entries from the right sibling to the page so
         // that the entries are evenly distributed. Be sure to update
@@ -839,9 +1013,13 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #deleteParentEntry(TransactionId, Map, BTreePage, BTreeInternalPage, BTreeEntry)
+     * @see #deleteParentEntry(TransactionId, PinnedPages, BTreePage, BTreeInternalPage, BTreeEntry)
      */
     public void mergeLeafPages(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage leftPage, BTreeLeafPage rightPage, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, IOException, TransactionAbortedException {
+        mergeLeafPages(tid, new PinnedPages(dirtypages), leftPage, rightPage, parent, parentEntry);
+    }
+
+    private void mergeLeafPages(TransactionId tid, PinnedPages dirtypages, BTreeLeafPage leftPage, BTreeLeafPage rightPage, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, IOException, TransactionAbortedException {
 
         // some code goes here
         //
@@ -889,10 +1067,14 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #deleteParentEntry(TransactionId, Map, BTreePage, BTreeInternalPage, BTreeEntry)
-     * @see #updateParentPointers(TransactionId, Map, BTreeInternalPage)
+     * @see #deleteParentEntry(TransactionId, PinnedPages, BTreePage, BTreeInternalPage, BTreeEntry)
+     * @see #updateParentPointers(TransactionId, PinnedPages, BTreeInternalPage)
      */
     public void mergeInternalPages(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage leftPage, BTreeInternalPage rightPage, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, IOException, TransactionAbortedException {
+        mergeInternalPages(tid, new PinnedPages(dirtypages), leftPage, rightPage, parent, parentEntry);
+    }
+
+    private void mergeInternalPages(TransactionId tid, PinnedPages dirtypages, BTreeInternalPage leftPage, BTreeInternalPage rightPage, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, IOException, TransactionAbortedException {
 
         // some code goes here
         //
@@ -944,9 +1126,9 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #handleMinOccupancyPage(TransactionId, Map, BTreePage)
+     * @see #handleMinOccupancyPage(TransactionId, PinnedPages, BTreePage)
      */
-    private void deleteParentEntry(TransactionId tid, Map<PageId, Page> dirtypages, BTreePage leftPage, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, IOException, TransactionAbortedException {
+    private void deleteParentEntry(TransactionId tid, PinnedPages dirtypages, BTreePage leftPage, BTreeInternalPage parent, BTreeEntry parentEntry) throws DbException, IOException, TransactionAbortedException {
 
         // delete the entry in the parent.  If
         // the parent is below minimum occupancy, get some tuples from its siblings
@@ -981,10 +1163,18 @@ public class BTreeFile implements DbFile {
      * @param t   - the tuple to delete
      * @return a list of all pages that were dirtied by this operation. Could include
      * many pages since parent pointers will need to be updated when an internal node merges.
-     * @see #handleMinOccupancyPage(TransactionId, Map, BTreePage)
+     * @see #handleMinOccupancyPage(TransactionId, PinnedPages, BTreePage)
      */
     public List<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException, IOException, TransactionAbortedException {
-        Map<PageId, Page> dirtypages = new HashMap<>();
+        PinnedPages dirtypages = new PinnedPages();
+        try {
+            return deleteTuple(tid, dirtypages, t);
+        } finally {
+            dirtypages.unpinAll(tid);
+        }
+    }
+
+    private List<Page> deleteTuple(TransactionId tid, PinnedPages dirtypages, Tuple t) throws DbException, IOException, TransactionAbortedException {
 
         BTreePageId pageId = new BTreePageId(tableid, t.getRecordId().getPageId().getPageNumber(), BTreePageId.LEAF);
         BTreeLeafPage page = (BTreeLeafPage) getPage(tid, dirtypages, pageId, Permissions.READ_WRITE);
@@ -1011,16 +1201,14 @@ public class BTreeFile implements DbFile {
      * @throws IOException
      * @throws TransactionAbortedException
      */
-    BTreeRootPtrPage getRootPtrPage(TransactionId tid, Map<PageId, Page> dirtypages) throws DbException, IOException, TransactionAbortedException {
+    BTreeRootPtrPage getRootPtrPage(TransactionId tid, PinnedPages dirtypages) throws DbException, IOException, TransactionAbortedException {
         synchronized (this) {
-            if (f.length() == 0) {
+            if (store.length() == 0) {
                 // create the root pointer page and the root page
-                BufferedOutputStream bw = new BufferedOutputStream(new FileOutputStream(f, true));
                 byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
-                byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-                bw.write(emptyRootPtrData);
-                bw.write(emptyLeafData);
-                bw.close();
+                byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData(getPageSize());
+                store.append(emptyRootPtrData);
+                store.append(emptyLeafData);
             }
         }
 
@@ -1040,6 +1228,10 @@ public class BTreeFile implements DbFile {
      * @throws TransactionAbortedException
      */
     public int getEmptyPageNo(TransactionId tid, Map<PageId, Page> dirtypages) throws DbException, IOException, TransactionAbortedException {
+        return getEmptyPageNo(tid, new PinnedPages(dirtypages));
+    }
+
+    private int getEmptyPageNo(TransactionId tid, PinnedPages dirtypages) throws DbException, IOException, TransactionAbortedException {
         // get a read lock on the root pointer page and use it to locate the first header page
         BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages);
         BTreePageId headerId = rootPtr.getHeaderId();
@@ -1064,7 +1256,7 @@ public class BTreeFile implements DbFile {
                 headerPage = (BTreeHeaderPage) getPage(tid, dirtypages, headerId, Permissions.READ_WRITE);
                 int emptySlot = headerPage.getEmptySlot();
                 headerPage.markSlotUsed(emptySlot, true);
-                emptyPageNo = headerPageCount * BTreeHeaderPage.getNumSlots() + emptySlot;
+                emptyPageNo = headerPageCount * BTreeHeaderPage.getNumSlots(getPageSize()) + emptySlot;
             }
         }
 
@@ -1073,10 +1265,8 @@ public class BTreeFile implements DbFile {
         if (headerId == null) {
             synchronized (this) {
                 // create the new page
-                BufferedOutputStream bw = new BufferedOutputStream(new FileOutputStream(f, true));
-                byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-                bw.write(emptyData);
-                bw.close();
+                byte[] emptyData = BTreeInternalPage.createEmptyPageData(getPageSize());
+                store.append(emptyData);
                 emptyPageNo = numPages();
             }
         }
@@ -1099,16 +1289,13 @@ public class BTreeFile implements DbFile {
      * @see #getEmptyPageNo(TransactionId, Map)
      * @see #setEmptyPage(TransactionId, Map, int)
      */
-    private Page getEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int pgcateg) throws DbException, IOException, TransactionAbortedException {
+    private Page getEmptyPage(TransactionId tid, PinnedPages dirtypages, int pgcateg) throws DbException, IOException, TransactionAbortedException {
         // create the new page
         int emptyPageNo = getEmptyPageNo(tid, dirtypages);
         BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 
         // write empty page to disk
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
-        rf.seek(BTreeRootPtrPage.getPageSize() + (long) (emptyPageNo - 1) * BufferPool.getPageSize());
-        rf.write(BTreePage.createEmptyPageData());
-        rf.close();
+        store.write(pageOffset(emptyPageNo), BTreePage.createEmptyPageData(getPageSize()));
 
         // make sure the page is not in the buffer pool	or in the local cache
         Database.getBufferPool().discardPage(newPageId);
@@ -1127,9 +1314,13 @@ public class BTreeFile implements DbFile {
      * @throws DbException
      * @throws IOException
      * @throws TransactionAbortedException
-     * @see #getEmptyPage(TransactionId, Map, int)
+     * @see #getEmptyPage(TransactionId, PinnedPages, int)
      */
     public void setEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int emptyPageNo) throws DbException, IOException, TransactionAbortedException {
+        setEmptyPage(tid, new PinnedPages(dirtypages), emptyPageNo);
+    }
+
+    private void setEmptyPage(TransactionId tid, PinnedPages dirtypages, int emptyPageNo) throws DbException, IOException, TransactionAbortedException {
 
         // if this is the last page in the file (and not the only page), just
         // truncate the file
@@ -1171,7 +1362,7 @@ public class BTreeFile implements DbFile {
 
         // iterate through all the existing header pages to find the one containing the slot
         // corresponding to emptyPageNo
-        while (headerId != null && (headerPageCount + 1) * BTreeHeaderPage.getNumSlots() < emptyPageNo) {
+        while (headerId != null && (headerPageCount + 1) * BTreeHeaderPage.getNumSlots(getPageSize()) < emptyPageNo) {
             BTreeHeaderPage headerPage = (BTreeHeaderPage) getPage(tid, dirtypages, headerId, Permissions.READ_ONLY);
             prevId = headerId;
             headerId = headerPage.getNextPageId();
@@ -1181,7 +1372,7 @@ public class BTreeFile implements DbFile {
         // at this point headerId should either be null or set with
         // the headerPage containing the slot corresponding to emptyPageNo.
         // Add header pages until we have one with a slot corresponding to emptyPageNo
-        while ((headerPageCount + 1) * BTreeHeaderPage.getNumSlots() < emptyPageNo) {
+        while ((headerPageCount + 1) * BTreeHeaderPage.getNumSlots(getPageSize()) < emptyPageNo) {
             BTreeHeaderPage prevPage = (BTreeHeaderPage) getPage(tid, dirtypages, prevId, Permissions.READ_WRITE);
 
             BTreeHeaderPage headerPage = (BTreeHeaderPage) getEmptyPage(tid, dirtypages, BTreePageId.HEADER);
@@ -1197,10 +1388,86 @@ public class BTreeFile implements DbFile {
         // now headerId should be set with the headerPage containing the slot corresponding to
         // emptyPageNo
         BTreeHeaderPage headerPage = (BTreeHeaderPage) getPage(tid, dirtypages, headerId, Permissions.READ_WRITE);
-        int emptySlot = emptyPageNo - headerPageCount * BTreeHeaderPage.getNumSlots();
+        int emptySlot = emptyPageNo - headerPageCount * BTreeHeaderPage.getNumSlots(getPageSize());
         headerPage.markSlotUsed(emptySlot, false);
     }
 
+    /**
+     * Predict the leaf pages a scan reads after current: its right sibling,
+     * followed by the next children of the same parent. Only pages that are
+     * already in the buffer pool are looked at, and nothing is locked, so the
+     * prediction may be short or stale; it is only used for read-ahead.
+     *
+     * @param current the leaf page the scan has just read
+     * @param count   the number of pages wanted
+     * @return up to count leaf page ids in scan order
+     */
+    List<PageId> nextLeaves(PageId current, int count) {
+        return nextLeaves(current, count, null);
+    }
+
+    /**
+     * Predict the leaf pages a range scan reads after current. The scan stops
+     * at the first key that fails bound, so no leaf whose keys all fail it is
+     * predicted.
+     *
+     * @param current the leaf page the scan has just read
+     * @param count   the number of pages wanted
+     * @param bound   the upper bound of the scan, or null if it runs to the
+     *                last leaf
+     * @return up to count leaf page ids in scan order
+     * @see #nextLeaves(PageId, int)
+     */
+    List<PageId> nextLeaves(PageId current, int count, IndexPredicate bound) {
+        List<PageId> res = new ArrayList<>(count);
+        BufferPool pool = Database.getBufferPool();
+        Page page = pool.peekPage(current);
+        if (!(page instanceof BTreeLeafPage)) {
+            return res;
+        }
+        BTreeLeafPage leaf = (BTreeLeafPage) page;
+        BTreePageId sibling = leaf.getRightSiblingId();
+        if (sibling == null) {
+            return res;
+        }
+        if (bound != null) {
+            //当前页的最后一个键已超出范围，扫描在本页结束
+            Iterator<Tuple> last = leaf.reverseIterator();
+            if (last.hasNext() && !last.next().getField(keyField).compare(bound.getOp(), bound.getField())) {
+                return res;
+            }
+        }
+        res.add(sibling);
+        Page parent = pool.peekPage(leaf.getParentId());
+        if (count == 1 || !(parent instanceof BTreeInternalPage)) {
+            return res;
+        }
+        try {
+            //按顺序遍历父节点的孩子，取右兄弟之后的那些
+            boolean found = false;
+            boolean first = true;
+            Iterator<BTreeEntry> it = ((BTreeInternalPage) parent).iterator();
+            while (it.hasNext() && res.size() < count) {
+                BTreeEntry e = it.next();
+                if (first) {
+                    found = e.getLeftChild().equals(sibling);
+                    first = false;
+                }
+                if (found) {
+                    if (bound != null && !e.getKey().compare(bound.getOp(), bound.getField())) {
+                        break;
+                    }
+                    res.add(e.getRightChild());
+                } else {
+                    found = e.getRightChild().equals(sibling);
+                }
+            }
+        } catch (RuntimeException e) {
+            //父节点正在被并发修改，只返回右兄弟
+        }
+        return res;
+    }
+
     /**
      * get the specified tuples from the file based on its IndexPredicate value on
      * behalf of the specified transaction. This method will acquire a read lock on
@@ -1236,6 +1503,9 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
     Iterator<Tuple> it = null;
     BTreeLeafPage curp = null;
+    ReadAhead.Stream readAhead = null;
+    // 当前叶子在缓冲池中被钉住
+    final LeafPin pin = new LeafPin();
 
     final TransactionId tid;
     final BTreeFile f;
@@ -1257,8 +1527,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
     public void open() throws DbException, TransactionAbortedException {
         BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
         BTreePageId root = rootPtr.getRootId();
-        curp = f.findLeafPage(tid, root, null);
+        curp = pin.pin(tid, f.findLeafPage(tid, root, null).getId());
         it = curp.iterator();
+        readAhead = Database.getBufferPool().getReadAhead().newStream(f, f::nextLeaves);
+        readAhead.access(curp.getId());
     }
 
     /**
@@ -1275,8 +1547,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
             BTreePageId nextp = curp.getRightSiblingId();
             if (nextp == null) {
                 curp = null;
+                pin.unpin();
             } else {
-                curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid, nextp, Permissions.READ_ONLY);
+                curp = pin.pin(tid, nextp);
+                readAhead.access(nextp);
                 it = curp.iterator();
                 if (!it.hasNext()) it = null;
             }
@@ -1301,6 +1575,11 @@ class BTreeFileIterator extends AbstractDbFileIterator {
         super.close();
         it = null;
         curp = null;
+        pin.unpin();
+        if (readAhead != null) {
+            readAhead.close();
+            readAhead = null;
+        }
     }
 }
 
@@ -1316,6 +1595,9 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
     final TransactionId tid;
     final BTreeFile f;
     final IndexPredicate ipred;
+    ReadAhead.Stream readAhead = null;
+    // 当前叶子在缓冲池中被钉住
+    final LeafPin pin = new LeafPin();
 
     /**
      * Constructor for this iterator
@@ -1342,7 +1624,18 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
         } else {
             curp = f.findLeafPage(tid, root, null);
         }
+        curp = pin.pin(tid, curp.getId());
         it = curp.iterator();
+        // 范围扫描只预读上界以内的叶子
+        IndexPredicate bound = null;
+        if (ipred.getOp() == Op.LESS_THAN || ipred.getOp() == Op.LESS_THAN_OR_EQ) {
+            bound = ipred;
+        } else if (ipred.getOp() == Op.EQUALS) {
+            bound = new IndexPredicate(Op.LESS_THAN_OR_EQ, ipred.getField());
+        }
+        final IndexPredicate upper = bound;
+        readAhead = Database.getBufferPool().getReadAhead().newStream(f, (current, count) -> f.nextLeaves(current, count, upper));
+        readAhead.access(curp.getId());
     }
 
     /**
@@ -1373,9 +1666,11 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
             BTreePageId nextp = curp.getRightSiblingId();
             // if there are no more pages to the right, end the iteration
             if (nextp == null) {
+                pin.unpin();
                 return null;
             } else {
-                curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid, nextp, Permissions.READ_ONLY);
+                curp = pin.pin(tid, nextp);
+                readAhead.access(nextp);
                 it = curp.iterator();
             }
         }
@@ -1397,5 +1692,40 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
     public void close() {
         super.close();
         it = null;
+        pin.unpin();
+        if (readAhead != null) {
+            readAhead.close();
+            readAhead = null;
+        }
+    }
+}
+
+/**
+ * The leaf page a B+ tree iterator is on, pinned in the buffer pool so that
+ * it stays there while the iterator reads it.
+ */
+class LeafPin {
+
+    private TransactionId tid = null;
+    private BTreeLeafPage pinned = null;
+
+    /**
+     * Pin the leaf pid, and unpin the leaf pinned before.
+     *
+     * @return the leaf
+     */
+    BTreeLeafPage pin(TransactionId tid, BTreePageId pid) throws DbException, TransactionAbortedException {
+        unpin();
+        BTreeLeafPage page = (BTreeLeafPage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY);
+        this.tid = tid;
+        pinned = page;
+        return page;
+    }
+
+    void unpin() {
+        if (pinned != null) {
+            Database.getBufferPool().unpinPage(tid, pinned);
+            pinned = null;
+        }
     }
 }
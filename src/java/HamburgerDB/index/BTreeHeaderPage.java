@@ -10,6 +10,7 @@ import HamburgerDB.storage.Page;
 import HamburgerDB.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -30,13 +31,14 @@ public class BTreeHeaderPage implements Page {
     final BTreePageId pid;  //当前节点的BTreePageId
     final byte[] header;  //记录每一个page的使用情况，对应一个个pageNo
     final int numSlots;   //记录能存储的page使用情况数量
+    final int pageSize;   //页大小，由表决定
 
     private int nextPage; // 下一个header page的pageNo，如果是最后一个，就是0
     private int prevPage; // 上一个header page的pageNo，如果是第一个，就是0
 
-    // 存储旧的数据，oldDataLock是用于并发synchronized的锁
+    // 第一次修改前的数据，为null表示还没被修改过；oldDataLock是用于并发synchronized的锁
     byte[] oldData;
-    private final Byte oldDataLock = (byte) 0;
+    private final Object oldDataLock = new Object();
 
     /**
      * Create a BTreeHeaderPage from a set of bytes of data read from disk.
@@ -44,11 +46,12 @@ public class BTreeHeaderPage implements Page {
      * header pages, followed by a set of bytes indicating which pages in the file
      * are used or available
      *
-     * @see BufferPool#getPageSize()
+     * @see BufferPool#getPageSize(int)
      */
     public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
         this.pid = id;
-        this.numSlots = getNumSlots();
+        this.pageSize = BufferPool.getPageSize(id.getTableId());
+        this.numSlots = getNumSlots(pageSize);
         DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
 
         // Read the next and prev pointers
@@ -67,36 +70,43 @@ public class BTreeHeaderPage implements Page {
         }
 
         // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
+        header = new byte[getHeaderSize(pageSize)];
         for (int i = 0; i < header.length; i++)
             header[i] = dis.readByte();
 
         dis.close();
-
-        setBeforeImage();
     }
 
     /**
      * Initially mark all slots in the header used.
      */
     public void init() {
+        modifying();
         Arrays.fill(header, (byte) 0xFF);
     }
 
     /**
      * Computes the number of bytes in the header while saving room for pointers
      */
-    private static int getHeaderSize() {
+    private static int getHeaderSize(int pageSize) {
         // pointerBytes: nextPage and prevPage pointers
         int pointerBytes = 2 * INDEX_SIZE;
-        return BufferPool.getPageSize() - pointerBytes;
+        return pageSize - pointerBytes;
     }
 
     /**
-     * Computes the number of slots in the header
+     * Computes the number of slots in the header of a page of
+     * {@link BufferPool#getPageSize()} bytes
      */
     public static int getNumSlots() {
-        return getHeaderSize() * 8;
+        return getNumSlots(BufferPool.getPageSize());
+    }
+
+    /**
+     * Computes the number of slots in the header of a page of pageSize bytes
+     */
+    public static int getNumSlots(int pageSize) {
+        return getHeaderSize(pageSize) * 8;
     }
 
     /**
@@ -105,11 +115,9 @@ public class BTreeHeaderPage implements Page {
      */
     public BTreeHeaderPage getBeforeImage() {
         try {
-            byte[] oldDataRef = null;
             synchronized (oldDataLock) {
-                oldDataRef = oldData;
+                return new BTreeHeaderPage(pid, oldData != null ? oldData : getPageData());
             }
-            return new BTreeHeaderPage(pid, oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -118,9 +126,24 @@ public class BTreeHeaderPage implements Page {
         return null;
     }
 
+    /**
+     * The current content becomes the before image; it is serialized when
+     * the page is next modified.
+     */
     public void setBeforeImage() {
         synchronized (oldDataLock) {
-            oldData = getPageData().clone();
+            oldData = null;
+        }
+    }
+
+    /**
+     * Called at the start of every method that modifies this page.
+     */
+    private void modifying() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
         }
     }
 
@@ -143,41 +166,17 @@ public class BTreeHeaderPage implements Page {
      * @see #BTreeHeaderPage
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // write out the next and prev pointers
-        try {
-            dos.writeInt(nextPage);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            dos.writeInt(prevPage);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        byte[] res = new byte[pageSize];
+        writePageData(ByteBuffer.wrap(res));
+        return res;
+    }
 
-        return baos.toByteArray();
+    @Override
+    public void writePageData(ByteBuffer dst) {
+        // write out the next and prev pointers, then the header of the page
+        dst.putInt(nextPage);
+        dst.putInt(prevPage);
+        dst.put(header);
     }
 
     /**
@@ -190,8 +189,15 @@ public class BTreeHeaderPage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.getPageSize();
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the data of an empty header page of a B+ tree with pages of
+     * pageSize bytes
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -225,6 +231,7 @@ public class BTreeHeaderPage implements Page {
      * @throws DbException
      */
     public void setPrevPageId(BTreePageId id) throws DbException {
+        modifying();
         if (id == null) {
             prevPage = 0;
         } else {
@@ -245,6 +252,7 @@ public class BTreeHeaderPage implements Page {
      * @throws DbException
      */
     public void setNextPageId(BTreePageId id) throws DbException {
+        modifying();
         if (id == null) {
             nextPage = 0;
         } else {
@@ -294,6 +302,7 @@ public class BTreeHeaderPage implements Page {
         int headerbyte = (i - headerbit) / 8;
 
         Debug.log(1, "BTreeHeaderPage.setSlot: setting slot %d to %b", i, value);
+        modifying();
         if (value)
             header[headerbyte] |= 1 << headerbit;
         else
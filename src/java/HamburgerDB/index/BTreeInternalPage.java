@@ -8,6 +8,7 @@ import HamburgerDB.storage.IntField;
 import HamburgerDB.storage.RecordId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -50,7 +51,7 @@ public class BTreeInternalPage extends BTreePage {
      * has m+1 pointers to children), and the category of all child pages (either
      * leaf or internal).
      * Specifically, the number of entries is equal to: <p>
-     * floor((BufferPool.getPageSize()*8 - extra bytes*8) / (entry size * 8 + 1))
+     * floor((page size*8 - extra bytes*8) / (entry size * 8 + 1))
      * <p> where entry size is the size of entries in this index node
      * (key + child pointer), which can be determined via the key field and
      * {@link Catalog#getTupleDesc}.
@@ -64,7 +65,7 @@ public class BTreeInternalPage extends BTreePage {
      * @param key  - the field which the index is keyed on
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#getPageSize()
+     * @see HamburgerDB.storage.DbFile#getPageSize()
      */
     public BTreeInternalPage(BTreePageId id, byte[] data, int key) throws IOException {
         super(id, key);
@@ -109,7 +110,7 @@ public class BTreeInternalPage extends BTreePage {
         }
         dis.close();
 
-        setBeforeImage();
+        setImage(data);
     }
 
     /**
@@ -121,7 +122,7 @@ public class BTreeInternalPage extends BTreePage {
         // extraBits are: one parent pointer, 1 byte for child page category,
         // one extra child pointer (node with m entries has m+1 pointers to children), 1 bit for extra header
         int extraBits = 2 * INDEX_SIZE * 8 + 8 + 1;
-        return (BufferPool.getPageSize() * 8 - extraBits) / bitsPerEntryIncludingHeader;
+        return (pageSize * 8 - extraBits) / bitsPerEntryIncludingHeader;
     }
 
     /**
@@ -143,11 +144,9 @@ public class BTreeInternalPage extends BTreePage {
      */
     public BTreeInternalPage getBeforeImage() {
         try {
-            byte[] oldDataRef = null;
             synchronized (oldDataLock) {
-                oldDataRef = oldData;
+                return new BTreeInternalPage(pid, beforeImageData(), keyField);
             }
-            return new BTreeInternalPage(pid, oldDataRef, keyField);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -156,12 +155,6 @@ public class BTreeInternalPage extends BTreePage {
         return null;
     }
 
-    public void setBeforeImage() {
-        synchronized (oldDataLock) {
-            oldData = getPageData().clone();
-        }
-    }
-
     /**
      * Read keys from the source file.
      */
@@ -221,117 +214,34 @@ public class BTreeInternalPage extends BTreePage {
         return child;
     }
 
+    @Override
+    protected void writeHeader(ByteBuffer page) {
+        page.putInt(parent);
+        page.put((byte) childCategory);
+        page.put(header);
+    }
+
     /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
-     * <p>
-     * The invariant here is that it should be possible to pass the byte
-     * array generated by getPageData to the BTreeInternalPage constructor and
-     * have it produce an identical BTreeInternalPage object.
-     *
-     * @return A byte array correspond to the bytes of this page.
-     * @see #BTreeInternalPage
+     * Slot i holds key i (there is no key 0) and child pointer i, which are
+     * stored in two separate arrays on the page.
      */
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // write out the parent pointer
-        try {
-            dos.writeInt(parent);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        // write out the child page category
-        try {
-            dos.writeByte((byte) childCategory);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
+    @Override
+    protected void writeSlot(ByteBuffer page, int i) {
+        int keyLen = td.getFieldType(keyField).getLen();
+        int keyOffset = INDEX_SIZE + 1 + header.length + (i - 1) * keyLen;
+        int childOffset = INDEX_SIZE + 1 + header.length + (numSlots - 1) * keyLen + i * INDEX_SIZE;
+        if (!isSlotUsed(i)) {
+            if (i > 0) {
+                clear(page, keyOffset, keyLen);
             }
+            clear(page, childOffset, INDEX_SIZE);
+            return;
         }
-
-        // create the keys
-        // start from 1 because the first key slot is not used
-        // since a node with m keys has m+1 pointers
-        for (int i = 1; i < keys.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getFieldType(keyField).getLen(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            try {
-                keys[i].serialize(dos);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-        }
-
-        // create the child pointers
-        for (int i = 0; i < children.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < INDEX_SIZE; j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            try {
-                dos.writeInt(children[i]);
-
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (INDEX_SIZE + 1 + header.length +
-                td.getFieldType(keyField).getLen() * (keys.length - 1) + INDEX_SIZE * children.length);
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (i > 0) {
+            page.position(keyOffset);
+            keys[i].serialize(page);
         }
-
-        return baos.toByteArray();
+        page.putInt(childOffset, children[i]);
     }
 
     /**
@@ -360,6 +270,7 @@ public class BTreeInternalPage extends BTreePage {
             for (int i = rid.getTupleNumber() - 1; i >= 0; i--) {
                 if (isSlotUsed(i)) {
                     children[i] = children[rid.getTupleNumber()];
+                    slotChanged(i);
                     markSlotUsed(rid.getTupleNumber(), false);
                     break;
                 }
@@ -430,11 +341,13 @@ public class BTreeInternalPage extends BTreePage {
                             " HINT: updated key must be greater than or equal to keys on the left");
                 }
                 children[i] = e.getLeftChild().getPageNumber();
+                slotChanged(i);
                 break;
             }
         }
         children[rid.getTupleNumber()] = e.getRightChild().getPageNumber();
         keys[rid.getTupleNumber()] = e.getKey();
+        slotChanged(rid.getTupleNumber());
     }
 
     /**
@@ -499,6 +412,7 @@ public class BTreeInternalPage extends BTreePage {
                     lessOrEqKey = i;
                     if (children[i] == e.getRightChild().getPageNumber()) {
                         children[i] = e.getLeftChild().getPageNumber();
+                        slotChanged(i);
                     }
                 } else if (lessOrEqKey != -1) {
                     // validate that the next key is greater than or equal to the one we are inserting
@@ -601,6 +515,7 @@ public class BTreeInternalPage extends BTreePage {
             header[headerbyte] |= 1 << headerbit;
         else
             header[headerbyte] &= (0xFF ^ (1 << headerbit));
+        slotChanged(i);
     }
 
     /**
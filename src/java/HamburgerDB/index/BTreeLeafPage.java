@@ -5,6 +5,7 @@ import HamburgerDB.execution.Predicate;
 import HamburgerDB.storage.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -47,7 +48,7 @@ public class BTreeLeafPage extends BTreePage {
      * the slots of the page that are in use, and some number of tuple slots,
      * as well as some extra bytes for the parent and sibling pointers.
      * Specifically, the number of tuples is equal to: <p>
-     * floor((BufferPool.getPageSize()*8 - extra bytes*8) / (tuple size * 8 + 1))
+     * floor((page size*8 - extra bytes*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
      * database table, which can be determined via {@link Catalog#getTupleDesc}.
      * The number of 8-bit header words is equal to:
@@ -60,7 +61,7 @@ public class BTreeLeafPage extends BTreePage {
      * @param key  - the field which the index is keyed on
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#getPageSize()
+     * @see HamburgerDB.storage.DbFile#getPageSize()
      */
     public BTreeLeafPage(BTreePageId id, byte[] data, int key) throws IOException {
         super(id, key);
@@ -104,7 +105,7 @@ public class BTreeLeafPage extends BTreePage {
         }
         dis.close();
 
-        setBeforeImage();
+        setImage(data);
     }
 
     /**
@@ -114,7 +115,7 @@ public class BTreeLeafPage extends BTreePage {
         int bitsPerTupleIncludingHeader = td.getSize() * 8 + 1;
         // extraBits are: left sibling pointer, right sibling pointer, parent pointer
         int extraBits = 3 * INDEX_SIZE * 8;
-        return (BufferPool.getPageSize() * 8 - extraBits) / bitsPerTupleIncludingHeader;
+        return (pageSize * 8 - extraBits) / bitsPerTupleIncludingHeader;
     }
 
     /**
@@ -134,11 +135,9 @@ public class BTreeLeafPage extends BTreePage {
      */
     public BTreeLeafPage getBeforeImage() {
         try {
-            byte[] oldDataRef = null;
             synchronized (oldDataLock) {
-                oldDataRef = oldData;
+                return new BTreeLeafPage(pid, beforeImageData(), keyField);
             }
-            return new BTreeLeafPage(pid, oldDataRef, keyField);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -147,12 +146,6 @@ public class BTreeLeafPage extends BTreePage {
         return null;
     }
 
-    public void setBeforeImage() {
-        synchronized (oldDataLock) {
-            oldData = getPageData().clone();
-        }
-    }
-
     /**
      * Read tuples from the source file.
      */
@@ -187,96 +180,25 @@ public class BTreeLeafPage extends BTreePage {
         return t;
     }
 
-    /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
-     * <p>
-     * The invariant here is that it should be possible to pass the byte
-     * array generated by getPageData to the BTreeLeafPage constructor and
-     * have it produce an identical BTreeLeafPage object.
-     *
-     * @return A byte array corresponding to the bytes of this page.
-     * @see #BTreeLeafPage
-     */
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // write out the parent and sibling pointers
-        try {
-            dos.writeInt(parent);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            dos.writeInt(leftSibling);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            dos.writeInt(rightSibling);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+    @Override
+    protected void writeHeader(ByteBuffer page) {
+        page.putInt(parent);
+        page.putInt(leftSibling);
+        page.putInt(rightSibling);
+        page.put(header);
+    }
 
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length + 3 * INDEX_SIZE); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
+    @Override
+    protected void writeSlot(ByteBuffer page, int i) {
+        int offset = 3 * INDEX_SIZE + header.length + i * td.getSize();
+        if (!isSlotUsed(i)) {
+            clear(page, offset, td.getSize());
+            return;
         }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        page.position(offset);
+        for (int j = 0; j < td.numFields(); j++) {
+            tuples[i].getField(j).serialize(page);
         }
-
-        return baos.toByteArray();
     }
 
     /**
@@ -415,6 +337,7 @@ public class BTreeLeafPage extends BTreePage {
             }
             leftSibling = id.getPageNumber();
         }
+        modified();
     }
 
     /**
@@ -435,6 +358,7 @@ public class BTreeLeafPage extends BTreePage {
             }
             rightSibling = id.getPageNumber();
         }
+        modified();
     }
 
     /**
@@ -476,6 +400,7 @@ public class BTreeLeafPage extends BTreePage {
             header[headerbyte] |= 1 << headerbit;
         else
             header[headerbyte] &= (0xFF ^ (1 << headerbit));
+        slotChanged(i);
     }
 
     /**
@@ -5,10 +5,15 @@ import HamburgerDB.common.Database;
 import HamburgerDB.common.DbException;
 import HamburgerDB.common.Type;
 import HamburgerDB.storage.BufferPool;
+import HamburgerDB.storage.DbFile;
 import HamburgerDB.storage.Page;
 import HamburgerDB.storage.TupleDesc;
 import HamburgerDB.transaction.TransactionId;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
 /**
  * Each instance of BTreeInternalPage stores data for one page of a BTreeFile and
  * implements the Page interface that is used by BufferPool.
@@ -28,12 +33,18 @@ public abstract class BTreePage implements Page {
     protected final BTreePageId pid; //当前节点的BTreePageId
     protected final TupleDesc td;  //当前节点的tuple元数据
     protected final int keyField;  //索引的关键字字段下标
+    protected final int pageSize;  //页大小，由表决定
 
     //当前page的父page，如果是根节点那么就是0
     protected int parent; // parent is always internal node or 0 for root node
-    // 存储旧的数据，oldDataLock是用于并发synchronized的锁
+    // 本事务第一次修改前的页，为null表示页还没被修改过，before image就是image
+    // oldDataLock同时保护oldData、image和changedSlots
     protected byte[] oldData;
-    protected final Byte oldDataLock = (byte) 0;
+    protected final Object oldDataLock = new Object();
+
+    // 上一次序列化出的页，以及此后内容变化过的slot；序列化时只重新编码这些slot
+    private byte[] image;
+    private final BitSet changedSlots = new BitSet();
 
     /**
      * Create a BTreeInternalPage from a set of bytes of data read from disk.
@@ -43,10 +54,11 @@ public abstract class BTreePage implements Page {
      * has m+1 pointers to children), and the category of all child pages (either
      * leaf or internal).
      * Specifically, the number of entries is equal to: <p>
-     * floor((BufferPool.getPageSize()*8 - extra bytes*8) / (entry size * 8 + 1))
+     * floor((page size*8 - extra bytes*8) / (entry size * 8 + 1))
      * <p> where entry size is the size of entries in this index node
      * (key + child pointer), which can be determined via the key field and
-     * {@link Catalog#getTupleDesc}.
+     * {@link Catalog#getTupleDesc}, and the page size is that of the table,
+     * see {@link DbFile#getPageSize()}.
      * The number of 8-bit header words is equal to:
      * <p>
      * ceiling((no. entry slots + 1) / 8)
@@ -56,12 +68,14 @@ public abstract class BTreePage implements Page {
      * @param key - the field which the index is keyed on
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#getPageSize()
+     * @see DbFile#getPageSize()
      */
     public BTreePage(BTreePageId id, int key) {
         this.pid = id;
         this.keyField = key;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = file.getTupleDesc();
+        this.pageSize = file.getPageSize();
     }
 
     /**
@@ -81,8 +95,16 @@ public abstract class BTreePage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.getPageSize();
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the data of an empty page of a B+ tree with pages of pageSize
+     * bytes
+     * @see DbFile#getPageSize()
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -118,6 +140,124 @@ public abstract class BTreePage implements Page {
         } else {
             parent = id.getPageNumber();
         }
+        modified();
+    }
+
+    /**
+     * Start tracking changes against data, the bytes this page was read
+     * from. Called by the constructors of subclasses.
+     */
+    protected void setImage(byte[] data) {
+        synchronized (oldDataLock) {
+            image = Arrays.copyOf(data, pageSize);
+            changedSlots.clear();
+            oldData = null;
+        }
+    }
+
+    /**
+     * The current content becomes the before image. Nothing is copied: the
+     * serialized page is saved when the page is next modified.
+     */
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            refreshImage();
+            oldData = null;
+        }
+    }
+
+    /**
+     * @return the bytes of the before image of this page. The caller holds
+     * oldDataLock and must not modify or keep the array.
+     */
+    protected byte[] beforeImageData() {
+        return oldData != null ? oldData : refreshImage();
+    }
+
+    /**
+     * Must be called by every method that modifies this page, before the
+     * page is next serialized. Saves the before image on the first
+     * modification since {@link #setBeforeImage()}.
+     */
+    protected void modified() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                //image还是修改前的内容
+                oldData = image.clone();
+            }
+        }
+    }
+
+    /**
+     * Record that the content of slot i changed and has to be encoded again
+     * the next time the page is serialized.
+     */
+    protected void slotChanged(int i) {
+        synchronized (oldDataLock) {
+            modified();
+            changedSlots.set(i);
+        }
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p>
+     * The invariant here is that it should be possible to pass the byte
+     * array generated by getPageData to the constructor of the page and
+     * have it produce an identical page object.
+     *
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        byte[] res = new byte[pageSize];
+        writePageData(ByteBuffer.wrap(res));
+        return res;
+    }
+
+    /**
+     * Only the slots that changed since the last call are encoded; the rest
+     * of the page is copied from the bytes produced last time.
+     */
+    @Override
+    public void writePageData(ByteBuffer dst) {
+        synchronized (oldDataLock) {
+            dst.put(refreshImage());
+        }
+    }
+
+    /**
+     * Bring image up to date with the content of this page. The caller holds
+     * oldDataLock.
+     */
+    private byte[] refreshImage() {
+        ByteBuffer page = ByteBuffer.wrap(image);
+        for (int i = changedSlots.nextSetBit(0); i >= 0; i = changedSlots.nextSetBit(i + 1)) {
+            writeSlot(page, i);
+        }
+        changedSlots.clear();
+        page.clear();
+        writeHeader(page);
+        return image;
+    }
+
+    /**
+     * Write the pointers and the slot bitmap of this page at the start of
+     * page.
+     */
+    protected abstract void writeHeader(ByteBuffer page);
+
+    /**
+     * Write the content of slot i at its place in page, zeros if the slot
+     * is empty.
+     */
+    protected abstract void writeSlot(ByteBuffer page, int i);
+
+    /**
+     * Fill len bytes of page from offset with zeros.
+     */
+    protected static void clear(ByteBuffer page, int offset, int len) {
+        Arrays.fill(page.array(), page.arrayOffset() + offset, page.arrayOffset() + offset + len, (byte) 0);
     }
 
     /**
@@ -269,6 +269,10 @@ public class JoinOptimizer {
         // some code goes here
         //Replace the following
         int size = joins.size();
+        if (size == 0) {
+            //单表查询没有要排序的连接
+            return joins;
+        }
         PlanCache planCache = new PlanCache();
         CostCard bestCostCard = null;
         for (int i = 1; i <= size; i++) {
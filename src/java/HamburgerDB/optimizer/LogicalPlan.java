@@ -26,6 +26,14 @@ import java.util.*;
  * best implementations for joins.
  */
 public class LogicalPlan {
+    /**
+     * Number of pages from which a sequential scan locks its whole table
+     * instead of each page, see {@link SeqScan#setLockTable}.
+     */
+    public static final int DEFAULT_TABLE_LOCK_PAGES = 64;
+
+    private static volatile int tableLockPages = DEFAULT_TABLE_LOCK_PAGES;
+
     private List<LogicalJoinNode> joins;
     private final List<LogicalScanNode> tables;
     private final List<LogicalFilterNode> filters;
@@ -42,6 +50,18 @@ public class LogicalPlan {
     private String query;
 //    private Query owner;
 
+    /**
+     * Set the number of pages from which the scans of plans created from now
+     * on lock their whole table, e.g. Integer.MAX_VALUE to always lock pages.
+     */
+    public static void setTableLockPages(int pages) {
+        tableLockPages = pages;
+    }
+
+    public static int getTableLockPages() {
+        return tableLockPages;
+    }
+
     /**
      * Constructor -- generate an empty logical plan
      */
@@ -282,6 +302,57 @@ public class LogicalPlan {
 
     }
 
+    /**
+     * Find the fields of the table scanned as alias that the plan refers to,
+     * so that a scan of a columnar table can skip the other columns.
+     *
+     * @return the indexes of the fields in td, or null if the plan may use
+     * all of them
+     */
+    private int[] usedColumns(String alias, TupleDesc td) {
+        List<String> names = new ArrayList<>();
+        for (LogicalFilterNode lf : filters) {
+            names.add(lf.fieldQuantifiedName);
+        }
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1QuantifiedName);
+            if (!(lj instanceof LogicalSubplanJoinNode)) {
+                names.add(lj.f2QuantifiedName);
+            }
+        }
+        for (LogicalSelectListNode si : selectList) {
+            names.add(si.fname);
+        }
+        names.add(groupByField);
+        names.add(aggField);
+        names.add(oByField);
+        Set<Integer> used = new TreeSet<>();
+        for (String name : names) {
+            if (name == null) {
+                continue;
+            }
+            int dot = name.indexOf('.');
+            if (dot < 0 || name.endsWith("*")) {
+                return null;
+            }
+            if (!name.substring(0, dot).equals(alias)) {
+                continue;
+            }
+            try {
+                used.add(td.fieldNameToIndex(name.substring(dot + 1)));
+            } catch (NoSuchElementException e) {
+                // 无法确定引用的是哪一列时读所有列
+                return null;
+            }
+        }
+        int[] res = new int[used.size()];
+        int i = 0;
+        for (int col : used) {
+            res[i++] = col;
+        }
+        return res;
+    }
+
     /**
      * Convert the aggregate operator name s into an Aggregator.op operation.
      *
@@ -326,10 +397,14 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
+            ss.setColumns(usedColumns(table.alias, Database.getCatalog().getTupleDesc(table.t)));
 
             subplanMap.put(table.alias, ss);
             String baseTableName = Database.getCatalog().getTableName(table.t);
-            statsMap.put(baseTableName, baseTableStats.get(baseTableName));
+            TableStats stats = baseTableStats.get(baseTableName);
+            statsMap.put(baseTableName, stats);
+            //扫描的页多时加一个表锁，少时逐页加锁，让其他事务能写别的页
+            ss.setLockTable(stats != null && stats.estimateScanPages() >= tableLockPages);
             filterSelectivities.put(table.alias, 1.0);
 
         }
@@ -100,10 +100,11 @@ public class TableStats {
         // some code goes here
         this.tableId = tableid;
         this.ioCostPerPage = ioCostPerPage;
-        HeapFile heapFile = (HeapFile) catalog.getDatabaseFile(tableid);
-        this.tupleDesc = heapFile.getTupleDesc();
-        this.numPages = heapFile.numPages();
-        this.dbFileIterator = heapFile.iterator(new TransactionId());
+        DbFile dbFile = catalog.getDatabaseFile(tableid);
+        this.tupleDesc = dbFile.getTupleDesc();
+        this.numPages = dbFile instanceof ColumnarFile ? ((ColumnarFile) dbFile).numPages()
+                : ((HeapFile) dbFile).numPages();
+        this.dbFileIterator = dbFile.iterator(new TransactionId(), BufferAccessStrategy.forScan(dbFile));
 
         this.max = new int[tupleDesc.numFields()];
         this.min = new int[tupleDesc.numFields()];
@@ -178,6 +179,14 @@ public class TableStats {
         return this.numPages * ioCostPerPage;
     }
 
+    /**
+     * @return the number of pages a sequential scan of the table reads,
+     * whatever predicates are applied to its tuples
+     */
+    public int estimateScanPages() {
+        return this.numPages;
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
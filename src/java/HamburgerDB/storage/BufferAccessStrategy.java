@@ -0,0 +1,118 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Database;
+
+/**
+ * A BufferAccessStrategy lets a bulk reader, such as a sequential scan over a
+ * large table, go through the {@link BufferPool} without flushing it.
+ * <p>
+ * The strategy owns a small ring of frames. Every page the reader misses on
+ * is loaded into the next slot of the ring, and the page that previously
+ * occupied that slot is dropped from the pool if it is still owned by the
+ * ring and clean. A scan therefore never holds more than the ring size of
+ * the pool's frames, and the hot pages of other transactions stay resident.
+ * If another transaction reads a page while the ring owns it, the page is
+ * promoted to the main pool and the ring no longer recycles it.
+ * <p>
+ * A strategy belongs to a single iterator and is not thread-safe.
+ */
+public class BufferAccessStrategy {
+
+    /**
+     * Default number of frames in the ring of a bulk read.
+     */
+    public static final int DEFAULT_RING_SIZE = 8;
+
+    // 是否对大表的顺序扫描启用环形缓冲区
+    private static volatile boolean bulkReadEnabled = true;
+
+    private final PageId[] ring;
+    private int next;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a strategy with a private ring of ringSize frames.
+     */
+    public BufferAccessStrategy(int ringSize) {
+        if (ringSize < 1) {
+            throw new IllegalArgumentException("ring size must be positive");
+        }
+        this.ring = new PageId[ringSize];
+        this.next = 0;
+    }
+
+    /**
+     * Pick the access strategy for a sequential scan of file. Tables that do
+     * not fit in the buffer pool are read through a ring, since caching them
+     * would only evict everything else before the scan wraps around; smaller
+     * ones are cached normally so that repeated scans hit.
+     *
+     * @return a new ring strategy, or null if the scan should use the pool
+     * directly
+     */
+    public static BufferAccessStrategy forScan(DbFile file) {
+        if (!bulkReadEnabled || !(file instanceof HeapFile)) {
+            return null;
+        }
+        int poolPages = Database.getBufferPool().getNumPages();
+        if (((HeapFile) file).numPages() <= poolPages) {
+            return null;
+        }
+        return new BufferAccessStrategy(Math.max(1, Math.min(DEFAULT_RING_SIZE, poolPages / 4)));
+    }
+
+    /**
+     * Turn the ring for large sequential scans on or off, e.g. to compare hit
+     * ratios with and without it.
+     */
+    public static void setBulkReadEnabled(boolean enabled) {
+        bulkReadEnabled = enabled;
+    }
+
+    public static boolean isBulkReadEnabled() {
+        return bulkReadEnabled;
+    }
+
+    public int getRingSize() {
+        return ring.length;
+    }
+
+    /**
+     * @return the page that will be replaced by the next miss, or null if
+     * that slot of the ring is still empty
+     */
+    PageId victim() {
+        return ring[next];
+    }
+
+    /**
+     * Put pid into the current slot of the ring and advance.
+     */
+    void add(PageId pid) {
+        ring[next] = pid;
+        next = (next + 1) % ring.length;
+    }
+
+    void recordHit() {
+        hits++;
+    }
+
+    void recordMiss() {
+        misses++;
+    }
+
+    /**
+     * @return the number of page requests of this strategy that hit the pool
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of page requests of this strategy that read from disk
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
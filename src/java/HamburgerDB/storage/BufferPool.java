@@ -8,9 +8,20 @@ import HamburgerDB.transaction.LockManager;
 import HamburgerDB.transaction.TransactionAbortedException;
 import HamburgerDB.transaction.TransactionId;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -20,6 +31,13 @@ import java.util.Random;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Pages are written back at commit (FORCE). When every page in the pool is
+ * dirty, the pool also writes back pages of transactions that have not
+ * committed yet (STEAL): the UPDATE record of the page, whose before image
+ * is the undo information, is forced to the log first, and an abort restores
+ * the before images from the log, see {@link LogFile#rollback}. A transaction
+ * can therefore update more pages than the pool holds.
  *
  * @Threadsafe, all fields are final
  */
@@ -32,6 +50,13 @@ public class BufferPool {
     //每一页的大小
     private static int pageSize = DEFAULT_PAGE_SIZE;
 
+    /**
+     * Smallest and largest page size a table may choose, see
+     * {@link #checkPageSize}.
+     */
+    public static final int MIN_PAGE_SIZE = 512;
+    public static final int MAX_PAGE_SIZE = 1 << 16;
+
     /**
      * Default number of pages passed to the constructor. This is used by
      * other classes. BufferPool should use the numPages argument to the
@@ -40,30 +65,189 @@ public class BufferPool {
     //默认buffer中保存的页数
     public static final int DEFAULT_PAGES = 50;
 
+    // 新建的缓冲池是否把页保存在堆外的帧中
+    private static volatile boolean frameArenaEnabled = true;
+
     private int numPages;
-    //    private Map<Integer,Page> buffer;
-    private LRUCache<PageId, Page> buffer;
+    //页表，命中路径不需要全局锁
+    private PageTable pageTable;
     private LockManager lockManager;
+    //命中和未命中次数，不包括通过BufferAccessStrategy的访问
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    //写回未提交脏页的次数
+    private final LongAdder steals = new LongAdder();
+    //因为页被写回才补写了BEGIN记录的事务，结束时由缓冲池写COMMIT或ABORT记录
+    private final Set<TransactionId> implicitlyBegun = ConcurrentHashMap.newKeySet();
+    //每个事务钉住的页，事务结束时放开剩下的
+    private final Map<TransactionId, List<Page>> pins = new ConcurrentHashMap<>();
+    private final ReadAhead readAhead;
+    private final PageWriter pageWriter;
+    private final FrameArena frameArena;
 
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
-     * 后面要改，暂时不支持并发，后期要加锁
+     * Creates a BufferPool that caches up to numPages pages. The pool has
+     * room for numPages frames of {@link #getPageSize()} bytes; a page of a
+     * table with larger pages takes as many frames as it covers, see
+     * {@link DbFile#getPageSize()}. The replacement policy is taken from the {@link ReplacementPolicy#POLICY_PROPERTY}
+     * system property and defaults to CLOCK.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
         // some code goes here
+        this(numPages, ReplacementPolicy.createDefault(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts with
+     * the given replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy   the policy that chooses which page to evict
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
         this.numPages = numPages;
-//        this.buffer = new HashMap<>(numPages);
-        this.buffer = new LRUCache<>(numPages);
+        this.frameArena = frameArenaEnabled ? new FrameArena(numPages, pageSize) : null;
+        this.pageTable = new PageTable(numPages, pageSize, policy, frameArena);
         this.lockManager = new LockManager();
+        this.readAhead = new ReadAhead(this);
+        this.pageWriter = new PageWriter(readAhead);
+    }
+
+    public ReplacementPolicy getReplacementPolicy() {
+        return pageTable.getPolicy();
+    }
+
+    public ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    public PageWriter getPageWriter() {
+        return pageWriter;
+    }
+
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * @return the arena that holds the bytes of cached pages, or null if this
+     * pool keeps them on the heap
+     */
+    public FrameArena getFrameArena() {
+        return frameArena;
+    }
+
+    /**
+     * Choose whether buffer pools created from now on keep cached heap pages
+     * in an off-heap {@link FrameArena} sized for the whole pool.
+     */
+    public static void setFrameArenaEnabled(boolean enabled) {
+        frameArenaEnabled = enabled;
+    }
+
+    public static boolean isFrameArenaEnabled() {
+        return frameArenaEnabled;
+    }
+
+    /**
+     * Return the cached version of a page without locking it or counting an
+     * access. The page may be modified concurrently, so this is only for
+     * advisory uses such as predicting the next pages of a scan.
+     *
+     * @return the cached page, or null if it is not resident
+     */
+    public Page peekPage(PageId pid) {
+        return pageTable.peek(pid);
+    }
+
+    /**
+     * @return true if the page is resident, without counting as an access
+     */
+    boolean isCached(PageId pid) {
+        return pageTable.contains(pid);
+    }
+
+    /**
+     * @return the maximum number of pages in this buffer pool, counted in
+     * frames of {@link #getPageSize()} bytes
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * @return the number of frames taken by the pages in this buffer pool
+     */
+    public int getFramesInUse() {
+        return pageTable.getFramesInUse();
     }
 
+    /**
+     * @return the number of getPage calls without an access strategy that
+     * found the page in the pool
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of getPage calls without an access strategy that
+     * had to read the page from disk
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of dirty pages of uncommitted transactions that
+     * were written back to make room in the pool
+     */
+    public long getSteals() {
+        return steals.sum();
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        steals.reset();
+    }
+
+    /**
+     * @return the size of the pages of tables that do not choose their own,
+     * and of one frame of a buffer pool
+     */
     public static int getPageSize() {
         return pageSize;
     }
 
+    /**
+     * @return the size of the pages of table tableId, see
+     * {@link DbFile#getPageSize()}, or {@link #getPageSize()} if the table is
+     * not in the catalog
+     */
+    public static int getPageSize(int tableId) {
+        try {
+            return Database.getCatalog().getDatabaseFile(tableId).getPageSize();
+        } catch (NoSuchElementException e) {
+            return pageSize;
+        }
+    }
+
+    /**
+     * Check a page size chosen for a table: a power of two from
+     * {@link #MIN_PAGE_SIZE} to {@link #MAX_PAGE_SIZE} bytes.
+     *
+     * @throws IllegalArgumentException if pageSize is not such a size
+     */
+    public static void checkPageSize(int pageSize) {
+        if (pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("bad page size " + pageSize);
+        }
+    }
+
     // THIS FUNCTION SHOULD ONLY BE USED FOR TESTING!!
     public static void setPageSize(int pageSize) {
         BufferPool.pageSize = pageSize;
@@ -74,6 +258,82 @@ public class BufferPool {
         BufferPool.pageSize = DEFAULT_PAGE_SIZE;
     }
 
+    /**
+     * Write the ids of the pages in this pool, from the most to the least
+     * recently used, to file, so that {@link #warmUp} can load them again
+     * after a restart. Pages read through the ring of a
+     * {@link BufferAccessStrategy} are left out. The log does this at every
+     * checkpoint, see {@link LogFile#getHotPagesFile()}.
+     */
+    public void saveHotPages(File file) throws IOException {
+        HotPageSet.write(file, pageTable.recentPages());
+    }
+
+    /**
+     * Start loading the pages saved in file by {@link #saveHotPages} on a
+     * background thread, so that queries right after a restart find them in
+     * the pool. The most recently used pages that fit in the pool are read
+     * in file order. Pages are only put in free frames: loading stops once
+     * the pool is full, and pages that queries read in the meantime are
+     * left alone. The pages are read without locks, like read-ahead, and a
+     * page that may have been written while it was read is skipped.
+     *
+     * @return the number of pages loaded, once the warm-up is done
+     */
+    public Future<Integer> warmUp(File file) {
+        FutureTask<Integer> task = new FutureTask<>(() -> {
+            List<PageId> pages = new ArrayList<>();
+            int frames = 0;
+            for (PageId pid : HotPageSet.read(file)) {
+                frames += pageTable.framesFor(pid);
+                if (frames > numPages) {
+                    break;
+                }
+                pages.add(pid);
+            }
+            //按文件顺序读
+            pages.sort(Comparator.comparingInt(PageId::getTableId).thenComparingInt(PageId::getPageNumber));
+            int loaded = 0;
+            for (PageId pid : pages) {
+                if (!pageTable.hasRoom(pid)) {
+                    break;
+                }
+                if (preload(pid)) {
+                    loaded++;
+                }
+            }
+            return loaded;
+        });
+        Thread t = new Thread(task, "BufferPool-WarmUp");
+        t.setDaemon(true);
+        t.start();
+        return task;
+    }
+
+    /**
+     * Read a page into a free frame for {@link #warmUp}.
+     *
+     * @return true if the page was added to the pool
+     */
+    private boolean preload(PageId pid) {
+        if (pageTable.contains(pid)) {
+            return false;
+        }
+        long epoch = readAhead.getWriteEpoch();
+        Page page;
+        try {
+            page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        } catch (RuntimeException e) {
+            //表已不在目录中，或者页已不在文件中
+            return false;
+        }
+        if (page == null) {
+            return false;
+        }
+        //读的过程中有页被写回，读到的内容可能已过期；在页表的锁下检查，写回并移出的页不会被旧副本替代
+        return pageTable.putIfRoom(pid, page, () -> readAhead.getWriteEpoch() == epoch);
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -91,30 +351,162 @@ public class BufferPool {
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, null);
+    }
 
-        //先获取锁
-        boolean lockAcquired = false;
-        long start = System.currentTimeMillis();
-        long timeout = new Random().nextInt(2000);
-        while (!lockAcquired) {
-            long now = System.currentTimeMillis();
-            if (now - start > timeout) {
-                throw new TransactionAbortedException();
-            }
-            lockAcquired = lockManager.acquireLock(tid, pid, perm);
+    /**
+     * Retrieve the specified page with the associated permissions, reading it
+     * through the given access strategy on a miss. With a strategy, a missing
+     * page is loaded into the strategy's ring and replaces the oldest page of
+     * the ring instead of a page chosen by the replacement policy.
+     *
+     * @param tid      the ID of the transaction requesting the page
+     * @param pid      the ID of the requested page
+     * @param perm     the requested permissions on the page
+     * @param strategy the access strategy of a bulk reader, or null to use
+     *                 the pool normally
+     * @see BufferAccessStrategy
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferAccessStrategy strategy)
+            throws TransactionAbortedException, DbException {
+
+        //先获取锁，死锁时由锁管理器选出的牺牲者在这里中止
+        if (!lockManager.acquireLock(tid, pid, perm)) {
+            throw new TransactionAbortedException();
         }
 
-        if (this.buffer.get(pid) == null) {
-            // find the right page in DBFiles
-            DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
-            Page page = dbFile.readPage(pid);
-            if (buffer.getSize() >= numPages) {
-                evictPage();
+        Page page = strategy == null ? pageTable.get(pid) : pageTable.get(pid, strategy);
+        if (page != null) {
+            if (strategy == null) {
+                hits.increment();
+            } else {
+                strategy.recordHit();
             }
-            buffer.put(pid, page);
             return page;
         }
-        return this.buffer.get(pid);
+        // find the right page in DBFiles
+        page = readAhead.take(pid);
+        if (page == null) {
+            DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            page = dbFile.readPage(pid);
+        }
+        if (page == null) {
+            return null;
+        }
+        if (strategy == null) {
+            misses.increment();
+        } else {
+            strategy.recordMiss();
+            //复用环形缓冲区中最旧的帧
+            PageId old = strategy.victim();
+            if (old != null) {
+                pageTable.recycle(old, strategy, p -> p.isDirty() == null);
+            }
+            strategy.add(pid);
+        }
+        //大页占用多个帧
+        while (!pageTable.hasRoom(pid)) {
+            evictPage();
+        }
+        //并发未命中同一页时，以先放入页表的为准
+        return pageTable.putIfAbsent(pid, page, strategy);
+    }
+
+    /**
+     * Retrieve a page like {@link #getPage(TransactionId, PageId, Permissions)}
+     * and pin it: the page is not evicted, so callers that hold on to it
+     * keep working on the version in the pool, until {@link #unpinPage} is
+     * called as often as the page was pinned. The pins tid still holds when
+     * it commits or aborts are undone then.
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException, DbException {
+        return pinPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve and pin a page, reading it through strategy on a miss.
+     *
+     * @see #pinPage(TransactionId, PageId, Permissions)
+     * @see #getPage(TransactionId, PageId, Permissions, BufferAccessStrategy)
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm, BufferAccessStrategy strategy)
+            throws TransactionAbortedException, DbException {
+        while (true) {
+            Page page = getPage(tid, pid, perm, strategy);
+            //返回前页可能已被淘汰，重新读一次
+            if (page == null) {
+                return null;
+            }
+            if (pageTable.pin(page)) {
+                List<Page> pinned = pins.computeIfAbsent(tid, k -> new ArrayList<>());
+                synchronized (pinned) {
+                    pinned.add(page);
+                }
+                return page;
+            }
+        }
+    }
+
+    /**
+     * Undo one {@link #pinPage} of page by tid. Nothing happens if tid has
+     * no such pin, e.g. because it has completed since.
+     */
+    public void unpinPage(TransactionId tid, Page page) {
+        List<Page> pinned = pins.get(tid);
+        if (pinned == null) {
+            return;
+        }
+        synchronized (pinned) {
+            //按引用查找，同一页被重新读入后是另一个对象
+            for (Iterator<Page> it = pinned.iterator(); it.hasNext(); ) {
+                if (it.next() == page) {
+                    it.remove();
+                    pageTable.unpin(page);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Undo the pins tid still holds, e.g. those of an iterator that was not
+     * closed because the query failed.
+     */
+    private void unpinAll(TransactionId tid) {
+        List<Page> pinned = pins.remove(tid);
+        if (pinned != null) {
+            synchronized (pinned) {
+                for (Page page : pinned) {
+                    pageTable.unpin(page);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how many times the page is pinned, 0 if it is not cached
+     */
+    public int getPinCount(PageId pid) {
+        return pageTable.getPinCount(pid);
+    }
+
+    /**
+     * Lock a whole table, e.g. before scanning all of it. Pages the table
+     * lock covers are then fetched without taking a page lock each.
+     *
+     * @param tid     the ID of the transaction requesting the lock
+     * @param tableId the table to lock
+     * @param perm    READ_ONLY to read the pages of the table, READ_WRITE to
+     *                also write them
+     * @throws TransactionAbortedException if the transaction was chosen as
+     *                                     the victim of a deadlock
+     */
+    public void lockTable(TransactionId tid, int tableId, Permissions perm)
+            throws TransactionAbortedException {
+        if (!lockManager.acquireTableLock(tid, tableId, perm, Long.MAX_VALUE)) {
+            throw new TransactionAbortedException();
+        }
     }
 
     /**
@@ -162,6 +554,7 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) {
         // some code goes here
         // not necessary for lab1|lab2
+        unpinAll(tid);
         if (commit) {
             try {
                 flushPages(tid);
@@ -169,8 +562,23 @@ public class BufferPool {
                 e.printStackTrace();
             }
         } else {
+            if (implicitlyBegun.contains(tid)) {
+                //有页已写回磁盘，按日志中的前像恢复
+                try {
+                    Database.getLogFile().logAbort(tid);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
             rollback(tid);
         }
+        if (implicitlyBegun.remove(tid) && commit) {
+            try {
+                Database.getLogFile().logCommit(tid);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         lockManager.releaseAllLock(tid);
     }
 
@@ -196,10 +604,24 @@ public class BufferPool {
         DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
         //注意，insertTuple函数并不会
         List<Page> pages = dbFile.insertTuple(tid, t);
-        for (Page page : pages) {
-            page.markDirty(true, tid);
-            buffer.put(page.getId(), page);
-        }
+        cacheDirtyPages(tid, pages);
+    }
+
+    /**
+     * Add a batch of tuples to the specified table on behalf of transaction
+     * tid. Works like {@link #insertTuple} for each tuple, but lets the file
+     * fill pages several tuples at a time, and every page touched by the
+     * batch is marked dirty and cached once.
+     *
+     * @param tid     the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples  the tuples to add
+     */
+    public void insertTuples(TransactionId tid, int tableId, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
+        List<Page> pages = dbFile.insertTuples(tid, tuples);
+        cacheDirtyPages(tid, pages);
     }
 
     /**
@@ -221,8 +643,20 @@ public class BufferPool {
         // not necessary for lab1
         DbFile dbFile = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
         List<Page> pages = dbFile.deleteTuple(tid, t);
+        cacheDirtyPages(tid, pages);
+    }
+
+    /**
+     * Mark pages returned by a DbFile update as dirty and make sure that the
+     * buffer pool caches exactly these versions.
+     */
+    private void cacheDirtyPages(TransactionId tid, List<Page> pages) throws DbException {
         for (Page page : pages) {
             page.markDirty(true, tid);
+            while (!pageTable.contains(page.getId()) && !pageTable.hasRoom(page.getId())) {
+                evictPage();
+            }
+            pageTable.put(page.getId(), page);
         }
     }
 
@@ -234,25 +668,18 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        LRUCache<PageId, Page>.DLinkedNode head = buffer.getHead();
-        LRUCache<PageId, Page>.DLinkedNode tail = buffer.getTail();
-        while (head != tail) {
-            Page page = head.value;
-            if (page != null && page.isDirty() != null) {
-                DbFile dbFile = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
-                //记录日志
-                try {
-                    Database.getLogFile().logWrite(page.isDirty(), page.getBeforeImage(), page);
-                    Database.getLogFile().force();
-
-                    dbFile.writePage(page);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        List<Page> dirty = new ArrayList<>();
+        for (Page page : pageTable.pages()) {
+            if (page.isDirty() != null) {
+                dirty.add(page);
             }
-            head = head.next;
         }
-
+        //日志记录、刷盘和写页都交给PageWriter批量完成
+        try {
+            pageWriter.write(dirty);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -267,16 +694,10 @@ public class BufferPool {
     public synchronized void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-        LRUCache<PageId, Page>.DLinkedNode head = buffer.getHead();
-        LRUCache<PageId, Page>.DLinkedNode tail = buffer.getTail();
-        while (head != tail) {
-            PageId key = head.key;
-            if (key != null && key.equals(pid)) {
-                buffer.remove(head);
-                return;
-            }
-            head = head.next;
-        }
+        //先失效再移出，预热不会把磁盘上的旧副本放回来
+        readAhead.invalidate(pid);
+        pageTable.remove(pid);
+        readAhead.invalidate(pid);
     }
 
     /**
@@ -287,93 +708,93 @@ public class BufferPool {
     private synchronized void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-        Page page = buffer.get(pid);
+        Page page = pageTable.get(pid);
 
-        if (page.isDirty() != null) {
-            DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
-            try {
-                Database.getLogFile().logWrite(page.isDirty(), page.getBeforeImage(), page);
-                Database.getLogFile().force();
-                page.markDirty(false, null);
-                dbFile.writePage(page);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (page != null && page.isDirty() != null) {
+            pageWriter.write(Collections.singletonList(page));
+            page.markDirty(false, null);
         }
     }
 
     /**
      * Write all pages of the specified transaction to disk.
+     * <p>
+     * The pages are handed to the {@link PageWriter} as one batch, which
+     * forces the log once and writes them in file order. This method does
+     * not hold the buffer pool's monitor while it waits, so transactions
+     * that commit at the same time can share a batch. The pages stay dirty,
+     * and therefore cannot be evicted, until they are on disk.
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        LRUCache<PageId, Page>.DLinkedNode head = buffer.getHead();
-        LRUCache<PageId, Page>.DLinkedNode tail = buffer.getTail();
-        while (head != tail) {
-            Page page = head.value;
-            if (page != null && page.isDirty() != null && page.isDirty().equals(tid)) {
-                DbFile dbFile = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
-                //记录日志
-                try {
-                    Database.getLogFile().logWrite(page.isDirty(), page.getBeforeImage(), page);
-                    Database.getLogFile().force();
-                    page.markDirty(false, null);
-
-                    dbFile.writePage(page);
-                    page.setBeforeImage();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        List<Page> pages = new ArrayList<>();
+        for (Page page : pageTable.pages()) {
+            if (page.isDirty() != null && page.isDirty().equals(tid)) {
+                pages.add(page);
             }
-            head = head.next;
+        }
+        pageWriter.write(pages);
+        for (Page page : pages) {
+            page.markDirty(false, null);
+            page.setBeforeImage();
         }
     }
 
     /**
      * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Pinned pages are never evicted, and clean pages are evicted first. If every page is dirty, the victim is
+     * written to disk after its UPDATE record is forced to the log, even if
+     * its transaction has not committed yet.
      */
     private synchronized void evictPage() throws DbException {
         // some code goes here
         // not necessary for lab1
-        Page page = buffer.getTail().prev.value;
-        if (page != null && page.isDirty() != null) {
-            findNotDirty();
-        } else {
-            //不是脏页没改过，不需要写磁盘
-            buffer.discard();
+        //优先淘汰非脏页，非脏页没改过，不需要写磁盘
+        if (pageTable.evict(page -> page.isDirty() == null) != null) {
+            return;
         }
+        //全是脏页：先写日志再写回，变成干净页后淘汰
+        Page victim = pageTable.victim(page -> true);
+        if (victim == null) {
+            //所有页都被钉住
+            throw new DbException("no unpinned page to evict");
+        }
+        steal(victim);
+        pageTable.remove(victim.getId());
     }
 
-    private void findNotDirty() throws DbException {
-        LRUCache<PageId, Page>.DLinkedNode head = buffer.getHead();
-        LRUCache<PageId, Page>.DLinkedNode tail = buffer.getTail();
-        tail = tail.prev;
-        while (head != tail) {
-            Page value = tail.value;
-            if (value != null && value.isDirty() == null) {
-                buffer.remove(tail);
-                return;
+    /**
+     * Write a dirty page of a transaction that may still abort to disk, so
+     * that it can leave the pool. The page's UPDATE record holds its before
+     * image; a transaction that was never started with
+     * {@link LogFile#logXactionBegin} gets a BEGIN record first, so that
+     * rollback and recovery find the record, and its COMMIT or ABORT record
+     * is written by {@link #transactionComplete(TransactionId, boolean)}.
+     */
+    private void steal(Page page) throws DbException {
+        TransactionId dirtier = page.isDirty();
+        try {
+            if (dirtier != null && Database.getLogFile().logXactionBeginIfAbsent(dirtier)) {
+                implicitlyBegun.add(dirtier);
             }
-            tail = tail.prev;
+            pageWriter.write(Collections.singletonList(page));
+        } catch (IOException e) {
+            throw new DbException("could not write back page " + page.getId() + ": " + e.getMessage());
         }
-        //没有非脏页，抛出异常
-        throw new DbException("no dirty page");
+        page.markDirty(false, null);
+        steals.increment();
     }
 
 
     private synchronized void rollback(TransactionId tid) {
-        LRUCache<PageId, Page>.DLinkedNode head = buffer.getHead();
-        LRUCache<PageId, Page>.DLinkedNode tail = buffer.getTail();
-        while (head != tail) {
-            Page page = head.value;
-            LRUCache<PageId, Page>.DLinkedNode next = head.next;
-            if (page != null && page.isDirty() != null && page.isDirty().equals(tid)) {
-                buffer.remove(head);
+        for (Page page : pageTable.pages()) {
+            if (page.isDirty() != null && page.isDirty().equals(tid)) {
+                readAhead.invalidate(page.getId());
+                pageTable.remove(page.getId());
                 Page page1 = null;
                 try {
-                    page1 = Database.getBufferPool().getPage(tid, page.getId(), Permissions.READ_ONLY);
+                    page1 = getPage(tid, page.getId(), Permissions.READ_ONLY);
                     page1.markDirty(false, null);
                 } catch (TransactionAbortedException e) {
                     e.printStackTrace();
@@ -382,7 +803,6 @@ public class BufferPool {
                 }
 
             }
-            head = next;
         }
     }
 }
@@ -0,0 +1,109 @@
+package HamburgerDB.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement. Frames sit in a ring of slots; a hit
+ * only sets a volatile reference bit, so the hit path never takes a lock.
+ * The hand clears reference bits as it goes and evicts the first evictable
+ * frame whose bit is already clear.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+
+    /**
+     * CLOCK在每个帧上保存的状态
+     */
+    private static class Entry {
+        volatile boolean referenced = true;
+        int slot;
+    }
+
+    // 环形槽位和空闲槽位，由页表的evictionLock保护
+    private final List<PageTable.Frame> slots;
+    private final Deque<Integer> freeSlots;
+    private int hand;
+
+    public ClockPolicy(int capacity) {
+        this.slots = new ArrayList<>(capacity);
+        this.freeSlots = new ArrayDeque<>();
+        this.hand = 0;
+    }
+
+    @Override
+    public void onInsert(PageTable.Frame frame) {
+        Entry entry = new Entry();
+        if (freeSlots.isEmpty()) {
+            entry.slot = slots.size();
+            slots.add(frame);
+        } else {
+            entry.slot = freeSlots.pop();
+            slots.set(entry.slot, frame);
+        }
+        frame.policyState = entry;
+    }
+
+    @Override
+    public void onAccess(PageTable.Frame frame) {
+        ((Entry) frame.policyState).referenced = true;
+    }
+
+    @Override
+    public void onRemove(PageTable.Frame frame) {
+        Entry entry = (Entry) frame.policyState;
+        slots.set(entry.slot, null);
+        freeSlots.push(entry.slot);
+    }
+
+    /**
+     * The hand goes around at most twice: once to clear reference bits and
+     * once more to find a page that has not been touched since.
+     */
+    @Override
+    public PageTable.Frame victim(Predicate<Page> evictable) {
+        int n = slots.size();
+        for (int i = 0; i < 2 * n; i++) {
+            PageTable.Frame frame = slots.get(hand);
+            hand = (hand + 1) % n;
+            if (frame == null || !evictable.test(frame.getPage())) {
+                continue;
+            }
+            Entry entry = (Entry) frame.policyState;
+            if (entry.referenced) {
+                //第二次机会
+                entry.referenced = false;
+                continue;
+            }
+            return frame;
+        }
+        return null;
+    }
+
+    /**
+     * CLOCK only knows whether a frame was referenced since the hand last
+     * passed it: referenced frames come first, each group in the order the
+     * hand will reach them.
+     */
+    @Override
+    public List<PageTable.Frame> recencyOrder() {
+        List<PageTable.Frame> referenced = new ArrayList<>();
+        List<PageTable.Frame> others = new ArrayList<>();
+        int n = slots.size();
+        for (int i = 0; i < n; i++) {
+            PageTable.Frame frame = slots.get((hand + i) % n);
+            if (frame != null) {
+                (((Entry) frame.policyState).referenced ? referenced : others).add(frame);
+            }
+        }
+        referenced.addAll(others);
+        return referenced;
+    }
+
+    @Override
+    public String toString() {
+        return "clock";
+    }
+}
@@ -0,0 +1,308 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Type;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * The encodings of the values on a {@link ColumnPage}. A page is written in
+ * whichever encoding makes it smallest, see {@link Stats#best()}, so the
+ * encoding is chosen per page rather than per column.
+ * <p>
+ * Values are written in the compact encoding of their {@link Type}. Packed
+ * integers are written least significant bit first, filling each byte from
+ * its lowest bit.
+ */
+public enum ColumnEncoding {
+    /**
+     * The values one after the other.
+     */
+    PLAIN {
+        @Override
+        int size(Stats s) {
+            return s.plainBytes;
+        }
+
+        @Override
+        void encode(ColumnPage page, ByteBuffer buf) {
+            for (int i = 0; i < page.count; i++) {
+                page.type.serializeCompact(page.values[i], buf);
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer buf, Type type, Field[] dst, int n) throws ParseException {
+            for (int i = 0; i < n; i++) {
+                dst[i] = type.parseCompact(buf);
+            }
+        }
+    },
+    /**
+     * The number of runs, then each run of equal values as its length and
+     * the value. Suits sorted or clustered columns.
+     */
+    RUN_LENGTH {
+        @Override
+        int size(Stats s) {
+            return 4 + 4 * s.runs + s.runBytes;
+        }
+
+        @Override
+        void encode(ColumnPage page, ByteBuffer buf) {
+            buf.putInt(page.stats.runs);
+            int i = 0;
+            while (i < page.count) {
+                int j = i + 1;
+                while (j < page.count && page.values[j].equals(page.values[i])) {
+                    j++;
+                }
+                buf.putInt(j - i);
+                page.type.serializeCompact(page.values[i], buf);
+                i = j;
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer buf, Type type, Field[] dst, int n) throws ParseException {
+            int runs = buf.getInt();
+            int i = 0;
+            for (int r = 0; r < runs; r++) {
+                int len = buf.getInt();
+                if (len <= 0 || i + len > n) {
+                    throw new ParseException("bad run length " + len, buf.position() - 4);
+                }
+                Field f = type.parseCompact(buf);
+                for (int k = 0; k < len; k++) {
+                    dst[i++] = f;
+                }
+            }
+            if (i != n) {
+                throw new ParseException("runs hold " + i + " values instead of " + n, buf.position());
+            }
+        }
+    },
+    /**
+     * The number of distinct values, the distinct values in the order they
+     * first appear, the width of a code in bits and then the packed code of
+     * each value. Suits columns with few distinct values.
+     */
+    DICTIONARY {
+        @Override
+        int size(Stats s) {
+            return 4 + s.dictBytes + 1 + packedLength(s.rows, bits(s.distinct - 1));
+        }
+
+        @Override
+        void encode(ColumnPage page, ByteBuffer buf) {
+            buf.putInt(page.dictionary.size());
+            for (Field f : page.dictionary) {
+                page.type.serializeCompact(f, buf);
+            }
+            int width = bits(page.dictionary.size() - 1);
+            buf.put((byte) width);
+            BitPacker packer = new BitPacker(buf, width);
+            for (int i = 0; i < page.count; i++) {
+                packer.put(page.codes.get(page.values[i]));
+            }
+            packer.flush();
+        }
+
+        @Override
+        void decode(ByteBuffer buf, Type type, Field[] dst, int n) throws ParseException {
+            int distinct = buf.getInt();
+            if (distinct < 0 || distinct > n) {
+                throw new ParseException("bad dictionary size " + distinct, buf.position() - 4);
+            }
+            Field[] dictionary = new Field[distinct];
+            for (int i = 0; i < distinct; i++) {
+                dictionary[i] = type.parseCompact(buf);
+            }
+            int width = buf.get();
+            BitPacker packer = new BitPacker(buf, width);
+            for (int i = 0; i < n; i++) {
+                long code = packer.get();
+                if (code >= distinct) {
+                    throw new ParseException("bad dictionary code " + code, buf.position());
+                }
+                dst[i] = dictionary[(int) code];
+            }
+        }
+    },
+    /**
+     * For integer columns: the smallest value, the width in bits of the
+     * largest difference from it and then the packed difference of each
+     * value. Suits columns whose values lie in a narrow range.
+     */
+    BIT_PACKED {
+        @Override
+        int size(Stats s) {
+            if (s.type != Type.INT_TYPE) {
+                return Integer.MAX_VALUE;
+            }
+            return 4 + 1 + packedLength(s.rows, bits(s.max - s.min));
+        }
+
+        @Override
+        void encode(ColumnPage page, ByteBuffer buf) {
+            long min = page.stats.min;
+            int width = bits(page.stats.max - min);
+            buf.putInt((int) min);
+            buf.put((byte) width);
+            BitPacker packer = new BitPacker(buf, width);
+            for (int i = 0; i < page.count; i++) {
+                packer.put(((IntField) page.values[i]).getValue() - min);
+            }
+            packer.flush();
+        }
+
+        @Override
+        void decode(ByteBuffer buf, Type type, Field[] dst, int n) {
+            long min = buf.getInt();
+            int width = buf.get();
+            BitPacker packer = new BitPacker(buf, width);
+            for (int i = 0; i < n; i++) {
+                dst[i] = new IntField((int) (min + packer.get()));
+            }
+        }
+    };
+
+    /**
+     * @return the number of bytes the values described by s take in this
+     * encoding, or Integer.MAX_VALUE if they cannot be written in it
+     */
+    abstract int size(Stats s);
+
+    /**
+     * Write the values of page at the position of buf.
+     */
+    abstract void encode(ColumnPage page, ByteBuffer buf);
+
+    /**
+     * Read n values of type from the position of buf into dst.
+     *
+     * @throws ParseException if the data is not n values in this encoding
+     */
+    abstract void decode(ByteBuffer buf, Type type, Field[] dst, int n) throws ParseException;
+
+    /**
+     * @return the number of bits needed to write the non-negative value v
+     */
+    static int bits(long v) {
+        return v <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(v);
+    }
+
+    static int packedLength(int n, int width) {
+        return (int) (((long) n * width + 7) / 8);
+    }
+
+    /**
+     * What a column page needs to know about its values to tell how large
+     * each encoding would make it. Stats are immutable; {@link #with} gives
+     * the stats of the values with one more value appended.
+     */
+    static final class Stats {
+        final Type type;
+        final int rows;
+        final int runs;
+        final int runBytes;
+        final int distinct;
+        final int dictBytes;
+        final long min;
+        final long max;
+        final int plainBytes;
+
+        Stats(Type type) {
+            this(type, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        private Stats(Type type, int rows, int runs, int runBytes, int distinct, int dictBytes,
+                      long min, long max, int plainBytes) {
+            this.type = type;
+            this.rows = rows;
+            this.runs = runs;
+            this.runBytes = runBytes;
+            this.distinct = distinct;
+            this.dictBytes = dictBytes;
+            this.min = min;
+            this.max = max;
+            this.plainBytes = plainBytes;
+        }
+
+        /**
+         * @param newRun   whether v differs from the last value
+         * @param newValue whether v is not among the values yet
+         */
+        Stats with(Field v, boolean newRun, boolean newValue) {
+            int len = type.getCompactLen(v);
+            long value = type == Type.INT_TYPE ? ((IntField) v).getValue() : 0;
+            return new Stats(type, rows + 1,
+                    runs + (newRun ? 1 : 0), runBytes + (newRun ? len : 0),
+                    distinct + (newValue ? 1 : 0), dictBytes + (newValue ? len : 0),
+                    rows == 0 ? value : Math.min(min, value), rows == 0 ? value : Math.max(max, value),
+                    plainBytes + len);
+        }
+
+        /**
+         * @return the encoding that writes these values in the fewest bytes
+         */
+        ColumnEncoding best() {
+            ColumnEncoding best = PLAIN;
+            for (ColumnEncoding e : values()) {
+                if (e.size(this) < best.size(this)) {
+                    best = e;
+                }
+            }
+            return best;
+        }
+
+        int size() {
+            return best().size(this);
+        }
+    }
+
+    /**
+     * Reads or writes fixed-width unsigned integers packed into a buffer.
+     */
+    private static final class BitPacker {
+        private final ByteBuffer buf;
+        private final int width;
+        private long bits;
+        private int held;
+
+        BitPacker(ByteBuffer buf, int width) {
+            this.buf = buf;
+            this.width = width;
+        }
+
+        void put(long v) {
+            // width不超过32，held不超过7，不会溢出
+            bits |= v << held;
+            held += width;
+            while (held >= 8) {
+                buf.put((byte) bits);
+                bits >>>= 8;
+                held -= 8;
+            }
+        }
+
+        void flush() {
+            if (held > 0) {
+                buf.put((byte) bits);
+                bits = 0;
+                held = 0;
+            }
+        }
+
+        long get() {
+            while (held < width) {
+                bits |= (buf.get() & 0xffL) << held;
+                held += 8;
+            }
+            long v = bits & ((1L << width) - 1);
+            bits >>>= width;
+            held -= width;
+            return v;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Type;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Each instance of ColumnPage stores the values of one column for a run of
+ * consecutive rows of a {@link ColumnarFile}, and implements the Page
+ * interface that is used by BufferPool.
+ * <p>
+ * The pages of a column form a chain in row order. A page starts with a
+ * header of the column number, the page number of the next page of the
+ * chain (-1 for the last page), the page number of the last page of the
+ * chain (only kept up to date on the first page of the chain, -1 on the
+ * others), the number of values, the type of the column and the
+ * {@link ColumnEncoding} of the values, which follow the header. The page is
+ * re-encoded in the smallest encoding each time it is written. A page is as
+ * large as the data it was created from, the page size of its table.
+ *
+ * @see ColumnarFile
+ * @see BufferPool
+ */
+public class ColumnPage implements Page {
+
+    /**
+     * Number of bytes in the header of a page.
+     */
+    public static final int HEADER_SIZE = 4 * 4 + 2;
+
+    // 脏页标记和事务id
+    private volatile boolean dirty = false;
+    private volatile TransactionId dirtier = null;
+
+    final ColumnPageId pid;
+    private final int pageSize;
+    final int column;
+    final Type type;
+    private int next;
+    private int tail;
+
+    // 值和用于选择编码的统计信息
+    Field[] values;
+    int count;
+    ColumnEncoding.Stats stats;
+    final List<Field> dictionary = new ArrayList<>();
+    final Map<Field, Integer> codes = new HashMap<>();
+
+    // 第一次修改前的数据，为null表示还没被修改过
+    private byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk.
+     *
+     * @throws IOException if the data is not a well-formed column page
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.pageSize = data.length;
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        try {
+            this.column = buf.getInt();
+            this.next = buf.getInt();
+            this.tail = buf.getInt();
+            int n = buf.getInt();
+            int t = buf.get();
+            int e = buf.get();
+            if (n < 0 || n > getMaxValues() || t < 0 || t >= Type.values().length
+                    || e < 0 || e >= ColumnEncoding.values().length) {
+                throw new IOException("malformed column page " + id);
+            }
+            this.type = Type.values()[t];
+            this.stats = new ColumnEncoding.Stats(type);
+            Field[] decoded = new Field[n];
+            ColumnEncoding.values()[e].decode(buf, type, decoded, n);
+            this.values = new Field[Math.max(16, n)];
+            for (Field f : decoded) {
+                add(f);
+            }
+        } catch (ParseException | BufferUnderflowException e) {
+            throw new IOException("malformed column page " + id, e);
+        }
+    }
+
+    /**
+     * @return the data of an empty page of column, which has the given type
+     * and is the first page of its chain if first is set
+     */
+    public static byte[] createEmptyPageData(int column, Type type, int pgNo, boolean first) {
+        return createEmptyPageData(column, type, pgNo, first, BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the data of an empty page of pageSize bytes of column, see
+     * {@link #createEmptyPageData(int, Type, int, boolean)}
+     */
+    public static byte[] createEmptyPageData(int column, Type type, int pgNo, boolean first, int pageSize) {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        buf.putInt(column);
+        buf.putInt(-1);
+        buf.putInt(first ? pgNo : -1);
+        buf.putInt(0);
+        buf.put((byte) type.ordinal());
+        buf.put((byte) ColumnEncoding.PLAIN.ordinal());
+        return buf.array();
+    }
+
+    /**
+     * @return the most values a page holds, however well they compress
+     */
+    public int getMaxValues() {
+        return pageSize * 8;
+    }
+
+    public ColumnPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the number of the column this page holds values of
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the page number of the next page of the column, or -1 if this
+     * is the last one
+     */
+    public int getNextPageNo() {
+        return next;
+    }
+
+    public void setNextPageNo(int next) {
+        modifying();
+        this.next = next;
+    }
+
+    /**
+     * @return the page number of the last page of the column; only known on
+     * the first page of the column
+     */
+    public int getTailPageNo() {
+        return tail;
+    }
+
+    public void setTailPageNo(int tail) {
+        modifying();
+        this.tail = tail;
+    }
+
+    /**
+     * @return the number of values on this page
+     */
+    public int getNumValues() {
+        return count;
+    }
+
+    /**
+     * @return value i of this page
+     */
+    public Field getValue(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("value " + i + " of " + count);
+        }
+        return values[i];
+    }
+
+    /**
+     * @return the encoding the page is written in as it is now
+     */
+    public ColumnEncoding getEncoding() {
+        return stats.best();
+    }
+
+    /**
+     * Append v to the values of this page.
+     *
+     * @return false if the page would no longer fit in its size with v, in
+     * which case it is not changed
+     * @throws IllegalArgumentException if v does not have the type of the
+     *                                  column
+     */
+    public boolean append(Field v) {
+        if (v == null || v.getType() != type) {
+            throw new IllegalArgumentException("value " + v + " is not of type " + type);
+        }
+        if (!fits(v)) {
+            return false;
+        }
+        modifying();
+        synchronized (this) {
+            add(v);
+        }
+        return true;
+    }
+
+    private synchronized boolean fits(Field v) {
+        if (count >= getMaxValues()) {
+            return false;
+        }
+        ColumnEncoding.Stats s = stats.with(v, count == 0 || !v.equals(values[count - 1]), !codes.containsKey(v));
+        return HEADER_SIZE + s.size() <= pageSize;
+    }
+
+    private void add(Field v) {
+        stats = stats.with(v, count == 0 || !v.equals(values[count - 1]), !codes.containsKey(v));
+        if (!codes.containsKey(v)) {
+            codes.put(v, dictionary.size());
+            dictionary.add(v);
+        }
+        if (count == values.length) {
+            values = Arrays.copyOf(values, 2 * count);
+        }
+        values[count++] = v;
+    }
+
+    public synchronized byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        writePageData(buf);
+        return buf.array();
+    }
+
+    @Override
+    public synchronized void writePageData(ByteBuffer dst) {
+        int start = dst.position();
+        ColumnEncoding encoding = stats.best();
+        dst.putInt(column);
+        dst.putInt(next);
+        dst.putInt(tail);
+        dst.putInt(count);
+        dst.put((byte) type.ordinal());
+        dst.put((byte) encoding.ordinal());
+        encoding.encode(this, dst);
+        while (dst.position() < start + pageSize) {
+            dst.put((byte) 0);
+        }
+    }
+
+    /**
+     * Return a view of this page before it was modified
+     * -- used by recovery
+     */
+    public ColumnPage getBeforeImage() {
+        try {
+            synchronized (oldDataLock) {
+                return new ColumnPage(pid, oldData != null ? oldData : getPageData());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /**
+     * The current content becomes the before image; it is serialized when
+     * the page is next modified.
+     */
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Called at the start of every method that modifies this page.
+     */
+    private void modifying() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        if (dirty) {
+            this.dirtier = tid;
+        }
+    }
+
+    public TransactionId isDirty() {
+        return dirty ? dirtier : null;
+    }
+}
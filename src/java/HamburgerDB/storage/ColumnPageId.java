@@ -0,0 +1,60 @@
+package HamburgerDB.storage;
+
+/**
+ * Unique identifier for ColumnPage objects.
+ */
+public class ColumnPageId implements PageId {
+
+    private final int tableId;
+    private final int pageNum;
+
+    /**
+     * Create a page id structure for a specific page of a specific columnar
+     * table.
+     *
+     * @param tableId The table that is being referenced
+     * @param pgNo    The page number in that table.
+     */
+    public ColumnPageId(int tableId, int pgNo) {
+        this.tableId = tableId;
+        this.pageNum = pgNo;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int getPageNumber() {
+        return pageNum;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * tableId + pageNum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ColumnPageId)) {
+            return false;
+        }
+        ColumnPageId other = (ColumnPageId) o;
+        return tableId == other.tableId && pageNum == other.pageNum;
+    }
+
+    /**
+     * Return a representation of this object as an array of integers, for
+     * writing to disk, in the order of the arguments of the constructor.
+     */
+    public int[] serialize() {
+        return new int[]{tableId, pageNum};
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnPageId{" +
+                "tableId=" + tableId +
+                ", pageNum=" + pageNum +
+                '}';
+    }
+}
@@ -0,0 +1,366 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.DbException;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.transaction.TransactionAbortedException;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ColumnarFile is an implementation of a DbFile that stores each column of a
+ * table on its own chain of {@link ColumnPage}s, for tables that are mostly
+ * read a few columns at a time. A scan that is told which columns it needs,
+ * see {@link #iterator(TransactionId, BufferAccessStrategy, int[])}, reads
+ * the pages of those columns only.
+ * <p>
+ * Page i of the file is the first page of column i. The values of a column
+ * are appended to the last page of its chain until it is full, at which point
+ * a new page is added at the end of the file and linked to it. Each page is
+ * written in the encoding that makes it smallest, see {@link ColumnEncoding}.
+ * <p>
+ * Tuples can be appended but not deleted. The record id of a tuple names the
+ * page of column 0 that holds its first field and its index on that page.
+ *
+ * @see ColumnPage
+ */
+public class ColumnarFile implements DbFile {
+
+    private final File file;
+    private final TupleDesc td;
+    private final PageStore store;
+    // 0表示使用BufferPool的默认页大小
+    private volatile int pageSize;
+
+    /**
+     * Constructs a columnar file backed by the specified file.
+     */
+    public ColumnarFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a columnar file backed by the specified file, whose pages
+     * are kept compressed on disk if compressed is set, see
+     * {@link CompressedPageStore}. A file must always be opened the same way.
+     */
+    public ColumnarFile(File f, TupleDesc td, boolean compressed) {
+        this.file = f;
+        this.td = td;
+        this.store = compressed ? new CompressedPageStore(f) : new PageStore(f);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the hash of the absolute path of the file, as for
+     * {@link HeapFile#getId()}
+     */
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        int pageSize = getPageSize();
+        try {
+            byte[] buf = store.read((long) pid.getPageNumber() * pageSize, pageSize);
+            if (buf == null) {
+                throw new IllegalArgumentException("Read past end of table");
+            }
+            return new ColumnPage((ColumnPageId) pid, buf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        int size = getPageSize();
+        store.write((long) page.getId().getPageNumber() * size, page, size);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        int size = getPageSize();
+        int i = 0;
+        while (i < pages.size()) {
+            //页号连续的页合并成一次写
+            int j = i + 1;
+            while (j < pages.size()
+                    && pages.get(j).getId().getPageNumber() == pages.get(j - 1).getId().getPageNumber() + 1) {
+                j++;
+            }
+            store.write((long) pages.get(i).getId().getPageNumber() * size, pages.subList(i, j), size);
+            i = j;
+        }
+    }
+
+    /**
+     * Returns the PageStore this ColumnarFile reads and writes its pages
+     * through.
+     */
+    public PageStore getPageStore() {
+        return store;
+    }
+
+    /**
+     * Choose the size of the pages of this file, which defaults to
+     * {@link BufferPool#getPageSize()}. Larger pages hold longer runs of a
+     * column. It must be set before the file holds pages. Normally set
+     * through {@link HamburgerDB.common.Catalog#setPageSize}.
+     *
+     * @throws IllegalArgumentException if the size is not allowed, see
+     *                                  {@link BufferPool#checkPageSize}
+     */
+    public void setPageSize(int pageSize) {
+        BufferPool.checkPageSize(pageSize);
+        this.pageSize = pageSize;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public int getPageSize() {
+        int size = pageSize;
+        return size > 0 ? size : BufferPool.getPageSize();
+    }
+
+    /**
+     * Returns the number of pages in this ColumnarFile, over all columns.
+     */
+    public int numPages() {
+        try {
+            return (int) (store.length() / getPageSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public List<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return insertTuples(tid, Collections.singletonList(t));
+    }
+
+    /**
+     * Appends the fields of the tuples to the last page of each column in
+     * turn. The first page of a column is locked for the whole batch, so
+     * concurrent inserts into the same table run one after the other.
+     *
+     * @see DbFile#insertTuples
+     */
+    @Override
+    public List<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        for (Tuple t : tuples) {
+            if (t.getTupleDesc().numFields() != td.numFields()) {
+                throw new DbException("tuple does not match the schema of the table");
+            }
+            for (int col = 0; col < td.numFields(); col++) {
+                if (t.getField(col) == null || t.getField(col).getType() != td.getFieldType(col)) {
+                    throw new DbException("field " + col + " of tuple does not match the schema of the table");
+                }
+            }
+        }
+        createColumns();
+        Map<PageId, Page> modified = new LinkedHashMap<>();
+        for (int col = 0; col < td.numFields(); col++) {
+            ColumnPage head = getColumnPage(tid, col, Permissions.READ_WRITE);
+            ColumnPage tail = head.getTailPageNo() == col ? head
+                    : getColumnPage(tid, head.getTailPageNo(), Permissions.READ_WRITE);
+            modified.put(tail.getId(), tail);
+            for (Tuple t : tuples) {
+                if (!tail.append(t.getField(col))) {
+                    ColumnPage page = newPage(tid, col);
+                    if (!page.append(t.getField(col))) {
+                        throw new DbException("value does not fit in a page");
+                    }
+                    tail.setNextPageNo(page.getId().getPageNumber());
+                    head.setTailPageNo(page.getId().getPageNumber());
+                    modified.put(head.getId(), head);
+                    tail = page;
+                    modified.put(tail.getId(), tail);
+                }
+                if (col == 0) {
+                    t.setRecordId(new RecordId(tail.getId(), tail.getNumValues() - 1));
+                }
+            }
+        }
+        return new ArrayList<>(modified.values());
+    }
+
+    /**
+     * Columnar files are append-only.
+     *
+     * @throws DbException always
+     */
+    public List<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("cannot delete from columnar table " + getId());
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, null, null);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy) {
+        return iterator(tid, strategy, null);
+    }
+
+    /**
+     * Returns an iterator that reads the pages of the given columns only; the
+     * other fields of the tuples it returns are null.
+     *
+     * @see DbFile#iterator(TransactionId, BufferAccessStrategy, int[])
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy, int[] columns) {
+        if (columns == null) {
+            columns = new int[td.numFields()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = i;
+            }
+        }
+        return new ColumnarFileIterator(tid, strategy, columns);
+    }
+
+    /**
+     * Write the first page of every column if the file is empty.
+     */
+    private synchronized void createColumns() throws IOException {
+        if (numPages() > 0) {
+            return;
+        }
+        int size = getPageSize();
+        for (int col = 0; col < td.numFields(); col++) {
+            store.write((long) col * size, ColumnPage.createEmptyPageData(col, td.getFieldType(col), col, true, size));
+        }
+    }
+
+    /**
+     * Add an empty page for column at the end of the file.
+     */
+    private ColumnPage newPage(TransactionId tid, int column)
+            throws IOException, TransactionAbortedException, DbException {
+        int pgNo;
+        synchronized (this) {
+            pgNo = numPages();
+            int size = getPageSize();
+            store.write((long) pgNo * size,
+                    ColumnPage.createEmptyPageData(column, td.getFieldType(column), pgNo, false, size));
+        }
+        return getColumnPage(tid, pgNo, Permissions.READ_WRITE);
+    }
+
+    private ColumnPage getColumnPage(TransactionId tid, int pgNo, Permissions perm)
+            throws TransactionAbortedException, DbException {
+        return (ColumnPage) Database.getBufferPool().getPage(tid, new ColumnPageId(getId(), pgNo), perm);
+    }
+
+    /**
+     * Walks the chains of the columns a scan needs side by side, one row at
+     * a time.
+     */
+    private class ColumnarFileIterator extends AbstractDbFileIterator {
+        final TransactionId tid;
+        final BufferAccessStrategy strategy;
+        final int[] columns;
+        ColumnPage[] pages;
+        int[] positions;
+
+        ColumnarFileIterator(TransactionId tid, BufferAccessStrategy strategy, int[] columns) {
+            this.tid = tid;
+            this.strategy = strategy;
+            // 至少读一列才知道有多少行
+            this.columns = columns.length > 0 ? columns : new int[]{0};
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            pages = new ColumnPage[columns.length];
+            positions = new int[columns.length];
+            if (numPages() < td.numFields()) {
+                return;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                pages[i] = pin(i, columns[i]);
+            }
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (pages == null || pages[0] == null) {
+                return null;
+            }
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < columns.length; i++) {
+                while (positions[i] == pages[i].getNumValues()) {
+                    if (pages[i].getNextPageNo() < 0) {
+                        if (i > 0) {
+                            throw new DbException("column " + columns[i] + " has fewer values than column " + columns[0]);
+                        }
+                        return null;
+                    }
+                    pages[i] = pin(i, pages[i].getNextPageNo());
+                    positions[i] = 0;
+                }
+                if (i == 0 && columns[0] == 0) {
+                    t.setRecordId(new RecordId(pages[0].getId(), positions[0]));
+                }
+                t.setField(columns[i], pages[i].getValue(positions[i]++));
+            }
+            return t;
+        }
+
+        /**
+         * Pin page pgNo as the current page of the i-th column of the scan,
+         * and unpin the page that was current before.
+         */
+        private ColumnPage pin(int i, int pgNo) throws DbException, TransactionAbortedException {
+            unpin(i);
+            return (ColumnPage) Database.getBufferPool().pinPage(tid, new ColumnPageId(getId(), pgNo),
+                    Permissions.READ_ONLY, strategy);
+        }
+
+        private void unpin(int i) {
+            if (pages[i] != null) {
+                Database.getBufferPool().unpinPage(tid, pages[i]);
+                pages[i] = null;
+            }
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (pages != null) {
+                for (int i = 0; i < pages.length; i++) {
+                    unpin(i);
+                }
+            }
+            pages = null;
+            positions = null;
+        }
+    }
+}
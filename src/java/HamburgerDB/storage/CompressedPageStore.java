@@ -0,0 +1,418 @@
+package HamburgerDB.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedPageStore is a {@link PageStore} that keeps the blocks written to
+ * it compressed with {@link Deflater} on disk, for tables that are large and
+ * mostly read. Callers see the same addresses as with a plain store: a block
+ * written at a position is read back whole at that position, decompressed
+ * into the caller's buffer, so the buffer pool only ever holds plain pages.
+ * Blocks must be read at the positions and with the lengths they were
+ * written with, which is how the {@link DbFile} implementations use a store.
+ * <p>
+ * On disk, the data file holds the compressed blocks one after the other,
+ * each starting on a multiple of {@link #ALIGNMENT} bytes. A block that does
+ * not get smaller is stored as it is. The offset index, which maps the
+ * position of each block to where its bytes are in the data file, is kept in
+ * a sidecar file next to it. Index entries are appended to the sidecar as
+ * blocks are written, the last entry of a block wins, and the sidecar is
+ * rewritten without the stale entries when it is opened.
+ * <p>
+ * A block that is rewritten stays in place if its compressed form still
+ * fits the space it had, and otherwise moves to the end of the data file.
+ * The blocks of one multi-page write that move are laid out together as one
+ * extent and written with a single call. The space a block moves out of is
+ * not reused; {@link #getGarbageBytes()} reports how much there is.
+ * <p>
+ * The I/O counters inherited from PageStore count bytes as they are on disk.
+ * A compressed file cannot be memory mapped, so {@link #map()} returns null.
+ *
+ * @Threadsafe
+ */
+public class CompressedPageStore extends PageStore {
+
+    /**
+     * Blocks start on a multiple of this many bytes in the data file, which
+     * leaves a block some room to grow when it is rewritten in place.
+     */
+    public static final int ALIGNMENT = 64;
+
+    // 位置、数据文件中的偏移、压缩后长度、原始长度
+    private static final int ENTRY_SIZE = 8 + 8 + 4 + 4;
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[]> STORED_BUFFER = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private final PageStore index;
+    private final Map<Long, Block> blocks = new HashMap<>();
+    private boolean loaded;
+    private int entries;
+    // 逻辑长度、数据文件中下一个区的起点
+    private long length;
+    private long end;
+    private long storedBytes;
+    private long plainBytes;
+    private long garbage;
+    private byte[] extentBuffer = new byte[0];
+
+    /**
+     * Where a block is in the data file.
+     */
+    private static class Block {
+        final long offset;
+        final int stored;
+        final int length;
+
+        Block(long offset, int stored, int length) {
+            this.offset = offset;
+            this.stored = stored;
+            this.length = length;
+        }
+
+        int space() {
+            return align(stored);
+        }
+    }
+
+    /**
+     * Creates a store for file, with its offset index in a sidecar file
+     * next to it. The files are opened on first access.
+     */
+    public CompressedPageStore(File file) {
+        super(file);
+        this.index = new PageStore(indexFile(file));
+    }
+
+    /**
+     * @return the sidecar file holding the offset index of file
+     */
+    public static File indexFile(File file) {
+        return new File(file.getPath() + ".cpi");
+    }
+
+    /**
+     * Read the block at position, decompressed, into dst. If the block is
+     * shorter than len the rest of dst reads as zero, and so does a position
+     * inside the store that no block was written at.
+     *
+     * @return false if position is at or past the end of the store
+     */
+    @Override
+    public boolean read(long position, byte[] dst, int off, int len) throws IOException {
+        Block b;
+        synchronized (this) {
+            load();
+            if (position >= length) {
+                return false;
+            }
+            b = blocks.get(position);
+        }
+        if (b == null) {
+            Arrays.fill(dst, off, off + len, (byte) 0);
+            return true;
+        }
+        int n = Math.min(len, b.length);
+        if (b.stored == b.length) {
+            super.read(b.offset, dst, off, n);
+        } else {
+            byte[] buf = storedBuffer(b.stored);
+            super.read(b.offset, buf, 0, b.stored);
+            inflate(buf, b.stored, dst, off, n);
+        }
+        Arrays.fill(dst, off + n, off + len, (byte) 0);
+        return true;
+    }
+
+    /**
+     * Write len bytes of data, starting at off, as the block at position.
+     */
+    @Override
+    public synchronized void write(long position, byte[] data, int off, int len) throws IOException {
+        load();
+        byte[] buf = storedBuffer(len);
+        int stored = deflate(data, off, len, buf);
+        Block b = place(position, stored, len);
+        super.write(b.offset, stored == len ? data : buf, stored == len ? off : 0, stored);
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        putEntry(entry, position, b);
+        appendEntries(entry.array());
+    }
+
+    /**
+     * Write pages of size bytes each as the blocks at position, position +
+     * size, ... The pages that do not fit where they were are appended as
+     * one extent with a single write.
+     */
+    @Override
+    public synchronized void write(long position, List<Page> pages, int size) throws IOException {
+        load();
+        byte[] page = new byte[size];
+        byte[] compressed = new byte[size];
+        ByteBuffer entries = ByteBuffer.allocate(pages.size() * ENTRY_SIZE);
+        long extentStart = end;
+        for (int i = 0; i < pages.size(); i++) {
+            ByteBuffer bb = ByteBuffer.wrap(page);
+            pages.get(i).writePageData(bb);
+            int len = bb.position();
+            int stored = deflate(page, 0, len, compressed);
+            byte[] src = stored == len ? page : compressed;
+            long pos = position + (long) i * size;
+            Block b = place(pos, stored, len);
+            if (b.offset < extentStart) {
+                super.write(b.offset, src, 0, stored);
+            } else {
+                int at = (int) (b.offset - extentStart);
+                if (extentBuffer.length < at + b.space()) {
+                    extentBuffer = Arrays.copyOf(extentBuffer, Math.max(at + b.space(), 2 * extentBuffer.length));
+                }
+                System.arraycopy(src, 0, extentBuffer, at, stored);
+                Arrays.fill(extentBuffer, at + stored, at + b.space(), (byte) 0);
+            }
+            putEntry(entries, pos, b);
+        }
+        if (end > extentStart) {
+            super.write(extentStart, extentBuffer, 0, (int) (end - extentStart));
+        }
+        appendEntries(entries.array());
+    }
+
+    /**
+     * @return the end of the last block, i.e. the length the store would
+     * have uncompressed
+     */
+    @Override
+    public synchronized long size() throws IOException {
+        load();
+        return length;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return size();
+    }
+
+    /**
+     * A compressed file cannot be decoded from a mapping.
+     *
+     * @return null
+     */
+    @Override
+    public MappedByteBuffer map() {
+        return null;
+    }
+
+    @Override
+    public void force() throws IOException {
+        super.force();
+        index.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        index.close();
+    }
+
+    /**
+     * @return the number of bytes the live blocks take in the data file
+     */
+    public synchronized long getStoredBytes() {
+        load();
+        return storedBytes;
+    }
+
+    /**
+     * @return the number of bytes the live blocks hold uncompressed
+     */
+    public synchronized long getPlainBytes() {
+        load();
+        return plainBytes;
+    }
+
+    /**
+     * @return how many times smaller the live blocks are on disk, or 1 if
+     * the store is empty
+     */
+    public synchronized double getCompressionRatio() {
+        load();
+        return storedBytes == 0 ? 1 : (double) plainBytes / storedBytes;
+    }
+
+    /**
+     * @return the number of bytes in the data file left behind by blocks
+     * that moved
+     */
+    public synchronized long getGarbageBytes() {
+        load();
+        return garbage;
+    }
+
+    private static int align(int n) {
+        return (n + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static byte[] storedBuffer(int n) {
+        byte[] buf = STORED_BUFFER.get();
+        if (buf.length < n) {
+            buf = new byte[n];
+            STORED_BUFFER.set(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Compress len bytes of data into dst.
+     *
+     * @return the compressed length, or len if compressing does not make the
+     * data smaller, in which case dst is not meaningful
+     */
+    private static int deflate(byte[] data, int off, int len, byte[] dst) {
+        Deflater deflater = DEFLATER.get();
+        try {
+            deflater.setInput(data, off, len);
+            deflater.finish();
+            int n = 0;
+            // 压缩后不比原数据小就直接存原数据
+            while (!deflater.finished() && n < len - 1) {
+                n += deflater.deflate(dst, n, len - 1 - n);
+            }
+            return deflater.finished() ? n : len;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static void inflate(byte[] src, int stored, byte[] dst, int off, int len) throws IOException {
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(src, 0, stored);
+            int n = 0;
+            while (n < len && !inflater.finished()) {
+                int k = inflater.inflate(dst, off + n, len - n);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("truncated compressed block");
+                }
+                n += k;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt compressed block", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    /**
+     * Decide where the block at position goes now that it is stored bytes
+     * long, and record it in the index.
+     */
+    private Block place(long position, int stored, int len) {
+        Block old = blocks.get(position);
+        Block b;
+        if (old != null && align(stored) <= old.space()) {
+            b = new Block(old.offset, stored, len);
+        } else {
+            b = new Block(end, stored, len);
+            end += b.space();
+            if (old != null) {
+                garbage += old.space();
+            }
+        }
+        put(position, b);
+        return b;
+    }
+
+    private void put(long position, Block b) {
+        Block old = blocks.put(position, b);
+        if (old != null) {
+            storedBytes -= old.stored;
+            plainBytes -= old.length;
+        }
+        storedBytes += b.stored;
+        plainBytes += b.length;
+        length = Math.max(length, position + b.length);
+    }
+
+    private static void putEntry(ByteBuffer entries, long position, Block b) {
+        entries.putLong(position);
+        entries.putLong(b.offset);
+        entries.putInt(b.stored);
+        entries.putInt(b.length);
+    }
+
+    private void appendEntries(byte[] data) throws IOException {
+        index.write((long) entries * ENTRY_SIZE, data);
+        entries += data.length / ENTRY_SIZE;
+    }
+
+    /**
+     * Read the offset index, and rewrite it if most of its entries are
+     * stale. If it cannot be read the store starts out empty.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            int n = (int) (index.size() / ENTRY_SIZE);
+            byte[] stored = new byte[n * ENTRY_SIZE];
+            if (n > 0) {
+                index.read(0, stored);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(stored);
+            for (int i = 0; i < n; i++) {
+                long position = bb.getLong();
+                Block b = new Block(bb.getLong(), bb.getInt(), bb.getInt());
+                Block old = blocks.get(position);
+                if (old != null && old.offset != b.offset) {
+                    garbage += old.space();
+                }
+                put(position, b);
+                end = Math.max(end, b.offset + b.space());
+            }
+            entries = n;
+            // 数据写入后、索引项写入前崩溃时，数据文件末尾可能有不属于任何块的字节
+            end = Math.max(end, (super.size() + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+            if (n > 2 * blocks.size() + 64) {
+                compactIndex();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Replace the sidecar with one holding a single entry per block.
+     */
+    private void compactIndex() throws IOException {
+        File target = indexFile(getFile());
+        File tmp = new File(target.getPath() + ".tmp");
+        ByteBuffer bb = ByteBuffer.allocate(blocks.size() * ENTRY_SIZE);
+        for (Map.Entry<Long, Block> e : blocks.entrySet()) {
+            putEntry(bb, e.getKey(), e.getValue());
+        }
+        PageStore compacted = new PageStore(tmp);
+        compacted.write(0, bb.array());
+        compacted.force();
+        compacted.close();
+        index.close();
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        entries = blocks.size();
+    }
+}
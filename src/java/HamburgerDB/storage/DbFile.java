@@ -7,7 +7,10 @@ import HamburgerDB.transaction.TransactionAbortedException;
 import HamburgerDB.transaction.TransactionId;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -32,6 +35,20 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Push several pages of this file to disk. The pages are sorted by page
+     * number, so implementations may coalesce adjacent pages into larger
+     * sequential writes.
+     *
+     * @param pages the pages to write, sorted by page number
+     * @throws IOException if a write fails
+     */
+    default void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages) {
+            writePage(p);
+        }
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -47,6 +64,29 @@ public interface DbFile {
     List<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts a batch of tuples to the file on behalf of transaction, as if
+     * {@link #insertTuple} was called for each of them. Files that can fill
+     * a page with several tuples at once should override this.
+     *
+     * @param tid    The transaction performing the update
+     * @param tuples The tuples to add. Each tuple is updated to reflect where
+     *               it is now stored.
+     * @return the pages that were modified, each listed once
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    default List<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        Map<PageId, Page> modified = new LinkedHashMap<>();
+        for (Tuple t : tuples) {
+            for (Page p : insertTuple(tid, t)) {
+                modified.put(p.getId(), p);
+            }
+        }
+        return new ArrayList<>(modified.values());
+    }
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -72,6 +112,35 @@ public interface DbFile {
      */
     DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over all the tuples stored in this DbFile that reads
+     * its pages through the given access strategy. Files that do not support
+     * access strategies return {@link #iterator(TransactionId)}.
+     *
+     * @param strategy the access strategy for the scan, or null to read pages
+     *                 through the buffer pool normally
+     * @see BufferAccessStrategy
+     */
+    default DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy) {
+        return iterator(tid);
+    }
+
+    /**
+     * Returns an iterator over all the tuples stored in this DbFile of which
+     * the caller only uses the fields in columns. Files that store columns
+     * apart, such as {@link ColumnarFile}, read only those columns and leave
+     * the other fields of the tuples null; other files return
+     * {@link #iterator(TransactionId, BufferAccessStrategy)}.
+     *
+     * @param strategy the access strategy for the scan, or null to read pages
+     *                 through the buffer pool normally
+     * @param columns  the indexes of the fields the caller uses, or null for
+     *                 all of them
+     */
+    default DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy, int[] columns) {
+        return iterator(tid, strategy);
+    }
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDatabaseFile} and
@@ -93,4 +162,12 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     TupleDesc getTupleDesc();
+
+    /**
+     * Returns the size in bytes of the pages of this DbFile. Files that do
+     * not choose their own page size use {@link BufferPool#getPageSize()}.
+     */
+    default int getPageSize() {
+        return BufferPool.getPageSize();
+    }
 }
@@ -3,9 +3,11 @@ package HamburgerDB.storage;
 import HamburgerDB.common.Type;
 import HamburgerDB.execution.Predicate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for values of fields in tuples in SimpleDB.
@@ -20,6 +22,23 @@ public interface Field extends Serializable {
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the bytes representing this field to buf at its position, in the
+     * same format as {@link #serialize(DataOutputStream)}, and advance the
+     * position past them.
+     *
+     * @param buf The buffer to write to.
+     */
+    default void serialize(ByteBuffer buf) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(getType().getLen());
+        try {
+            serialize(new DataOutputStream(baos));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        buf.put(baos.toByteArray());
+    }
+
     /**
      * Compare the value of this field object to the passed in value.
      *
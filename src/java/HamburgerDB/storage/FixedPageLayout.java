@@ -0,0 +1,167 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Catalog;
+import HamburgerDB.common.Type;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * The original layout of heap pages: a set of header bytes indicating the
+ * slots of the page that are in use, followed by the tuple slots, each
+ * tuple taking {@link TupleDesc#getSize()} bytes.
+ * Specifically, the number of tuples is equal to: <p>
+ * floor((page size*8) / (tuple size * 8 + 1))
+ * <p> where tuple size is the size of tuples in this
+ * database table, which can be determined via {@link Catalog#getTupleDesc}.
+ * The number of 8-bit header words is equal to:
+ * <p>
+ * ceiling(no. tuple slots / 8)
+ * <p>
+ * Free space is counted in slots. Empty slots are all zero.
+ */
+class FixedPageLayout extends HeapPageLayout {
+
+    private final int numSlots;
+    private final int headerSize;
+
+    FixedPageLayout(TupleDesc td, int pageSize) {
+        super(td, pageSize);
+        this.numSlots = (int) Math.floor((pageSize * 8.0) / (td.getSize() * 8.0 + 1.0));
+        this.headerSize = (int) Math.ceil(numSlots / 8.0);
+    }
+
+    @Override
+    int minLength() {
+        return headerSize + numSlots * td.getSize();
+    }
+
+    @Override
+    int headerLength(ByteBuffer page) {
+        return headerSize;
+    }
+
+    @Override
+    int numSlots(ByteBuffer page) {
+        return numSlots;
+    }
+
+    @Override
+    boolean slotUsed(ByteBuffer page, int i) {
+        int index = i / 8;
+        int offset = i % 8;
+        return ((page.get(index) >> offset) & 1) == 1;
+    }
+
+    @Override
+    int nextUsedSlot(ByteBuffer page, int from) {
+        int i = from;
+        while (i < numSlots) {
+            int bits = (page.get(i / 8) & 0xff) >>> (i % 8);
+            if (bits == 0) {
+                //跳过整个空字节
+                i = (i / 8 + 1) * 8;
+            } else {
+                i += Integer.numberOfTrailingZeros(bits);
+                break;
+            }
+        }
+        return Math.min(i, numSlots);
+    }
+
+    @Override
+    int getNumEmptySlots(ByteBuffer page) {
+        int used = 0;
+        for (int i = 0; i < numSlots / 8; i++) {
+            used += Integer.bitCount(page.get(i) & 0xff);
+        }
+        for (int i = numSlots / 8 * 8; i < numSlots; i++) {
+            if (slotUsed(page, i)) {
+                used++;
+            }
+        }
+        return numSlots - used;
+    }
+
+    @Override
+    int getCapacity() {
+        return numSlots;
+    }
+
+    @Override
+    int getFreeSpace(ByteBuffer page) {
+        return getNumEmptySlots(page);
+    }
+
+    @Override
+    int spaceNeeded(Tuple t) {
+        return 1;
+    }
+
+    private int slotOffset(int slotId) {
+        return headerSize + slotId * td.getSize();
+    }
+
+    /**
+     * 取出一个slot中tuple的字节，字段在第一次访问时才解码
+     */
+    @Override
+    Tuple readTuple(ByteBuffer page, HeapPageId pid, int slot) {
+        if (!slotUsed(page, slot)) {
+            return null;
+        }
+        byte[] encoded = new byte[td.getSize()];
+        ByteBuffer buf = page.duplicate();
+        buf.position(slotOffset(slot));
+        buf.get(encoded);
+        return new Tuple(td, new RecordId(pid, slot), encoded);
+    }
+
+    @Override
+    Field readField(ByteBuffer page, int slot, int field) throws ParseException {
+        Type type = td.getFieldType(field);
+        ByteBuffer buf = page.duplicate();
+        buf.position(slotOffset(slot) + td.getFieldOffset(field));
+        return type.parse(buf);
+    }
+
+    @Override
+    int insertTuple(ByteBuffer page, Tuple t, int from) {
+        for (int i = from; i < numSlots; i++) {
+            if (!slotUsed(page, i)) {
+                ByteBuffer buf = page.duplicate();
+                int offset = slotOffset(i);
+                for (int j = 0; j < td.numFields(); j++) {
+                    buf.position(offset);
+                    t.getField(j).serialize(buf);
+                    offset += td.getFieldType(j).getLen();
+                }
+                setSlot(page, i, true);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    void deleteTuple(ByteBuffer page, int slot) {
+        //空slot在磁盘上全为0
+        int offset = slotOffset(slot);
+        for (int i = 0; i < td.getSize(); i++) {
+            page.put(offset + i, (byte) 0);
+        }
+        setSlot(page, slot, false);
+    }
+
+    private void setSlot(ByteBuffer page, int i, boolean value) {
+        int index = i / 8;
+        int offset = i % 8;
+        int tmp = 1 << (offset);
+        byte b = page.get(index);
+        if (value) {
+            page.put(index, (byte) (b | tmp));
+        } else {
+            page.put(index, (byte) (b & ~tmp));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package HamburgerDB.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * FrameArena is the memory the {@link BufferPool} keeps its pages in. It
+ * hands out page-sized frames carved from a few large direct
+ * {@link ByteBuffer}s, so the bytes of cached pages live outside the Java
+ * heap and a large pool adds almost nothing for the garbage collector to
+ * trace or copy.
+ * <p>
+ * The arena is sized when the buffer pool is created and never grows beyond
+ * that. Its memory is reserved in chunks of {@link #CHUNK_FRAMES} frames the
+ * first time they are needed, and frames are recycled through a free list.
+ * Pages that get no frame, for instance because the page size was changed
+ * after the pool was created, simply stay on the heap.
+ *
+ * @Threadsafe
+ */
+public class FrameArena {
+
+    /**
+     * Number of frames reserved at a time.
+     */
+    public static final int CHUNK_FRAMES = 256;
+
+    private final int capacity;
+    private final int frameSize;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    // 已经分配出去的直接内存可以容纳的帧数
+    private int reserved;
+    private int inUse;
+
+    /**
+     * @param capacity  the number of frames in the arena
+     * @param frameSize the size of a frame in bytes
+     */
+    public FrameArena(int capacity, int frameSize) {
+        if (capacity < 0 || frameSize < 1) {
+            throw new IllegalArgumentException("bad arena size " + capacity + " x " + frameSize);
+        }
+        this.capacity = capacity;
+        this.frameSize = frameSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return the number of frames currently handed out
+     */
+    public synchronized int getFramesInUse() {
+        return inUse;
+    }
+
+    /**
+     * @return the number of bytes of direct memory reserved so far
+     */
+    public synchronized long getReservedBytes() {
+        return (long) reserved * frameSize;
+    }
+
+    /**
+     * Take a frame from the arena. The content of the frame is undefined.
+     *
+     * @return a frame of exactly getFrameSize() bytes, or null if all frames
+     * are in use
+     */
+    public synchronized ByteBuffer allocate() {
+        if (free.isEmpty()) {
+            if (reserved >= capacity) {
+                return null;
+            }
+            reserveChunk();
+        }
+        inUse++;
+        return free.pop();
+    }
+
+    /**
+     * Return a frame obtained from {@link #allocate()}. The caller must no
+     * longer access it.
+     */
+    public synchronized void release(ByteBuffer frame) {
+        frame.clear();
+        free.push(frame);
+        inUse--;
+    }
+
+    private void reserveChunk() {
+        int frames = Math.min(CHUNK_FRAMES, capacity - reserved);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(frames * frameSize);
+        for (int i = 0; i < frames; i++) {
+            chunk.limit((i + 1) * frameSize);
+            chunk.position(i * frameSize);
+            free.add(chunk.slice());
+        }
+        reserved += frames;
+    }
+}
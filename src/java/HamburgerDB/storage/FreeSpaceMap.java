@@ -0,0 +1,228 @@
+package HamburgerDB.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap remembers roughly how much room each page of a
+ * {@link HeapFile} has, so that an insert can go straight to a page with
+ * room instead of trying the pages of the file one by one.
+ * <p>
+ * The free space of a page is kept as a category of one byte: 0 for a full
+ * page and 1 to {@link #CATEGORIES} - 1 for increasing fractions of free
+ * space, see {@link #category}. Free space is counted in whatever units the
+ * pages of the file use, e.g. slots or bytes. Pages
+ * whose category is not known yet, e.g. pages of a file written before the
+ * map existed, are in a separate bucket and are tried after all pages known
+ * to have room. The map is a hint: callers check the page itself and report
+ * what they found with {@link #update}.
+ * <p>
+ * The categories are stored one byte per page in a sidecar file next to the
+ * heap file and written back with {@link #flush()}, which only writes the
+ * range of pages whose category changed.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /**
+     * Number of free space categories, including 0 for full pages.
+     */
+    public static final int CATEGORIES = 16;
+
+    // 磁盘上的未知类别
+    private static final byte UNKNOWN = (byte) 0xFF;
+
+    private final PageStore store;
+    private boolean loaded;
+    private byte[] categories = new byte[0];
+    private int size;
+    // 每个类别中的页（最后一个是类别未知的页），以及每个类别中可能有页的最小页号
+    private final BitSet[] buckets = new BitSet[CATEGORIES + 1];
+    private final int[] first = new int[CATEGORIES + 1];
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = -1;
+    // sidecar文件的长度，写入时不能在文件末尾留下空洞（空洞会被读成类别0）
+    private int persisted;
+
+    /**
+     * Creates the map of a heap file, stored next to it. The sidecar file is
+     * read on first use.
+     */
+    public FreeSpaceMap(File heapFile) {
+        this.store = new PageStore(new File(heapFile.getPath() + ".fsm"));
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new BitSet();
+        }
+    }
+
+    /**
+     * @return the category of a page with free units of space out of
+     * capacity
+     */
+    public static int category(int free, int capacity) {
+        if (free <= 0) {
+            return 0;
+        }
+        return 1 + (int) ((long) (free - 1) * (CATEGORIES - 1) / Math.max(1, capacity));
+    }
+
+    /**
+     * @return the lowest category whose pages are sure to have needed units
+     * of space out of capacity, or {@link #CATEGORIES} if no category is
+     * sure to
+     */
+    public static int categoryFor(int needed, int capacity) {
+        for (int c = 1; c < CATEGORIES; c++) {
+            // category(free) >= c 当且仅当 free >= ceil((c-1)*capacity/(CATEGORIES-1)) + 1
+            long least = ((long) (c - 1) * capacity + CATEGORIES - 2) / (CATEGORIES - 1) + 1;
+            if (least >= needed) {
+                return c;
+            }
+        }
+        return CATEGORIES;
+    }
+
+    /**
+     * Find a page that probably has room for one more tuple.
+     *
+     * @param numPages the number of pages in the file; pages the map does
+     *                 not know about yet are candidates
+     * @return the number of the page, or -1 if every page is known to be
+     * full
+     */
+    public int findPage(int numPages) {
+        return findPage(numPages, 1);
+    }
+
+    /**
+     * Find a page that is in category minCategory or above, or whose
+     * category is not known.
+     *
+     * @param numPages the number of pages in the file; pages the map does
+     *                 not know about yet are candidates
+     * @return the number of the page, or -1 if there is none
+     * @see #categoryFor
+     */
+    public synchronized int findPage(int numPages, int minCategory) {
+        load();
+        grow(numPages);
+        // 优先用剩余空间最少但还有空间的页，让空页留给以后
+        for (int c = Math.max(1, minCategory); c <= CATEGORIES; c++) {
+            int pgNo = buckets[c].nextSetBit(first[c]);
+            first[c] = pgNo < 0 ? size : pgNo;
+            if (pgNo >= 0 && pgNo < numPages) {
+                return pgNo;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Record that page pgNo has free units of space out of capacity.
+     */
+    public synchronized void update(int pgNo, int free, int capacity) {
+        load();
+        grow(pgNo + 1);
+        set(pgNo, category(free, capacity));
+    }
+
+    /**
+     * @return the category recorded for page pgNo, or -1 if it is not known
+     */
+    public synchronized int getCategory(int pgNo) {
+        load();
+        if (pgNo >= size || categories[pgNo] == UNKNOWN) {
+            return -1;
+        }
+        return categories[pgNo];
+    }
+
+    /**
+     * Write the categories that changed since the last flush to the sidecar
+     * file.
+     */
+    public synchronized void flush() throws IOException {
+        if (dirtyTo < dirtyFrom) {
+            return;
+        }
+        int from = Math.min(dirtyFrom, persisted);
+        store.write(from, Arrays.copyOfRange(categories, from, dirtyTo + 1));
+        persisted = Math.max(persisted, dirtyTo + 1);
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
+    }
+
+    /**
+     * Close the sidecar file.
+     */
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private void set(int pgNo, int category) {
+        int old = categories[pgNo] == UNKNOWN ? CATEGORIES : categories[pgNo];
+        if (old == category) {
+            return;
+        }
+        buckets[old].clear(pgNo);
+        buckets[category].set(pgNo);
+        first[category] = Math.min(first[category], pgNo);
+        categories[pgNo] = category == CATEGORIES ? UNKNOWN : (byte) category;
+        dirtyFrom = Math.min(dirtyFrom, pgNo);
+        dirtyTo = Math.max(dirtyTo, pgNo);
+    }
+
+    /**
+     * Make room for pages up to n; new pages are unknown.
+     */
+    private void grow(int n) {
+        if (n <= size) {
+            return;
+        }
+        if (n > categories.length) {
+            categories = Arrays.copyOf(categories, Math.max(n, 2 * categories.length));
+        }
+        Arrays.fill(categories, size, n, UNKNOWN);
+        buckets[CATEGORIES].set(size, n);
+        first[CATEGORIES] = Math.min(first[CATEGORIES], size);
+        size = n;
+    }
+
+    /**
+     * Read the sidecar file. If it cannot be read the map starts out
+     * knowing nothing, which only costs the inserts some page fetches.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        byte[] stored;
+        try {
+            int n = (int) store.size();
+            if (n == 0) {
+                return;
+            }
+            stored = new byte[n];
+            store.read(0, stored);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        int n = stored.length;
+        persisted = n;
+        grow(n);
+        for (int pgNo = 0; pgNo < n; pgNo++) {
+            if (stored[pgNo] != UNKNOWN) {
+                int category = Math.min(Math.max(stored[pgNo], 0), CATEGORIES - 1);
+                buckets[CATEGORIES].clear(pgNo);
+                buckets[category].set(pgNo);
+                first[category] = Math.min(first[category], pgNo);
+                categories[pgNo] = (byte) category;
+            }
+        }
+    }
+}
@@ -7,10 +7,11 @@ import HamburgerDB.transaction.TransactionAbortedException;
 import HamburgerDB.transaction.TransactionId;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -27,8 +28,22 @@ import java.util.NoSuchElementException;
  */
 public class HeapFile implements DbFile {
 
+    /**
+     * Maximum number of new pages a bulk insert appends to the file at once.
+     */
+    public static final int EXTENT_PAGES = 16;
+
     private File file;
     private TupleDesc tupleDesc;
+    private final PageStore store;
+    private final FreeSpaceMap freeSpaceMap;
+    // 只读为主的表可以通过mmap直接从页缓存解码页
+    private volatile boolean memoryMapped;
+    private volatile MappedByteBuffer mapping;
+    private volatile HeapPageFormat pageFormat = HeapPageFormat.FIXED;
+    private volatile HeapPageLayout layout;
+    // 0表示使用BufferPool的默认页大小
+    private volatile int pageSize;
 
 
     /**
@@ -38,9 +53,23 @@ public class HeapFile implements DbFile {
      *          file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * kept compressed on disk if compressed is set, see
+     * {@link CompressedPageStore}. A file must always be opened the same way.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public HeapFile(File f, TupleDesc td, boolean compressed) {
         // some code goes here
         file = f;
         tupleDesc = td;
+        store = compressed ? new CompressedPageStore(f) : new PageStore(f);
+        freeSpaceMap = new FreeSpaceMap(f);
     }
 
     /**
@@ -84,19 +113,24 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) {
         // some code goes here
         HeapPage heapPage = null;
-        int pageSize = BufferPool.getPageSize();
-        byte[] buf = new byte[pageSize];
+        int pageSize = getPageSize();
 
         try {
-            RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "r");
-            randomAccessFile.seek((long) pid.getPageNumber() * pageSize);
-            if (randomAccessFile.read(buf) == -1) {
-                return null;
+            if (memoryMapped) {
+                ByteBuffer region = mappedPage(pid.getPageNumber());
+                if (region != null) {
+                    heapPage = new HeapPage((HeapPageId) pid, region);
+                }
             }
-            heapPage = new HeapPage((HeapPageId) pid, buf);
-            randomAccessFile.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            if (heapPage == null) {
+                byte[] buf = store.read((long) pid.getPageNumber() * pageSize, pageSize);
+                if (buf == null) {
+                    return null;
+                }
+                heapPage = new HeapPage((HeapPageId) pid, buf);
+            }
+            //顺便校正空闲空间映射
+            noteFreeSpace(heapPage);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -108,13 +142,153 @@ public class HeapFile implements DbFile {
         // some code goes here
         // not necessary for lab1
         HeapPageId heapPageId = (HeapPageId) page.getId();
-        int size = BufferPool.getPageSize();
+        int size = getPageSize();
         int pageNumber = heapPageId.getPageNumber();
-        byte[] pageData = page.getPageData();
-        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
-        randomAccessFile.seek(pageNumber * size);
-        randomAccessFile.write(pageData);
-        randomAccessFile.close();
+        store.write((long) pageNumber * size, page, size);
+        freeSpaceMap.flush();
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        int size = getPageSize();
+        int i = 0;
+        while (i < pages.size()) {
+            //页号连续的页合并成一次写
+            int j = i + 1;
+            while (j < pages.size()
+                    && pages.get(j).getId().getPageNumber() == pages.get(j - 1).getId().getPageNumber() + 1) {
+                j++;
+            }
+            store.write((long) pages.get(i).getId().getPageNumber() * size, pages.subList(i, j), size);
+            i = j;
+        }
+        freeSpaceMap.flush();
+    }
+
+    /**
+     * Serve page reads from a read-only memory mapping of the file instead of
+     * read calls. Pages are decoded straight from the mapping, without a
+     * system call or an intermediate copy, which suits large tables that are
+     * mostly read. Writes still go through the {@link PageStore} and are seen
+     * through the mapping; the mapping is renewed when the file grows. A
+     * compressed file cannot be mapped and keeps using read calls.
+     * Normally set through {@link HamburgerDB.common.Catalog#setMemoryMapped}.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        if (!memoryMapped) {
+            mapping = null;
+        }
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Choose the format of the pages of this file. It must be set before the
+     * file holds pages, as pages are read in the format the table has when
+     * they are read. Normally set through
+     * {@link HamburgerDB.common.Catalog#setPageFormat}.
+     */
+    public void setPageFormat(HeapPageFormat pageFormat) {
+        this.pageFormat = pageFormat;
+        this.layout = null;
+    }
+
+    public HeapPageFormat getPageFormat() {
+        return pageFormat;
+    }
+
+    /**
+     * Choose the size of the pages of this file, which defaults to
+     * {@link BufferPool#getPageSize()}. Tables that are mostly scanned read
+     * fewer, larger pages with a size of 16 KB or more. Like the page format,
+     * it must be set before the file holds pages. Normally set through
+     * {@link HamburgerDB.common.Catalog#setPageSize}.
+     *
+     * @throws IllegalArgumentException if the size is not allowed, see
+     *                                  {@link BufferPool#checkPageSize}
+     */
+    public void setPageSize(int pageSize) {
+        BufferPool.checkPageSize(pageSize);
+        this.pageSize = pageSize;
+        this.layout = null;
+        this.mapping = null;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public int getPageSize() {
+        int size = pageSize;
+        return size > 0 ? size : BufferPool.getPageSize();
+    }
+
+    /**
+     * @return the layout of the pages of this file at the current page size
+     */
+    HeapPageLayout getPageLayout() {
+        HeapPageLayout l = layout;
+        if (l == null || l.pageSize != getPageSize()) {
+            l = pageFormat.layout(tupleDesc, getPageSize());
+            layout = l;
+        }
+        return l;
+    }
+
+    /**
+     * @return the region of the mapping that holds page pgNo, or null if the
+     * page lies past the end of the file or beyond what can be mapped
+     */
+    private ByteBuffer mappedPage(int pgNo) throws IOException {
+        int pageSize = getPageSize();
+        long offset = (long) pgNo * pageSize;
+        MappedByteBuffer m = mapping;
+        if (m == null || offset + pageSize > m.capacity()) {
+            synchronized (this) {
+                m = mapping;
+                if (m == null || offset + pageSize > m.capacity()) {
+                    //文件变长了，重新映射
+                    m = store.map();
+                    mapping = m;
+                }
+            }
+        }
+        if (m == null || offset + pageSize > m.capacity()) {
+            return null;
+        }
+        ByteBuffer region = m.duplicate();
+        region.position((int) offset);
+        region.limit((int) offset + pageSize);
+        return region;
+    }
+
+    /**
+     * Returns the PageStore this HeapFile reads and writes its pages through.
+     */
+    public PageStore getPageStore() {
+        return store;
+    }
+
+    /**
+     * Returns whether the pages of this HeapFile are compressed on disk.
+     */
+    public boolean isCompressed() {
+        return store instanceof CompressedPageStore;
+    }
+
+    /**
+     * Returns the map of free space in the pages of this HeapFile, which
+     * inserts use to find a page with room. It is written next to the file
+     * together with the pages.
+     */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpaceMap;
+    }
+
+    private void noteFreeSpace(HeapPage page) {
+        freeSpaceMap.update(page.getId().getPageNumber(), page.getFreeSpace(), page.getCapacity());
     }
 
     /**
@@ -122,7 +296,11 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
-        return (int) file.length() / BufferPool.getPageSize();
+        try {
+            return (int) (store.length() / getPageSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     // see DbFile.java for javadocs
@@ -130,35 +308,104 @@ public class HeapFile implements DbFile {
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        return insertTuples(tid, Collections.singletonList(t));
+    }
+
+    /**
+     * Fills the pages the free space map reports to have room one after the
+     * other, then appends empty pages for the remaining tuples in extents of
+     * up to {@link #EXTENT_PAGES} pages, written with a single write. The new
+     * pages are then write-locked and filled in the buffer pool like the
+     * others, so the table lock, the page lock and the before image apply to
+     * them too.
+     *
+     * @see DbFile#insertTuples
+     */
+    @Override
+    public List<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
         if (!getFile().canRead() || !getFile().canWrite()) {
             throw new IOException();
         }
         List<Page> res = new ArrayList<>();
-        for (int i = 0; i < numPages(); i++) {
-            HeapPageId heapPageId = new HeapPageId(getId(), i);
+        int next = 0;
+        //空闲空间映射只是提示，以取到的页的实际情况为准
+        int pgNo;
+        while (next < tuples.size() && (pgNo = freeSpaceMap.findPage(numPages(),
+                FreeSpaceMap.categoryFor(getPageLayout().spaceNeeded(tuples.get(next)),
+                        getPageLayout().getCapacity()))) >= 0) {
+            HeapPageId heapPageId = new HeapPageId(getId(), pgNo);
             HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, heapPageId, Permissions.READ_ONLY);
             if (heapPage == null) {
                 Database.getBufferPool().unsafeReleasePage(tid, heapPageId);
+                freeSpaceMap.update(pgNo, 0, 1);
                 continue;
             }
-            if (heapPage.getNumEmptySlots() == 0) {
+            if (heapPage.getFreeSpace() < heapPage.spaceNeeded(tuples.get(next))) {
                 Database.getBufferPool().unsafeReleasePage(tid, heapPageId);
+                noteFreeSpace(heapPage);
                 continue;
             }
-            heapPage.insertTuple(t);
+            //读锁只用来检查空间，写入前升级为写锁
+            heapPage = (HeapPage) Database.getBufferPool().getPage(tid, heapPageId, Permissions.READ_WRITE);
+            next = heapPage.insertTuples(tuples, next);
             heapPage.markDirty(true, tid);
+            noteFreeSpace(heapPage);
             res.add(heapPage);
-            return res;
         }
-        //新建一个page
-        HeapPageId heapPageId = new HeapPageId(getId(), numPages());
-        HeapPage heapPage = new HeapPage(heapPageId, HeapPage.createEmptyPageData());
-        heapPage.insertTuple(t);
-        writePage(heapPage);
-        res.add(heapPage);
+        //剩下的元组放进新页：在文件末尾按区追加空页，只有追加需要同步
+        int size = getPageSize();
+        int capacity = getPageLayout().getCapacity();
+        while (next < tuples.size()) {
+            int count = extentFor(tuples, next);
+            int first;
+            synchronized (this) {
+                first = numPages();
+                List<Page> extent = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    extent.add(new HeapPage(new HeapPageId(getId(), first + i), HeapPage.createEmptyPageData(size)));
+                }
+                writePages(extent);
+            }
+            //新页和已有的页一样先加写锁，再在缓冲池中填充
+            for (int newPgNo = first; newPgNo < first + count; newPgNo++) {
+                if (next == tuples.size()) {
+                    freeSpaceMap.update(newPgNo, capacity, capacity);
+                    continue;
+                }
+                HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid,
+                        new HeapPageId(getId(), newPgNo), Permissions.READ_WRITE);
+                int from = next;
+                next = heapPage.insertTuples(tuples, next);
+                noteFreeSpace(heapPage);
+                if (next == from) {
+                    if (heapPage.getFreeSpace() == capacity) {
+                        throw new DbException("tuple does not fit in a page");
+                    }
+                    //别的事务先用了这一页
+                    continue;
+                }
+                heapPage.markDirty(true, tid);
+                res.add(heapPage);
+            }
+        }
         return res;
     }
 
+    /**
+     * @return the number of new pages that tuples[from..] probably fill, at
+     * least one and at most {@link #EXTENT_PAGES}
+     */
+    private int extentFor(List<Tuple> tuples, int from) {
+        long space = 0;
+        long limit = (long) EXTENT_PAGES * getPageLayout().getCapacity();
+        for (int i = from; i < tuples.size() && space < limit; i++) {
+            space += getPageLayout().spaceNeeded(tuples.get(i));
+        }
+        int capacity = getPageLayout().getCapacity();
+        return (int) Math.max(1, Math.min(EXTENT_PAGES, (space + capacity - 1) / capacity));
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
@@ -171,6 +418,7 @@ public class HeapFile implements DbFile {
             throw new DbException("null");
         }
         heapPage.deleteTuple(t);
+        noteFreeSpace(heapPage);
         res.add(heapPage);
         return res;
     }
@@ -181,6 +429,24 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator(tid, Permissions.READ_ONLY);
     }
 
+    // see DbFile.java for javadocs
+    @Override
+    public DbFileIterator iterator(TransactionId tid, BufferAccessStrategy strategy) {
+        return new HeapFileIterator(tid, Permissions.READ_ONLY, strategy);
+    }
+
+    /**
+     * 预测顺序扫描接下来要读的页，即页号连续的后续页
+     */
+    private List<PageId> nextPages(PageId current, int count) {
+        int end = Math.min(numPages(), current.getPageNumber() + 1 + count);
+        List<PageId> res = new ArrayList<>(Math.max(0, end - current.getPageNumber() - 1));
+        for (int i = current.getPageNumber() + 1; i < end; i++) {
+            res.add(new HeapPageId(getId(), i));
+        }
+        return res;
+    }
+
     /**
      * 这个迭代器的作用是用来遍历所有的tuple，但是不要将所有tuple一次性放入内存，而是一页一页的读和遍历
      */
@@ -190,10 +456,18 @@ public class HeapFile implements DbFile {
         BufferPool bufferPool = Database.getBufferPool();
         Iterator<Tuple> iterator;  //这个iterator是每一页的迭代器
         int num = 0;
+        BufferAccessStrategy strategy; //为null时直接使用缓冲池
+        ReadAhead.Stream readAhead;
+        HeapPage pinned; //当前页在缓冲池中被钉住，换页或关闭时放开
 
         public HeapFileIterator(TransactionId tid, Permissions permissions) {
+            this(tid, permissions, null);
+        }
+
+        public HeapFileIterator(TransactionId tid, Permissions permissions, BufferAccessStrategy strategy) {
             this.tid = tid;
             this.permissions = permissions;
+            this.strategy = strategy;
         }
 
         /**
@@ -205,8 +479,13 @@ public class HeapFile implements DbFile {
         @Override
         public void open() throws DbException, TransactionAbortedException {
             num = 0;
+            if (readAhead != null) {
+                readAhead.close();
+            }
+            readAhead = bufferPool.getReadAhead().newStream(HeapFile.this, HeapFile.this::nextPages);
             HeapPageId heapPageId = new HeapPageId(getId(), num);
-            HeapPage page = (HeapPage) this.bufferPool.getPage(tid, heapPageId, permissions);
+            readAhead.access(heapPageId);
+            HeapPage page = pin(heapPageId);
             if (page == null) {
                 throw new DbException("page null");
             } else {
@@ -225,10 +504,13 @@ public class HeapFile implements DbFile {
             while (true) {
                 num++;
                 if (num >= numPages()) {
+                    //遍历完了，不再需要最后一页
+                    unpin();
                     return false;
                 }
                 HeapPageId heapPageId = new HeapPageId(getId(), num);
-                HeapPage page = (HeapPage) bufferPool.getPage(tid, heapPageId, permissions);
+                readAhead.access(heapPageId);
+                HeapPage page = pin(heapPageId);
                 if (page == null) {
                     continue;
                 }
@@ -240,6 +522,23 @@ public class HeapFile implements DbFile {
         }
 
 
+        /**
+         * 钉住新的当前页，并放开上一页
+         */
+        private HeapPage pin(HeapPageId heapPageId) throws DbException, TransactionAbortedException {
+            unpin();
+            HeapPage page = (HeapPage) bufferPool.pinPage(tid, heapPageId, permissions, strategy);
+            pinned = page;
+            return page;
+        }
+
+        private void unpin() {
+            if (pinned != null) {
+                bufferPool.unpinPage(tid, pinned);
+                pinned = null;
+            }
+        }
+
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
             if (iterator == null) {
@@ -268,6 +567,11 @@ public class HeapFile implements DbFile {
         @Override
         public void close() {
             iterator = null;
+            unpin();
+            if (readAhead != null) {
+                readAhead.close();
+                readAhead = null;
+            }
         }
     }
 
@@ -6,14 +6,22 @@ import HamburgerDB.common.DbException;
 import HamburgerDB.transaction.TransactionId;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the page in its on-disk format; inserts and deletes
+ * update the bytes in place. Tuples are read from it when they are accessed,
+ * and their fields are decoded one by one as they are used.
+ * While the page is cached by the {@link BufferPool} the bytes live in a
+ * frame of the pool's {@link FrameArena}, outside the Java heap, and they
+ * are copied back to the heap when the page leaves the pool.
  *
  * @see HeapFile
  * @see BufferPool
@@ -22,12 +30,20 @@ public class HeapPage implements Page {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte[] header;
-    final Tuple[] tuples;
-    final int numSlots;
-
+    // 页的格式，由表决定
+    private final HeapPageLayout layout;
+    private final int pageSize;
+
+    // 页的原始字节：位于缓冲池的帧中、堆上，或者与映射的文件共享（只读）
+    private ByteBuffer data;
+    private ByteBuffer frame;
+    private FrameArena arena;
+    // 保护data被替换（进出缓冲池的帧），读写字节本身由事务的页锁保护
+    private final StampedLock frameLock = new StampedLock();
+
+    // 本事务第一次修改前的内容，为null表示页还没被修改过，before image就是当前内容
     byte[] oldData;
-    private final Byte oldDataLock = (byte) 0;
+    private final Object oldDataLock = new Object();
     private Boolean dirty;
     private TransactionId transactionId;
 
@@ -36,66 +52,71 @@ public class HeapPage implements Page {
      * - 头信息
      * - 所有tuple数据
      * Create a HeapPage from a set of bytes of data read from disk.
-     * The format of a HeapPage is a set of header bytes indicating
-     * the slots of the page that are in use, some number of tuple slots.
-     * Specifically, the number of tuples is equal to: <p>
-     * floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1))
+     * The format of the bytes is the {@link HeapPageFormat} of the table,
+     * by default {@link HeapPageFormat#FIXED}: a set of header bytes
+     * indicating the slots of the page that are in use, some number of tuple
+     * slots. Specifically, the number of tuples is equal to: <p>
+     * floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
-     * database table, which can be determined via {@link Catalog#getTupleDesc}.
+     * database table, which can be determined via {@link Catalog#getTupleDesc},
+     * and the page size is that of the table, see {@link DbFile#getPageSize()}.
      * The number of 8-bit header words is equal to:
      * <p>
      * ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied, so the caller may reuse data afterwards.
      *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#getPageSize()
+     * @see DbFile#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
-        this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
-        this.numSlots = getNumTuples();
-        this.dirty = false;
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
-
-        tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++)
-                tuples[i] = readNextTuple(dis, i);
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
-        }
-        dis.close();
-
-        setBeforeImage();
+        this(id, ByteBuffer.wrap(data));
     }
 
     /**
-     * Retrieve the number of tuples on this page.
-     * 在header中，每一个tuple都有一bit来表示记录是否有效
+     * Create a HeapPage from the bytes of a page that start at the position
+     * of data, e.g. a region of a memory-mapped table file. Neither data nor
+     * its position is modified. If data is read-only the page shares it until
+     * the page is first modified; otherwise the bytes are copied.
      *
-     * @return the number of tuples on this page
+     * @see #HeapPage(HeapPageId, byte[])
      */
-    private int getNumTuples() {
-        // some code goes here
-        return (int) Math.floor((BufferPool.getPageSize() * 8.0) / (td.getSize() * 8.0 + 1.0));
-
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this.pid = id;
+        DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = file.getTupleDesc();
+        this.layout = file instanceof HeapFile ? ((HeapFile) file).getPageLayout()
+                : HeapPageFormat.FIXED.layout(td, file.getPageSize());
+        this.pageSize = layout.pageSize;
+        this.dirty = false;
+        ByteBuffer buf = data.duplicate();
+        if (buf.remaining() < layout.minLength()) {
+            throw new IOException("page " + id.getPageNumber() + " is truncated");
+        }
+        if (buf.isReadOnly() && buf.remaining() >= pageSize) {
+            buf.limit(buf.position() + pageSize);
+            this.data = buf.slice();
+        } else {
+            if (buf.remaining() > pageSize) {
+                buf.limit(buf.position() + pageSize);
+            }
+            this.data = ByteBuffer.allocate(pageSize);
+            this.data.put(buf);
+            this.data.clear();
+        }
     }
 
     /**
-     * Computes the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
-     *
-     * @return the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
+     * @return the number of slots on this page; slot numbers are below it
      */
-    private int getHeaderSize() {
-        // some code goes here
-        return (int) Math.ceil(getNumTuples() / 8.0);
+    public int getNumSlots() {
+        long stamp = frameLock.readLock();
+        try {
+            return layout.numSlots(data);
+        } finally {
+            frameLock.unlockRead(stamp);
+        }
     }
 
     /**
@@ -103,26 +124,44 @@ public class HeapPage implements Page {
      * -- used by recovery
      */
     public HeapPage getBeforeImage() {
+        long stamp = frameLock.readLock();
         try {
-            byte[] oldDataRef = null;
             synchronized (oldDataLock) {
-                oldDataRef = oldData;
+                //还没被修改过时，当前内容就是before image
+                byte[] before = oldData != null ? oldData : copyData();
+                return new HeapPage(pid, ByteBuffer.wrap(before).asReadOnlyBuffer());
             }
-            return new HeapPage(pid, oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
             System.exit(1);
+        } finally {
+            frameLock.unlockRead(stamp);
         }
         return null;
     }
 
+    /**
+     * The current content becomes the before image. Nothing is copied: the
+     * bytes are saved when the page is next modified, see {@link #writable(long)}.
+     */
     public void setBeforeImage() {
         synchronized (oldDataLock) {
-            oldData = getPageData().clone();
+            oldData = null;
         }
     }
 
+    /**
+     * @return a copy of the bytes of this page. The caller holds frameLock.
+     */
+    private byte[] copyData() {
+        byte[] res = new byte[pageSize];
+        ByteBuffer buf = data.duplicate();
+        buf.clear();
+        buf.get(res);
+        return res;
+    }
+
     /**
      * @return the PageId associated with this page.
      */
@@ -132,40 +171,44 @@ public class HeapPage implements Page {
     }
 
     /**
-     * 从流中读取一个tuple，这个next就很歧义。。。其实就是获取当前slotId的tuple
-     * 注意：这里因为是在初始化时流式的读取，因此就算为空也要读取完这个空tuple，方便读取下一个tuple
-     * Suck up tuples from the source file.
+     * Decode the tuple in a slot of this page.
+     *
+     * @return the tuple, or null if the slot is empty
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            //空tuple要将空bit读完
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
+    public Tuple getTuple(int slotId) {
+        long stamp = frameLock.readLock();
+        try {
+            if (slotId < 0 || slotId >= layout.numSlots(data)) {
+                throw new NoSuchElementException("no slot " + slotId);
             }
-            return null;
+            return layout.readTuple(data, pid, slotId);
+        } finally {
+            frameLock.unlockRead(stamp);
         }
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
+    /**
+     * Decode a single field of the tuple in a slot of this page, without
+     * decoding the rest of the tuple.
+     *
+     * @return the field, or null if the slot is empty
+     */
+    public Field getField(int slotId, int fieldIndex) {
+        long stamp = frameLock.readLock();
         try {
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+            if (slotId < 0 || slotId >= layout.numSlots(data)) {
+                throw new NoSuchElementException("no slot " + slotId);
             }
+            if (!layout.slotUsed(data, slotId)) {
+                return null;
+            }
+            return layout.readField(data, slotId, fieldIndex);
         } catch (java.text.ParseException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
+        } finally {
+            frameLock.unlockRead(stamp);
         }
-
-        return t;
     }
 
     /**
@@ -180,62 +223,25 @@ public class HeapPage implements Page {
      * @see #HeapPage
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        byte[] res = new byte[pageSize];
+        writePageData(ByteBuffer.wrap(res));
+        return res;
+    }
 
+    /**
+     * The page is kept in its on-disk format and modified in place, so this
+     * is a single bulk copy.
+     */
+    @Override
+    public void writePageData(ByteBuffer dst) {
+        long stamp = frameLock.readLock();
         try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+            ByteBuffer buf = data.duplicate();
+            buf.clear();
+            dst.put(buf);
+        } finally {
+            frameLock.unlockRead(stamp);
         }
-
-        return baos.toByteArray();
     }
 
     /**
@@ -248,8 +254,16 @@ public class HeapPage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.getPageSize();
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the data of an empty page of a table with pages of pageSize
+     * bytes
+     * @see DbFile#getPageSize()
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -263,25 +277,17 @@ public class HeapPage implements Page {
     public void deleteTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
-//        for(int i=0;i<getNumTuples();i++){
-//            if(tuples[i]==null){
-//                continue;
-//            }
-//
-//            if(tuples[i].equals(t)){
-//                if(!isSlotUsed(i)){
-//                    throw  new DbException("slot is not used");
-//                }
-//                tuples[i]  =null;
-//                markSlotUsed(i,false);
-//                return;
-//            }
-//        }
         int tupleNumber = t.getRecordId().getTupleNumber();
-        if (isSlotUsed(tupleNumber) && tuples[tupleNumber].equals(t)) {
-            tuples[tupleNumber] = null;
-            markSlotUsed(tupleNumber, false);
-            return;
+        long stamp = frameLock.readLock();
+        try {
+            if (tupleNumber >= 0 && tupleNumber < layout.numSlots(data)
+                    && t.equals(layout.readTuple(data, pid, tupleNumber))) {
+                stamp = writable(stamp);
+                layout.deleteTuple(data, tupleNumber);
+                return;
+            }
+        } finally {
+            frameLock.unlock(stamp);
         }
         throw new DbException("tuple is not in tuples");
     }
@@ -297,23 +303,53 @@ public class HeapPage implements Page {
     public void insertTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
-        if (getNumEmptySlots() == 0) {
-            throw new DbException("slots if empty");
-        }
         //判断元数据是否正常
         if (!t.getTupleDesc().equals(this.td)) {
             throw new DbException("insert tuple err");
         }
-        for (int i = 0; i < numSlots; i++) {
-            if (tuples[i] != null) {
-                continue;
+        long stamp = frameLock.readLock();
+        try {
+            if (layout.getFreeSpace(data) < layout.spaceNeeded(t)) {
+                throw new DbException("slots if empty");
             }
-            if (!isSlotUsed(i)) {
-                tuples[i] = t;
-                tuples[i].setRecordId(new RecordId(pid, i));
-                markSlotUsed(i, true);
-                return;
+            stamp = writable(stamp);
+            int slot = layout.insertTuple(data, t, 0);
+            t.setRecordId(new RecordId(pid, slot));
+        } finally {
+            frameLock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Adds tuples to the empty slots of the page, starting with tuples[from],
+     * until the page has no room for the next tuple or the list is
+     * exhausted. Like {@link #insertTuple} but with a single pass over the
+     * slots.
+     *
+     * @return the index of the first tuple that was not added
+     * @throws DbException if a tuple's tupledesc is mismatch
+     */
+    public int insertTuples(List<Tuple> tuples, int from) throws DbException {
+        long stamp = frameLock.readLock();
+        try {
+            //已经填过的slot不用再找
+            int slot = 0;
+            while (from < tuples.size()) {
+                Tuple t = tuples.get(from);
+                if (!t.getTupleDesc().equals(this.td)) {
+                    throw new DbException("insert tuple err");
+                }
+                if (layout.getFreeSpace(data) < layout.spaceNeeded(t)) {
+                    break;
+                }
+                stamp = writable(stamp);
+                slot = layout.insertTuple(data, t, slot);
+                t.setRecordId(new RecordId(pid, slot));
+                from++;
             }
+            return from;
+        } finally {
+            frameLock.unlock(stamp);
         }
     }
 
@@ -346,13 +382,40 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int count = 0;
-        for (int i = 0; i < numSlots; i++) {
-            if (((header[i / 8] >> (i % 8)) & 1) == 0) {
-                count++;
-            }
+        long stamp = frameLock.readLock();
+        try {
+            return layout.getNumEmptySlots(data);
+        } finally {
+            frameLock.unlockRead(stamp);
         }
-        return count;
+    }
+
+    /**
+     * @return the free space of this page, in the units of its format: slots
+     * for {@link HeapPageFormat#FIXED}, bytes for
+     * {@link HeapPageFormat#SLOTTED}
+     */
+    public int getFreeSpace() {
+        long stamp = frameLock.readLock();
+        try {
+            return layout.getFreeSpace(data);
+        } finally {
+            frameLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the free space of an empty page of this format
+     */
+    public int getCapacity() {
+        return layout.getCapacity();
+    }
+
+    /**
+     * @return the free space this page needs to take t
+     */
+    public int spaceNeeded(Tuple t) {
+        return layout.spaceNeeded(t);
     }
 
     /**
@@ -360,42 +423,185 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        int index = i / 8;
-        int offset = i % 8;
-        return ((header[index] >> offset) & 1) == 1;
+        long stamp = frameLock.tryOptimisticRead();
+        boolean used;
+        try {
+            used = layout.slotUsed(data, i);
+        } catch (IndexOutOfBoundsException e) {
+            //帧被替换时读到的可能是无效位置
+            used = false;
+        }
+        if (!frameLock.validate(stamp)) {
+            stamp = frameLock.readLock();
+            try {
+                used = layout.slotUsed(data, i);
+            } finally {
+                frameLock.unlockRead(stamp);
+            }
+        }
+        return used;
     }
 
     /**
-     * Abstraction to fill or clear a slot on this page.
+     * Called before every modification of the bytes of this page. Saves the
+     * before image on the first modification since {@link #setBeforeImage()},
+     * and copies the bytes to the heap if they are still shared with a
+     * read-only buffer. Like {@link #moveTo}, the copy replaces data under
+     * the write lock, which the read lock of the caller is converted to.
+     *
+     * @param stamp the stamp of the frameLock the caller holds
+     * @return the stamp the caller holds afterwards and unlocks
      */
-    private void markSlotUsed(int i, boolean value) {
-        // some code goes here
-        // not necessary for lab1
-        int index = i / 8;
-        int offset = i % 8;
-        int tmp = 1 << (offset);
-        byte b = header[index];
-        if (value) {
-            header[index] = (byte) (b | tmp);
-        } else {
-            header[index] = (byte) (b & ~tmp);
+    private long writable(long stamp) {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = copyData();
+            }
+        }
+        if (!data.isReadOnly()) {
+            return stamp;
+        }
+        long ws = frameLock.tryConvertToWriteLock(stamp);
+        if (ws == 0L) {
+            //还有别的读者，放开读锁再等写锁，等到后重新检查
+            frameLock.unlockRead(stamp);
+            ws = frameLock.writeLock();
+        }
+        if (data.isReadOnly()) {
+            //第一次修改与映射文件共享的页，先复制一份
+            ByteBuffer copy = ByteBuffer.allocate(pageSize);
+            copy.put(data.duplicate());
+            copy.clear();
+            data = copy;
+        }
+        return ws;
+    }
+
+    /**
+     * Move the bytes of this page into a frame of arena. Pages that share a
+     * read-only mapping stay where they are.
+     *
+     * @return true if the page now lives in a frame of arena
+     */
+    boolean moveTo(FrameArena arena) {
+        if (arena.getFrameSize() != pageSize) {
+            return false;
+        }
+        long stamp = frameLock.writeLock();
+        try {
+            if (frame != null || data.isReadOnly()) {
+                return frame != null && this.arena == arena;
+            }
+            ByteBuffer f = arena.allocate();
+            if (f == null) {
+                return false;
+            }
+            f.put(data.duplicate());
+            f.clear();
+            data = f;
+            frame = f;
+            this.arena = arena;
+            return true;
+        } finally {
+            frameLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copy the bytes of this page back to the heap and give its frame back
+     * to the arena.
+     */
+    void moveToHeap() {
+        long stamp = frameLock.writeLock();
+        try {
+            if (frame == null) {
+                return;
+            }
+            ByteBuffer heap = ByteBuffer.allocate(pageSize);
+            heap.put(frame.duplicate());
+            heap.clear();
+            data = heap;
+            arena.release(frame);
+            frame = null;
+            arena = null;
+        } finally {
+            frameLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return true if the bytes of this page live in a frame of a
+     * {@link FrameArena}
+     */
+    public boolean isInFrame() {
+        long stamp = frameLock.readLock();
+        try {
+            return frame != null;
+        } finally {
+            frameLock.unlockRead(stamp);
         }
     }
 
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
+     * The iterator walks the slots that were in use when it was created and
+     * reads each tuple from the page as it is returned; slots emptied in the
+     * meantime are skipped.
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        List<Tuple> tuples = new ArrayList<>();
-        for (int i = 0; i < numSlots; i++) {
-            if (isSlotUsed(i)) {
-                tuples.add(this.tuples[i]);
+        return new TupleIterator();
+    }
+
+    private class TupleIterator implements Iterator<Tuple> {
+
+        // 创建时header的快照，迭代过程中插入的tuple不会被返回
+        private final ByteBuffer header;
+        private final int numSlots;
+        private int slot = -1;
+        private Tuple next;
+
+        TupleIterator() {
+            long stamp = frameLock.readLock();
+            try {
+                byte[] copy = new byte[layout.headerLength(data)];
+                ByteBuffer buf = data.duplicate();
+                buf.clear();
+                buf.get(copy);
+                header = ByteBuffer.wrap(copy);
+                numSlots = layout.numSlots(header);
+            } finally {
+                frameLock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                slot = layout.nextUsedSlot(header, slot + 1);
+                if (slot >= numSlots) {
+                    return false;
+                }
+                long stamp = frameLock.readLock();
+                try {
+                    next = layout.readTuple(data, pid, slot);
+                } finally {
+                    frameLock.unlockRead(stamp);
+                }
             }
+            return true;
+        }
+
+        @Override
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
         }
-        return tuples.iterator();
     }
 
 }
-
@@ -0,0 +1,30 @@
+package HamburgerDB.storage;
+
+/**
+ * The on-disk formats of the pages of a {@link HeapFile}. The format is a
+ * property of the table and must not change once the file holds pages.
+ */
+public enum HeapPageFormat {
+    /**
+     * Fixed-size slots and a bitmap of the used slots. Strings always take
+     * {@link HamburgerDB.common.Type#STRING_LEN} bytes.
+     */
+    FIXED {
+        @Override
+        HeapPageLayout layout(TupleDesc td, int pageSize) {
+            return new FixedPageLayout(td, pageSize);
+        }
+    },
+    /**
+     * A slot directory and variable-length records. Strings only take the
+     * bytes they need, so string-heavy tables need fewer pages.
+     */
+    SLOTTED {
+        @Override
+        HeapPageLayout layout(TupleDesc td, int pageSize) {
+            return new SlottedPageLayout(td, pageSize);
+        }
+    };
+
+    abstract HeapPageLayout layout(TupleDesc td, int pageSize);
+}
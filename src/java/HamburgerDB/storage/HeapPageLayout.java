@@ -0,0 +1,98 @@
+package HamburgerDB.storage;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * The arrangement of tuples in the bytes of a {@link HeapPage}, see
+ * {@link HeapPageFormat}. A layout holds no state of its own: every method
+ * gets the bytes of a page, indexed from 0, and the HeapPage takes care of
+ * locking, before images and copying the bytes before they are modified.
+ * <p>
+ * Free space is counted in units that depend on the layout, e.g. slots or
+ * bytes; {@link #getCapacity()} is the free space of an empty page.
+ */
+abstract class HeapPageLayout {
+
+    final TupleDesc td;
+    final int pageSize;
+
+    HeapPageLayout(TupleDesc td, int pageSize) {
+        this.td = td;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the number of bytes at the start of a page a well-formed page
+     * needs at least
+     */
+    abstract int minLength();
+
+    /**
+     * @return the number of bytes at the start of page that tell which slots
+     * are in use. A copy of them can be passed to {@link #numSlots} and
+     * {@link #nextUsedSlot} instead of the page.
+     */
+    abstract int headerLength(ByteBuffer page);
+
+    /**
+     * @return the number of slots of page; slot numbers are below it
+     */
+    abstract int numSlots(ByteBuffer page);
+
+    abstract boolean slotUsed(ByteBuffer page, int slot);
+
+    /**
+     * @return the first slot at or after from that is in use, or
+     * numSlots(page) if there is none
+     */
+    int nextUsedSlot(ByteBuffer page, int from) {
+        int n = numSlots(page);
+        int i = from;
+        while (i < n && !slotUsed(page, i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the number of tuples that can still be added to page, at
+     * least
+     */
+    abstract int getNumEmptySlots(ByteBuffer page);
+
+    /**
+     * @return the free space of an empty page
+     */
+    abstract int getCapacity();
+
+    abstract int getFreeSpace(ByteBuffer page);
+
+    /**
+     * @return the free space a page needs to take t
+     */
+    abstract int spaceNeeded(Tuple t);
+
+    /**
+     * @return the tuple in a slot of page, or null if the slot is empty
+     */
+    abstract Tuple readTuple(ByteBuffer page, HeapPageId pid, int slot);
+
+    /**
+     * Decode one field of the tuple in a used slot of page.
+     */
+    abstract Field readField(ByteBuffer page, int slot, int field) throws ParseException;
+
+    /**
+     * Write t to page, which may be modified.
+     *
+     * @param from the slots before it are known to be in use
+     * @return the slot t was written to, or -1 if the page has no room for it
+     */
+    abstract int insertTuple(ByteBuffer page, Tuple t, int from);
+
+    /**
+     * Empty a used slot of page, which may be modified.
+     */
+    abstract void deleteTuple(ByteBuffer page, int slot);
+}
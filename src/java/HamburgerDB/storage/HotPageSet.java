@@ -0,0 +1,102 @@
+package HamburgerDB.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HotPageSet is the file in which the {@link BufferPool} remembers the pages
+ * it held at the last checkpoint, so that after a restart it can load them
+ * again before queries ask for them, see {@link BufferPool#warmUp}.
+ * <p>
+ * The file holds the number of pages followed by the id of each page, from
+ * the most to the least recently used: the class name of the id and its
+ * {@link PageId#serialize()} form, as in the log. A new set replaces the
+ * old one in a single rename, so a crash leaves one or the other.
+ */
+public class HotPageSet {
+
+    private HotPageSet() {
+    }
+
+    /**
+     * Replace the content of file with pages.
+     */
+    public static void write(File file, List<PageId> pages) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(pages.size());
+            for (PageId pid : pages) {
+                int[] data = pid.serialize();
+                out.writeUTF(pid.getClass().getName());
+                out.writeInt(data.length);
+                for (int i : data) {
+                    out.writeInt(i);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the pages in file, most recently used first, or an empty list
+     * if there is no such file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static List<PageId> read(File file) throws IOException {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int n = in.readInt();
+            List<PageId> res = new ArrayList<>(Math.max(0, Math.min(n, 1 << 16)));
+            for (int i = 0; i < n; i++) {
+                String className = in.readUTF();
+                Object[] args = new Object[in.readInt()];
+                for (int j = 0; j < args.length; j++) {
+                    args[j] = in.readInt();
+                }
+                res.add(newPageId(className, args));
+            }
+            return res;
+        } catch (EOFException e) {
+            throw new IOException("truncated hot page set " + file, e);
+        }
+    }
+
+    /**
+     * Rebuild a page id from its class and the ints of its serialized form,
+     * which are the arguments of one of its constructors.
+     */
+    private static PageId newPageId(String className, Object[] args) throws IOException {
+        try {
+            Class<?> c = Class.forName(className);
+            for (Constructor<?> constructor : c.getDeclaredConstructors()) {
+                Class<?>[] params = constructor.getParameterTypes();
+                boolean ints = params.length == args.length;
+                for (int i = 0; ints && i < params.length; i++) {
+                    ints = params[i] == int.class;
+                }
+                if (ints && PageId.class.isAssignableFrom(c)) {
+                    return (PageId) constructor.newInstance(args);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("cannot create page id of class " + className, e);
+        }
+        throw new IOException("no page id of class " + className + " with " + args.length + " ints");
+    }
+}
@@ -5,11 +5,15 @@ import HamburgerDB.common.Database;
 import HamburgerDB.common.Debug;
 import HamburgerDB.transaction.TransactionId;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 
@@ -99,6 +103,20 @@ public class LogFile {
 
     final Map<Long, Long> tidToFirstLogRecord = new HashMap<>();
 
+    // logWrite和writePageData复用的缓冲区，由this保护
+    private final RecordBuffer record = new RecordBuffer();
+    private ByteBuffer pageBuffer = ByteBuffer.allocate(0);
+
+    /**
+     * A ByteArrayOutputStream that writes its content to a file without
+     * copying it first.
+     */
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        void writeTo(RandomAccessFile f) throws IOException {
+            f.write(buf, 0, count);
+        }
+    }
+
     /**
      * Constructor.
      * Initialize and back the log file with the specified file.
@@ -218,18 +236,23 @@ public class LogFile {
            after page data
            start offset
         */
-        raf.writeInt(UPDATE_RECORD);
-        raf.writeLong(tid.getId());
-
-        writePageData(raf, before);
-        writePageData(raf, after);
-        raf.writeLong(currentOffset);
+        //先在内存中拼好整条记录，再一次写入日志文件
+        record.reset();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(UPDATE_RECORD);
+        out.writeLong(tid.getId());
+
+        writePageData(out, before);
+        writePageData(out, after);
+        out.writeLong(currentOffset);
+        out.flush();
+        record.writeTo(raf);
         currentOffset = raf.getFilePointer();
 
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
 
-    void writePageData(RandomAccessFile raf, Page p) throws IOException {
+    void writePageData(DataOutput raf, Page p) throws IOException {
         PageId pid = p.getId();
         int[] pageInfo = pid.serialize();
 
@@ -251,9 +274,14 @@ public class LogFile {
         for (int j : pageInfo) {
             raf.writeInt(j);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        int pageSize = BufferPool.getPageSize(pid.getTableId());
+        if (pageBuffer.capacity() < pageSize) {
+            pageBuffer = ByteBuffer.allocate(pageSize);
+        }
+        pageBuffer.clear();
+        p.writePageData(pageBuffer);
+        raf.writeInt(pageBuffer.position());
+        raf.write(pageBuffer.array(), 0, pageBuffer.position());
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -286,7 +314,16 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page) pageConsts[0].newInstance(pageArgs);
+            //页类可能有多个构造函数，选用(PageId, byte[])那个
+            Constructor<?> pageConst = pageConsts[0];
+            for (Constructor<?> c : pageConsts) {
+                Class<?>[] params = c.getParameterTypes();
+                if (params.length == 2 && params[0].isInstance(pid) && params[1] == byte[].class) {
+                    pageConst = c;
+                    break;
+                }
+            }
+            newPage = (Page) pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException | InvocationTargetException | IllegalAccessException |
@@ -320,6 +357,23 @@ public class LogFile {
         Debug.log("BEGIN OFFSET = " + currentOffset);
     }
 
+    /**
+     * Write a BEGIN record for the specified transaction unless it already
+     * has one. Used by the buffer pool before it writes back a page of a
+     * transaction that was not started through
+     * {@link HamburgerDB.transaction.Transaction#start()}.
+     *
+     * @return true if a BEGIN record was written
+     */
+    public synchronized boolean logXactionBeginIfAbsent(TransactionId tid)
+            throws IOException {
+        if (tidToFirstLogRecord.containsKey(tid.getId())) {
+            return false;
+        }
+        logXactionBegin(tid);
+        return true;
+    }
+
     /**
      * Checkpoint the log and write a checkpoint record.
      */
@@ -334,6 +388,7 @@ public class LogFile {
                 Iterator<Long> els = keys.iterator();
                 force();
                 Database.getBufferPool().flushAllPages();
+                saveHotPages();
                 startCpOffset = raf.getFilePointer();
                 raf.writeInt(CHECKPOINT_RECORD);
                 raf.writeLong(-1); //no tid , but leave space for convenience
@@ -363,6 +418,27 @@ public class LogFile {
         logTruncate();
     }
 
+    /**
+     * @return the file next to the log in which checkpoints save the pages
+     * of the buffer pool, see {@link BufferPool#warmUp}
+     */
+    public File getHotPagesFile() {
+        return new File(logFile.getPath() + ".hot");
+    }
+
+    /**
+     * Save the pages of the buffer pool for the next start. Losing them only
+     * makes the next start slower, so a failure does not fail the
+     * checkpoint.
+     */
+    private void saveHotPages() {
+        try {
+            Database.getBufferPool().saveHotPages(getHotPagesFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Truncate any unneeded portion of the log to reduce its space
      * consumption
@@ -478,39 +554,50 @@ public class LogFile {
                 preAppend();
                 long tidId = tid.getId();
                 Long begin = tidToFirstLogRecord.get(tidId);
+                if (begin == null) {
+                    //没有BEGIN记录，也就没有写过UPDATE记录
+                    return;
+                }
+                //每页恢复成事务第一次写它之前的样子；页被写回后又读进来再修改，后面记录的前像已经是未提交的数据
+                Map<PageId, Page> undo = new LinkedHashMap<>();
                 raf.seek(begin);
                 while (true) {
                     try {
                         int type = raf.readInt();
-                        Long curTid = raf.readLong();
-                        if (curTid != tidId) {
-                            //如果不是当前的tid，就直接跳过
-                            if (type == 3) {
-                                //update record 还要跳过页数据
-                                readPageData(raf);
-                                readPageData(raf);
-                            }
-                        } else {
-                            if (type == 3) {
-                                //只需要恢复到最初的状态就行
-                                Page before = readPageData(raf);
-                                Page after = readPageData(raf);
-                                DbFile databaseFile = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
-                                databaseFile.writePage(before);
-                                Database.getBufferPool().discardPage(after.getId());
-                                raf.seek(raf.getFilePointer() + 8);
-                                break;
+                        long curTid = raf.readLong();
+                        if (type == UPDATE_RECORD) {
+                            Page before = readPageData(raf);
+                            readPageData(raf);
+                            if (curTid == tidId) {
+                                undo.putIfAbsent(before.getId(), before);
                             }
+                        } else if (type == CHECKPOINT_RECORD) {
+                            skipCheckpoint(raf);
                         }
-                        raf.seek(raf.getFilePointer() + 8);
+                        raf.seek(raf.getFilePointer() + LONG_SIZE);
                     } catch (EOFException e) {
                         break;
                     }
                 }
+                for (Page before : undo.values()) {
+                    DbFile databaseFile = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
+                    databaseFile.writePage(before);
+                    Database.getBufferPool().discardPage(before.getId());
+                }
+                raf.seek(currentOffset);
             }
         }
     }
 
+    /**
+     * Skip the list of outstanding transactions of a checkpoint record
+     * whose type and transaction id have been read.
+     */
+    private static void skipCheckpoint(RandomAccessFile raf) throws IOException {
+        int n = raf.readInt();
+        raf.seek(raf.getFilePointer() + (long) n * 2 * LONG_SIZE);
+    }
+
     /**
      * Shutdown the logging system, writing out whatever state
      * is necessary so that start up can happen quickly (without
@@ -541,33 +628,28 @@ public class LogFile {
                 print();
                 long checkpoint = raf.readLong();
                 if (checkpoint != -1) {
-                    HashMap<Long, Long> tidPos = new HashMap<>();
                     raf.seek(checkpoint);
                     //跳过record type和tid
                     raf.seek(raf.getFilePointer() + 12);
                     //获取正在进行事务的个数
                     int num = raf.readInt();
+                    //从检查点和正在进行的事务中最早的一条记录开始，检查点之后开始的事务也要检索
+                    long start = checkpoint;
                     while (num > 0) {
                         //获取每一个事务的tid和第一条log record OFFSET
-                        long curTid = raf.readLong();
-                        long offset = raf.readLong();
-                        tidPos.put(curTid, offset);
+                        raf.readLong();
+                        start = Math.min(start, raf.readLong());
                         num--;
                     }
-                    for (Long pos : tidPos.keySet()) {
-                        raf.seek(tidPos.get(pos));
-                        recoverSearch(raf, undoMap);
-                    }
+                    raf.seek(start);
+                    recoverSearch(raf, undoMap);
                 } else {
                     System.out.println(raf.getFilePointer() + "-----------");
                     recoverSearch(raf, undoMap);
                 }
                 //进行undo操作
-                for (Long tid : undoMap.keySet()) {
-                    Page[] pages = undoMap.get(tid).get(0);
-                    Page before = pages[0];
-                    DbFile databaseFile = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
-                    databaseFile.writePage(before);
+                for (List<Page[]> updates : undoMap.values()) {
+                    undo(updates);
                 }
                 undoMap.clear();
             }
@@ -576,7 +658,8 @@ public class LogFile {
 
 
     /**
-     * 从指定位置开始检索每一条记录，update记录就直接放入map中，commit就直接将最终page刷盘，abort就直接将开始前的page刷盘
+     * 从指定位置开始检索每一条记录，update记录就直接放入map中，commit就直接将最终page刷盘，abort就直接将开始前的page刷盘。
+     * 只处理有BEGIN记录的事务；没有开始过的事务只在提交时写日志，页已经在磁盘上了
      *
      * @param raf
      * @param map
@@ -586,28 +669,29 @@ public class LogFile {
             try {
                 int type = raf.readInt();
                 long curTid = raf.readLong();
-                if (type == 3) {
+                if (type == BEGIN_RECORD) {
+                    map.put(curTid, new ArrayList<>());
+                } else if (type == 3) {
                     //update
-                    if (!map.containsKey(curTid)) {
-                        map.put(curTid, new ArrayList<>());
-                    }
                     Page before = readPageData(raf);
                     Page after = readPageData(raf);
-                    map.get(curTid).add(new Page[]{before, after});
+                    if (map.containsKey(curTid)) {
+                        map.get(curTid).add(new Page[]{before, after});
+                    }
                 } else if (type == 2 && map.containsKey(curTid)) {
-                    //commit
-                    Page[] pages = map.get(curTid).get(map.get(curTid).size() - 1);
-                    Page after = pages[1];
-                    DbFile databaseFile = Database.getCatalog().getDatabaseFile(after.getId().getTableId());
-                    databaseFile.writePage(after);
-                    map.remove(curTid);
+                    //commit，每页写最后的后像
+                    Map<PageId, Page> redo = new LinkedHashMap<>();
+                    for (Page[] pages : map.remove(curTid)) {
+                        redo.put(pages[1].getId(), pages[1]);
+                    }
+                    for (Page after : redo.values()) {
+                        Database.getCatalog().getDatabaseFile(after.getId().getTableId()).writePage(after);
+                    }
                 } else if (type == 1 && map.containsKey(curTid)) {
                     //abort
-                    Page[] pages = map.get(curTid).get(0);
-                    Page before = pages[0];
-                    DbFile databaseFile = Database.getCatalog().getDatabaseFile(before.getId().getTableId());
-                    databaseFile.writePage(before);
-                    map.remove(curTid);
+                    undo(map.remove(curTid));
+                } else if (type == CHECKPOINT_RECORD) {
+                    skipCheckpoint(raf);
                 }
                 raf.seek(raf.getFilePointer() + 8);
             } catch (EOFException e) {
@@ -616,6 +700,21 @@ public class LogFile {
         }
     }
 
+    /**
+     * Write back the first before image of every page in updates, the state
+     * of the page before the transaction changed it. With STEAL a page can
+     * have several UPDATE records of the same transaction.
+     */
+    private void undo(List<Page[]> updates) throws IOException {
+        Map<PageId, Page> undo = new LinkedHashMap<>();
+        for (Page[] pages : updates) {
+            undo.putIfAbsent(pages[0].getId(), pages[0]);
+        }
+        for (Page before : undo.values()) {
+            Database.getCatalog().getDatabaseFile(before.getId().getTableId()).writePage(before);
+        }
+    }
+
     /**
      * Print out a human readable represenation of the log
      */
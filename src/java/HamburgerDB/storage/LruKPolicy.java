@@ -0,0 +1,135 @@
+package HamburgerDB.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). Every frame remembers the
+ * times of its last K references, and the victim is the frame whose K-th
+ * most recent reference is the oldest. Frames referenced fewer than K times
+ * have an infinite backward K-distance and go first, oldest last reference
+ * first, so pages touched once by a scan leave before pages that are hit
+ * repeatedly, such as the upper levels of a B+ tree.
+ * <p>
+ * The history of evicted pages is retained for a while so that a page read
+ * again soon does not start from scratch. With K = 1 this is plain LRU.
+ * <p>
+ * Hits update the history under the policy's monitor; victim selection scans
+ * all resident frames, which is fine for buffer pools of a few thousand pages.
+ */
+public class LruKPolicy implements ReplacementPolicy {
+
+    private final int k;
+    // 逻辑时钟，每次访问加一
+    private long now;
+    private final Set<PageTable.Frame> resident;
+    // 已淘汰页的访问历史
+    private final Map<PageId, long[]> retained;
+
+    /**
+     * @param k the number of references remembered per page
+     */
+    public LruKPolicy(int k) {
+        this(k, BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * @param k        the number of references remembered per page
+     * @param retained the number of evicted pages whose history is kept
+     */
+    public LruKPolicy(int k, final int retained) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be at least 1");
+        }
+        this.k = k;
+        this.now = 0;
+        this.resident = new HashSet<>();
+        this.retained = new LinkedHashMap<PageId, long[]>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, long[]> eldest) {
+                return size() > retained;
+            }
+        };
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    @Override
+    public synchronized void onInsert(PageTable.Frame frame) {
+        long[] history = retained.remove(frame.getPageId());
+        if (history == null) {
+            history = new long[k];
+        }
+        frame.policyState = history;
+        resident.add(frame);
+        reference(history);
+    }
+
+    @Override
+    public synchronized void onAccess(PageTable.Frame frame) {
+        reference((long[]) frame.policyState);
+    }
+
+    @Override
+    public synchronized void onRemove(PageTable.Frame frame) {
+        resident.remove(frame);
+        if (k > 1) {
+            retained.put(frame.getPageId(), (long[]) frame.policyState);
+        }
+    }
+
+    @Override
+    public synchronized PageTable.Frame victim(Predicate<Page> evictable) {
+        PageTable.Frame best = null;
+        long[] bestHistory = null;
+        for (PageTable.Frame frame : resident) {
+            if (!evictable.test(frame.getPage())) {
+                continue;
+            }
+            long[] history = (long[]) frame.policyState;
+            if (best == null || older(history, bestHistory)) {
+                best = frame;
+                bestHistory = history;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Frames are ordered by their last reference.
+     */
+    @Override
+    public synchronized List<PageTable.Frame> recencyOrder() {
+        List<PageTable.Frame> res = new ArrayList<>(resident);
+        res.sort((a, b) -> Long.compare(((long[]) b.policyState)[0], ((long[]) a.policyState)[0]));
+        return res;
+    }
+
+    /**
+     * @return true if a has a larger backward K-distance than b
+     */
+    private boolean older(long[] a, long[] b) {
+        // 0表示访问次数不足K次，即K距离为无穷大
+        if (a[k - 1] != b[k - 1]) {
+            return a[k - 1] < b[k - 1];
+        }
+        return a[0] < b[0];
+    }
+
+    private void reference(long[] history) {
+        System.arraycopy(history, 0, history, 1, k - 1);
+        history[0] = ++now;
+    }
+
+    @Override
+    public String toString() {
+        return k == 1 ? "lru" : "lru-" + k;
+    }
+}
@@ -2,6 +2,8 @@ package HamburgerDB.storage;
 
 import HamburgerDB.transaction.TransactionId;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -48,6 +50,17 @@ public interface Page {
 
     byte[] getPageData();
 
+    /**
+     * Write the bytes {@link #getPageData()} would return into dst, starting
+     * at its position and advancing it. Used on the write paths, which reuse
+     * their buffers instead of allocating a fresh array for every page.
+     *
+     * @param dst the buffer to write to; it must have room for the page
+     */
+    default void writePageData(ByteBuffer dst) {
+        dst.put(getPageData());
+    }
+
     /**
      * Provide a representation of this page before any modifications were made
      * to it.  Used by recovery.
@@ -0,0 +1,416 @@
+package HamburgerDB.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PageStore is the page I/O layer under the {@link DbFile} implementations. It
+ * keeps one {@link FileChannel} per file open across calls and reads and
+ * writes pages with positional I/O, so a page access costs one system call
+ * regardless of where the page lives in the file.
+ * <p>
+ * Reads go into a buffer owned by the calling thread and reused from one
+ * read to the next; page constructors copy what they need out of it. Pages
+ * are serialized straight into reused buffers as well, and runs of adjacent
+ * pages are written with a single call from a buffer owned by the store.
+ * <p>
+ * Open channels are tracked process-wide. When more than
+ * {@link #getMaxOpenFiles()} stores have an open channel, the channel of the
+ * least recently used one is closed; its next access reopens it.
+ *
+ * @Threadsafe
+ */
+public class PageStore {
+
+    /**
+     * Default limit on the number of files kept open at once.
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    private static int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    // 已打开文件的集合，超出上限时关闭最久未用的
+    private static final Set<PageStore> OPEN = new HashSet<>();
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[0]);
+    private static final ThreadLocal<byte[]> PAGE_BUFFER = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private final File file;
+    private volatile FileChannel channel;
+    private volatile long lastUsed;
+    private byte[] writeBuffer = new byte[0];
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder opens = new LongAdder();
+
+    /**
+     * Creates a store for file. The file is opened on first access.
+     */
+    public PageStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Set the number of files that may be open at once over all stores.
+     */
+    public static void setMaxOpenFiles(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max open files must be positive");
+        }
+        synchronized (OPEN) {
+            maxOpenFiles = max;
+            closeExcess();
+        }
+    }
+
+    public static int getMaxOpenFiles() {
+        synchronized (OPEN) {
+            return maxOpenFiles;
+        }
+    }
+
+    /**
+     * @return the number of stores that currently have an open channel
+     */
+    public static int getOpenFiles() {
+        synchronized (OPEN) {
+            return OPEN.size();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Read length bytes at position into a buffer owned by the calling thread.
+     * The buffer is overwritten by the thread's next read, so the caller must
+     * be done with it before reading again. Bytes past the end of the file
+     * read as zero.
+     *
+     * @return the buffer, or null if position is at or past the end of the
+     * file
+     */
+    public byte[] read(long position, int length) throws IOException {
+        byte[] buf = READ_BUFFER.get();
+        if (buf.length != length) {
+            buf = new byte[length];
+            READ_BUFFER.set(buf);
+        }
+        return read(position, buf) ? buf : null;
+    }
+
+    /**
+     * Read dst.length bytes at position into dst. Bytes past the end of the
+     * file read as zero.
+     *
+     * @return false if position is at or past the end of the file
+     */
+    public boolean read(long position, byte[] dst) throws IOException {
+        return read(position, dst, 0, dst.length);
+    }
+
+    /**
+     * Read len bytes at position into dst, starting at off. Bytes past the
+     * end of the file read as zero.
+     *
+     * @return false if position is at or past the end of the file
+     */
+    public boolean read(long position, byte[] dst, int off, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(dst, off, len).slice();
+        for (int attempt = 0; ; attempt++) {
+            bb.clear();
+            try {
+                FileChannel ch = channel(false);
+                if (ch == null) {
+                    break;
+                }
+                while (bb.hasRemaining()) {
+                    int n = ch.read(bb, position + bb.position());
+                    if (n < 0) {
+                        break;
+                    }
+                }
+                break;
+            } catch (ClosedChannelException e) {
+                retryOrThrow(e, attempt);
+            }
+        }
+        reads.increment();
+        if (bb.position() == 0) {
+            return false;
+        }
+        bytesRead.add(bb.position());
+        Arrays.fill(dst, off + bb.position(), off + len, (byte) 0);
+        return true;
+    }
+
+    /**
+     * Write data at position.
+     */
+    public void write(long position, byte[] data) throws IOException {
+        write(position, data, 0, data.length);
+    }
+
+    /**
+     * Write len bytes of data, starting at off, at position.
+     */
+    public void write(long position, byte[] data, int off, int len) throws IOException {
+        write(position, ByteBuffer.wrap(data, off, len));
+    }
+
+    /**
+     * Write page, whose page data is at most size bytes long, at position.
+     * The page is serialized into a buffer owned by the calling thread.
+     */
+    public void write(long position, Page page, int size) throws IOException {
+        byte[] buf = PAGE_BUFFER.get();
+        if (buf.length != size) {
+            buf = new byte[size];
+            PAGE_BUFFER.set(buf);
+        }
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        page.writePageData(bb);
+        write(position, buf, 0, bb.position());
+    }
+
+    /**
+     * Write pages of size bytes each, whose page data is laid out
+     * contiguously from position, with a single write.
+     */
+    public void write(long position, List<Page> pages, int size) throws IOException {
+        if (pages.size() == 1) {
+            write(position, pages.get(0), size);
+            return;
+        }
+        synchronized (this) {
+            int len = pages.size() * size;
+            if (writeBuffer.length < len) {
+                writeBuffer = new byte[len];
+            }
+            for (int i = 0; i < pages.size(); i++) {
+                pages.get(i).writePageData(ByteBuffer.wrap(writeBuffer, i * size, size));
+            }
+            write(position, writeBuffer, 0, len);
+        }
+    }
+
+    /**
+     * Append data to the end of the file.
+     *
+     * @return the position data was written at
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        long position = size();
+        write(position, data);
+        return position;
+    }
+
+    /**
+     * @return the number of bytes of data in this store, without opening the
+     * file; for a plain store this is the length of the file
+     */
+    public long length() throws IOException {
+        return file.length();
+    }
+
+    /**
+     * @return the current length of the file in bytes
+     */
+    public long size() throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                FileChannel ch = channel(false);
+                return ch == null ? 0 : ch.size();
+            } catch (ClosedChannelException e) {
+                retryOrThrow(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Map the file into memory read-only. The mapping covers the file as it
+     * is now, up to 2GB, and stays valid after the channel is closed. Pages
+     * written later through this store are visible through the mapping, but
+     * a mapping does not grow with the file.
+     *
+     * @return the mapping, or null if the file is empty or does not exist
+     */
+    public MappedByteBuffer map() throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                FileChannel ch = channel(false);
+                if (ch == null || ch.size() == 0) {
+                    return null;
+                }
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ch.size(), Integer.MAX_VALUE));
+            } catch (ClosedChannelException e) {
+                retryOrThrow(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Force written pages to the storage device.
+     */
+    public void force() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            ch.force(false);
+        }
+    }
+
+    /**
+     * Close the channel of this store. The next access reopens it.
+     */
+    public void close() throws IOException {
+        synchronized (OPEN) {
+            OPEN.remove(this);
+            closeChannel();
+        }
+    }
+
+    /**
+     * @return the number of read calls served by this store
+     */
+    public long getReads() {
+        return reads.sum();
+    }
+
+    /**
+     * @return the number of write calls issued by this store; a run of
+     * adjacent pages counts once
+     */
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return the number of times the channel of this store was opened
+     */
+    public long getOpens() {
+        return opens.sum();
+    }
+
+    public void resetStatistics() {
+        reads.reset();
+        writes.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        opens.reset();
+    }
+
+    private void write(long position, ByteBuffer bb) throws IOException {
+        int start = bb.position();
+        for (int attempt = 0; ; attempt++) {
+            bb.position(start);
+            try {
+                FileChannel ch = channel(true);
+                while (bb.hasRemaining()) {
+                    ch.write(bb, position + bb.position() - start);
+                }
+                break;
+            } catch (ClosedChannelException e) {
+                retryOrThrow(e, attempt);
+            }
+        }
+        writes.increment();
+        bytesWritten.add(bb.position() - start);
+    }
+
+    /**
+     * The channel was closed under us, most likely because another store
+     * needed the slot. Try once more with a fresh channel.
+     */
+    private void retryOrThrow(ClosedChannelException e, int attempt) throws IOException {
+        if (attempt > 0 || e instanceof ClosedByInterruptException) {
+            throw e;
+        }
+    }
+
+    /**
+     * @param create whether a missing file is created
+     * @return the open channel, or null if the file does not exist and create
+     * is false
+     */
+    private FileChannel channel(boolean create) throws IOException {
+        lastUsed = CLOCK.incrementAndGet();
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch;
+        }
+        synchronized (OPEN) {
+            ch = channel;
+            if (ch != null && ch.isOpen()) {
+                return ch;
+            }
+            if (!create && !file.exists()) {
+                return null;
+            }
+            try {
+                ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE);
+            } catch (AccessDeniedException e) {
+                if (create) {
+                    throw e;
+                }
+                //只读文件
+                ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            channel = ch;
+            opens.increment();
+            OPEN.add(this);
+            closeExcess();
+            return ch;
+        }
+    }
+
+    private void closeChannel() {
+        FileChannel ch = channel;
+        channel = null;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // 关闭失败不影响之后重新打开
+            }
+        }
+    }
+
+    private static void closeExcess() {
+        while (OPEN.size() > maxOpenFiles) {
+            PageStore eldest = null;
+            for (PageStore store : OPEN) {
+                if (eldest == null || store.lastUsed < eldest.lastUsed) {
+                    eldest = store;
+                }
+            }
+            OPEN.remove(eldest);
+            eldest.closeChannel();
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package HamburgerDB.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * PageTable is the page table behind {@link BufferPool}: it maps a
+ * {@link PageId} to the frame that caches the page.
+ * <p>
+ * Lookups go straight to a {@link ConcurrentHashMap}, which locks per bin,
+ * and then notify the {@link ReplacementPolicy}, so with a policy whose
+ * access hook is lock-free (CLOCK) cache hits from different threads never
+ * serialize on a common monitor. Inserts, removals and victim selection take
+ * the table's eviction lock.
+ * <p>
+ * The capacity of the table is a number of frames of a fixed size. A page
+ * of a table whose pages are larger than a frame takes as many frames as it
+ * covers, see {@link BufferPool#getPageSize(int)}, so tables with different
+ * page sizes share the table by the memory they use.
+ * <p>
+ * A frame that is pinned, see {@link #pin}, is never evicted; the
+ * replacement policy only sees the frames nobody is using.
+ *
+ * @Threadsafe
+ */
+public class PageTable {
+
+    /**
+     * 缓冲帧：保存页本身以及替换策略的状态
+     */
+    public static class Frame {
+        private final PageId pid;
+        volatile Page page;
+        /**
+         * Bookkeeping owned by the replacement policy.
+         */
+        volatile Object policyState;
+        /**
+         * The access strategy whose ring holds this frame, or null if the
+         * frame belongs to the main pool.
+         */
+        volatile BufferAccessStrategy owner;
+        // 占用的帧数
+        private final int frames;
+        // 钉住次数，大于0时不会被淘汰，由evictionLock保护
+        int pins;
+
+        Frame(PageId pid, Page page, int frames) {
+            this.pid = pid;
+            this.page = page;
+            this.frames = frames;
+        }
+
+        public PageId getPageId() {
+            return pid;
+        }
+
+        public Page getPage() {
+            return page;
+        }
+    }
+
+    private final int capacity;
+    private final int frameSize;
+    private final Map<PageId, Frame> frames;
+    // 所有页占用的帧数，在evictionLock下修改
+    private volatile int framesInUse;
+    private final ReplacementPolicy policy;
+    private final FrameArena arena;
+    private final Object evictionLock = new Object();
+
+    /**
+     * Creates an empty page table sized for capacity frames that evicts with
+     * the CLOCK algorithm.
+     *
+     * @param capacity the number of frames the owning buffer pool may use
+     */
+    public PageTable(int capacity) {
+        this(capacity, new ClockPolicy(capacity));
+    }
+
+    /**
+     * Creates an empty page table sized for capacity frames.
+     *
+     * @param capacity the number of frames the owning buffer pool may use
+     * @param policy   the policy that chooses eviction victims
+     */
+    public PageTable(int capacity, ReplacementPolicy policy) {
+        this(capacity, policy, null);
+    }
+
+    /**
+     * Creates an empty page table sized for capacity frames whose heap pages
+     * keep their bytes in arena while they are resident.
+     *
+     * @param capacity the number of frames the owning buffer pool may use
+     * @param policy   the policy that chooses eviction victims
+     * @param arena    the arena for the bytes of cached pages, or null to
+     *                 leave pages on the heap
+     */
+    public PageTable(int capacity, ReplacementPolicy policy, FrameArena arena) {
+        this(capacity, BufferPool.getPageSize(), policy, arena);
+    }
+
+    /**
+     * Creates an empty page table sized for capacity frames of frameSize
+     * bytes whose heap pages keep their bytes in arena while they are
+     * resident.
+     *
+     * @param capacity  the number of frames the owning buffer pool may use
+     * @param frameSize the size of a frame in bytes
+     * @param policy    the policy that chooses eviction victims
+     * @param arena     the arena for the bytes of cached pages, or null to
+     *                  leave pages on the heap
+     */
+    public PageTable(int capacity, int frameSize, ReplacementPolicy policy, FrameArena arena) {
+        this.capacity = capacity;
+        this.frameSize = frameSize;
+        this.frames = new ConcurrentHashMap<>(capacity * 2);
+        this.policy = policy;
+        this.arena = arena;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of pages currently cached
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    /**
+     * @return the number of frames taken by the cached pages
+     */
+    public int getFramesInUse() {
+        return framesInUse;
+    }
+
+    /**
+     * @return true if all capacity frames are taken
+     */
+    public boolean isFull() {
+        return framesInUse >= capacity;
+    }
+
+    /**
+     * @return true if the page pid fits in the frames that are free. An
+     * empty table has room for any page, however large.
+     */
+    public boolean hasRoom(PageId pid) {
+        int used = framesInUse;
+        return used == 0 || used + framesFor(pid) <= capacity;
+    }
+
+    /**
+     * @return the number of frames a page of pid takes
+     */
+    int framesFor(PageId pid) {
+        int size = BufferPool.getPageSize(pid.getTableId());
+        return Math.max(1, (size + frameSize - 1) / frameSize);
+    }
+
+    /**
+     * Look up a cached page. This is the hit path of the buffer pool and does
+     * not take any table-wide lock.
+     *
+     * @param pid the id of the page
+     * @return the cached page, or null if the page is not resident
+     */
+    public Page get(PageId pid) {
+        Frame frame = frames.get(pid);
+        if (frame == null) {
+            return null;
+        }
+        //帧可能刚被并发淘汰，此时策略只会更新一个已失效的状态
+        policy.onAccess(frame);
+        if (frame.owner != null) {
+            //普通访问命中环形缓冲区中的页，将其提升到主缓冲池
+            frame.owner = null;
+        }
+        return frame.page;
+    }
+
+    /**
+     * Look up a cached page on behalf of a bulk reader. Unlike
+     * {@link #get(PageId)} this does not promote a page held by a ring, and
+     * touching a ring page does not count as an access for the replacement
+     * policy.
+     *
+     * @param pid      the id of the page
+     * @param strategy the access strategy of the reader
+     * @return the cached page, or null if the page is not resident
+     */
+    public Page get(PageId pid, BufferAccessStrategy strategy) {
+        Frame frame = frames.get(pid);
+        if (frame == null) {
+            return null;
+        }
+        if (frame.owner == null) {
+            policy.onAccess(frame);
+        }
+        return frame.page;
+    }
+
+    /**
+     * Look up a cached page without counting an access.
+     *
+     * @return the cached page, or null if the page is not resident
+     */
+    public Page peek(PageId pid) {
+        Frame frame = frames.get(pid);
+        return frame == null ? null : frame.page;
+    }
+
+    /**
+     * @return true if the page is resident, without counting as an access
+     */
+    public boolean contains(PageId pid) {
+        return frames.containsKey(pid);
+    }
+
+    /**
+     * Cache a page that was just read from disk, unless another thread cached
+     * the same page in the meantime.
+     *
+     * @return the page that is cached under pid after the call
+     */
+    public Page putIfAbsent(PageId pid, Page page) {
+        return putIfAbsent(pid, page, null);
+    }
+
+    /**
+     * Cache a page that was just read from disk into the ring of strategy,
+     * unless another thread cached the same page in the meantime.
+     *
+     * @param strategy the strategy that owns the new frame, or null for the
+     *                 main pool
+     * @return the page that is cached under pid after the call
+     */
+    public Page putIfAbsent(PageId pid, Page page, BufferAccessStrategy strategy) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(pid);
+            if (frame != null) {
+                if (strategy == null) {
+                    policy.onAccess(frame);
+                    frame.owner = null;
+                }
+                return frame.page;
+            }
+            frame = new Frame(pid, page, framesFor(pid));
+            frame.owner = strategy;
+            addFrame(frame);
+            return page;
+        }
+    }
+
+    /**
+     * Cache a page that was read before anyone asked for it, if it is not
+     * resident yet and fits in the free frames. Nothing is evicted for it.
+     *
+     * @param current tells whether the copy read is still current; it is
+     *                asked under the eviction lock, so a page cannot be
+     *                written back and removed between the check and the
+     *                insert
+     * @return true if the page was added
+     */
+    public boolean putIfRoom(PageId pid, Page page, BooleanSupplier current) {
+        synchronized (evictionLock) {
+            if (frames.containsKey(pid) || !hasRoom(pid) || !current.getAsBoolean()) {
+                return false;
+            }
+            addFrame(new Frame(pid, page, framesFor(pid)));
+            return true;
+        }
+    }
+
+    /**
+     * Cache a page, replacing the version that is currently resident (if any).
+     */
+    public void put(PageId pid, Page page) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(pid);
+            if (frame != null) {
+                if (frame.page != page) {
+                    release(frame.page);
+                    attach(page);
+                }
+                frame.page = page;
+                policy.onAccess(frame);
+                frame.owner = null;
+                return;
+            }
+            addFrame(new Frame(pid, page, framesFor(pid)));
+        }
+    }
+
+    /**
+     * Remove a page from the table.
+     *
+     * @return the page that was removed, or null if it was not resident
+     */
+    public Page remove(PageId pid) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(pid);
+            if (frame == null) {
+                return null;
+            }
+            removeFrame(frame);
+            return frame.page;
+        }
+    }
+
+    /**
+     * Drop a page from the ring of strategy to make room for the next page
+     * of a bulk read. Nothing happens if the page has left the table, was
+     * promoted to the main pool or is not evictable.
+     *
+     * @return true if the page was removed
+     */
+    public boolean recycle(PageId pid, BufferAccessStrategy strategy, Predicate<Page> evictable) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(pid);
+            if (frame == null || frame.owner != strategy || frame.pins > 0 || !evictable.test(frame.page)) {
+                return false;
+            }
+            removeFrame(frame);
+            return true;
+        }
+    }
+
+    /**
+     * Pin the frame that holds page, so that it is not evicted until it is
+     * unpinned as often as it was pinned.
+     *
+     * @return false if page is no longer the resident version of its page
+     */
+    public boolean pin(Page page) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(page.getId());
+            if (frame == null || frame.page != page) {
+                return false;
+            }
+            frame.pins++;
+            return true;
+        }
+    }
+
+    /**
+     * Undo one {@link #pin} of page. Nothing happens if page is no longer
+     * the resident version, for example because it was discarded while it
+     * was pinned, so a pin taken on the version read back since is kept.
+     */
+    public void unpin(Page page) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(page.getId());
+            if (frame != null && frame.page == page && frame.pins > 0) {
+                frame.pins--;
+            }
+        }
+    }
+
+    /**
+     * @return the number of pins on the frame of pid, 0 if it is not resident
+     */
+    public int getPinCount(PageId pid) {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(pid);
+            return frame == null ? 0 : frame.pins;
+        }
+    }
+
+    /**
+     * Wrap a predicate of the eviction methods so that pinned frames are
+     * never chosen. Called with the eviction lock held.
+     */
+    private Predicate<Page> unpinned(Predicate<Page> evictable) {
+        return page -> {
+            Frame frame = frames.get(page.getId());
+            return (frame == null || frame.pins == 0) && evictable.test(page);
+        };
+    }
+
+    /**
+     * Ask the replacement policy for a victim without removing it, for a
+     * page that has to be written back before it can be evicted.
+     *
+     * @param evictable decides whether a page may be evicted
+     * @return the chosen page, or null if no page can be evicted
+     */
+    public Page victim(Predicate<Page> evictable) {
+        synchronized (evictionLock) {
+            Frame frame = policy.victim(unpinned(evictable));
+            return frame == null ? null : frame.page;
+        }
+    }
+
+    /**
+     * Ask the replacement policy for a victim and remove it from the table.
+     *
+     * @param evictable decides whether a page may be evicted (e.g. it is clean)
+     * @return the evicted page, or null if no page can be evicted
+     */
+    public Page evict(Predicate<Page> evictable) {
+        synchronized (evictionLock) {
+            Frame frame = policy.victim(unpinned(evictable));
+            if (frame == null) {
+                return null;
+            }
+            removeFrame(frame);
+            return frame.page;
+        }
+    }
+
+    /**
+     * @return a snapshot of all cached pages, in no particular order
+     */
+    public List<Page> pages() {
+        List<Page> res = new ArrayList<>(frames.size());
+        for (Frame frame : frames.values()) {
+            res.add(frame.page);
+        }
+        return res;
+    }
+
+    /**
+     * @return the ids of the cached pages from the most to the least recently
+     * used, as far as the replacement policy can tell, leaving out the pages
+     * held by the ring of a {@link BufferAccessStrategy}
+     */
+    public List<PageId> recentPages() {
+        synchronized (evictionLock) {
+            List<PageId> res = new ArrayList<>(frames.size());
+            for (Frame frame : policy.recencyOrder()) {
+                if (frame.owner == null) {
+                    res.add(frame.pid);
+                }
+            }
+            return res;
+        }
+    }
+
+    private void addFrame(Frame frame) {
+        attach(frame.page);
+        policy.onInsert(frame);
+        frames.put(frame.pid, frame);
+        framesInUse += frame.frames;
+    }
+
+    private void removeFrame(Frame frame) {
+        frames.remove(frame.pid);
+        framesInUse -= frame.frames;
+        policy.onRemove(frame);
+        release(frame.page);
+    }
+
+    /**
+     * Move the bytes of a page that enters the table into the arena.
+     */
+    private void attach(Page page) {
+        if (arena != null && page instanceof HeapPage) {
+            ((HeapPage) page).moveTo(arena);
+        }
+    }
+
+    /**
+     * Give the frame of a page that leaves the table back to the arena. The
+     * page itself stays usable for whoever still holds it.
+     */
+    private void release(Page page) {
+        if (arena != null && page instanceof HeapPage) {
+            ((HeapPage) page).moveToHeap();
+        }
+    }
+}
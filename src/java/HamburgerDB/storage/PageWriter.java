@@ -0,0 +1,206 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PageWriter writes dirty pages of the {@link BufferPool} back to their files
+ * on a background thread, in batches.
+ * <p>
+ * Callers hand over a set of pages and wait until they are on disk. The
+ * writer thread takes every request that is queued at that moment and turns
+ * them into one batch: it appends an UPDATE record for each page to the log,
+ * forces the log once for the whole batch, sorts the pages by file and page
+ * number and writes each file's pages with {@link DbFile#writePages}, which
+ * coalesces adjacent pages into sequential writes. Transactions that commit
+ * at the same time therefore share a single log force (group commit).
+ * <p>
+ * The writer thread takes the {@link LogFile} monitor, never the buffer
+ * pool's. A caller that already holds the log monitor (for example a
+ * checkpoint) writes its batch itself instead of waiting for the thread.
+ *
+ * @Threadsafe
+ */
+public class PageWriter {
+
+    // 所有缓冲池共用的后台写线程
+    private static final ExecutorService WRITER_THREAD = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PageWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * A set of pages some caller waits for.
+     */
+    private static class Request {
+        final List<Page> pages;
+        final CountDownLatch done = new CountDownLatch(1);
+        IOException error;
+
+        Request(List<Page> pages) {
+            this.pages = pages;
+        }
+    }
+
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ReadAhead readAhead;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+    private final LongAdder pagesWritten = new LongAdder();
+
+    /**
+     * @param readAhead the read-ahead of the owning buffer pool, whose copies
+     *                  of the written pages become stale
+     */
+    PageWriter(ReadAhead readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Log and write pages, and return once they are on disk. The pages keep
+     * their dirty flag; the caller decides whether they become clean.
+     *
+     * @param pages dirty pages; a page dirtied by no transaction is written
+     *              without a log record
+     * @throws IOException if the log or a page could not be written
+     */
+    public void write(List<Page> pages) throws IOException {
+        if (pages.isEmpty()) {
+            return;
+        }
+        Request request = new Request(pages);
+        if (Thread.holdsLock(Database.getLogFile())) {
+            //调用者持有日志的锁，后台线程无法写日志，只能自己写
+            writeBatch(Collections.singletonList(request));
+        } else {
+            queue.add(request);
+            if (scheduled.compareAndSet(false, true)) {
+                WRITER_THREAD.execute(this::drain);
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    request.done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (request.error != null) {
+            throw request.error;
+        }
+    }
+
+    /**
+     * @return the number of batches written
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of log forces issued by the writer
+     */
+    public long getForces() {
+        return forces.sum();
+    }
+
+    /**
+     * @return the number of page writes issued by the writer
+     */
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    /**
+     * Runs on the writer thread: take everything that is queued and write it
+     * as one batch.
+     */
+    private void drain() {
+        //先清除标记再取请求，之后到达的请求会重新调度一次
+        scheduled.set(false);
+        List<Request> batch = new ArrayList<>();
+        Request r;
+        while ((r = queue.poll()) != null) {
+            batch.add(r);
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<Request> batch) {
+        IOException error = null;
+        try {
+            // 同一页可能出现在多个请求中，只写一次
+            Map<PageId, Page> pages = new LinkedHashMap<>();
+            for (Request request : batch) {
+                for (Page page : request.pages) {
+                    pages.put(page.getId(), page);
+                }
+            }
+            LogFile log = Database.getLogFile();
+            for (Page page : pages.values()) {
+                TransactionId dirtier = page.isDirty();
+                if (dirtier != null) {
+                    log.logWrite(dirtier, page.getBeforeImage(), page);
+                }
+            }
+            log.force();
+            forces.increment();
+
+            List<Page> sorted = new ArrayList<>(pages.values());
+            sorted.sort(Comparator.<Page>comparingInt(p -> p.getId().getTableId())
+                    .thenComparingInt(p -> p.getId().getPageNumber()));
+            int i = 0;
+            while (i < sorted.size()) {
+                int tableId = sorted.get(i).getId().getTableId();
+                int j = i;
+                while (j < sorted.size() && sorted.get(j).getId().getTableId() == tableId) {
+                    j++;
+                }
+                List<Page> run = sorted.subList(i, j);
+                for (Page page : run) {
+                    readAhead.invalidate(page.getId());
+                }
+                Database.getCatalog().getDatabaseFile(tableId).writePages(run);
+                for (Page page : run) {
+                    readAhead.invalidate(page.getId());
+                }
+                pagesWritten.add(run.size());
+                i = j;
+            }
+            batches.increment();
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        }
+        for (Request request : batch) {
+            request.error = error;
+            request.done.countDown();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package HamburgerDB.storage;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ReadAhead fetches pages that a scan is about to read on a background I/O
+ * thread, so that the scan overlaps I/O with tuple processing.
+ * <p>
+ * Every scan opens a {@link Stream} and reports each page it reads. Once two
+ * consecutive reads follow the order predicted by the stream's
+ * {@link PagePredictor}, the stream starts prefetching a window of pages and
+ * doubles the window, up to a maximum, each time the scan consumes half of
+ * what is in flight. A read out of order resets the window, and the window
+ * is halved when the prefetch area is full.
+ * <p>
+ * Prefetched pages are staged next to the {@link BufferPool} rather than in
+ * its frames, so read-ahead never evicts anything. A miss in
+ * {@link BufferPool#getPage} takes the staged copy, waiting for the read if it
+ * is still in flight. A staged copy is dropped whenever the buffer pool
+ * writes or discards the page, and a read that overlaps any such write is
+ * thrown away.
+ *
+ * @Threadsafe
+ */
+public class ReadAhead {
+
+    /**
+     * Number of pages prefetched when a stream first turns sequential.
+     */
+    public static final int DEFAULT_INITIAL_WINDOW = 4;
+
+    /**
+     * Upper bound for the read-ahead window of a stream.
+     */
+    public static final int DEFAULT_MAX_WINDOW = 32;
+
+    private static volatile boolean enabled = true;
+    private static volatile int initialWindow = DEFAULT_INITIAL_WINDOW;
+    private static volatile int maxWindow = DEFAULT_MAX_WINDOW;
+
+    // 所有缓冲池共用的后台I/O线程
+    private static final ExecutorService IO_THREAD = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ReadAhead-IO");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Predicts the pages a scan reads after a given page.
+     */
+    public interface PagePredictor {
+        /**
+         * @param current the page the scan has just read
+         * @param count   the number of pages wanted
+         * @return up to count pages in the order the scan will read them
+         */
+        List<PageId> next(PageId current, int count);
+    }
+
+    /**
+     * A read of one page on the I/O thread.
+     */
+    private static class PendingRead extends FutureTask<Page> {
+        final PageId pid;
+
+        PendingRead(PageId pid, Callable<Page> read) {
+            super(read);
+            this.pid = pid;
+        }
+    }
+
+    private final BufferPool bufferPool;
+    // 预读暂存区，key只包含表和页号，因此同一页的任何类别都会被一起失效
+    private final Map<Long, PendingRead> staged = new ConcurrentHashMap<>();
+    private final AtomicLong writeEpoch = new AtomicLong();
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder used = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    ReadAhead(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Turn read-ahead on or off for all buffer pools.
+     */
+    public static void setEnabled(boolean enabled) {
+        ReadAhead.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set the window sizes of streams opened from now on.
+     *
+     * @param initial the number of pages prefetched when a stream turns
+     *                sequential
+     * @param max     the largest window a stream grows to
+     */
+    public static void setWindow(int initial, int max) {
+        if (initial < 1 || max < initial) {
+            throw new IllegalArgumentException("bad read-ahead window " + initial + ", " + max);
+        }
+        initialWindow = initial;
+        maxWindow = max;
+    }
+
+    public static void resetWindow() {
+        initialWindow = DEFAULT_INITIAL_WINDOW;
+        maxWindow = DEFAULT_MAX_WINDOW;
+    }
+
+    /**
+     * Open a stream for a scan over file.
+     *
+     * @param predictor predicts the pages the scan reads next
+     */
+    public Stream newStream(DbFile file, PagePredictor predictor) {
+        return new Stream(file, predictor);
+    }
+
+    /**
+     * @return the number of page reads submitted to the I/O thread
+     */
+    public long getIssued() {
+        return issued.sum();
+    }
+
+    /**
+     * @return the number of misses served from a prefetched page
+     */
+    public long getUsed() {
+        return used.sum();
+    }
+
+    /**
+     * @return the number of prefetches refused because the staging area was
+     * full
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private static long key(PageId pid) {
+        return ((long) pid.getTableId() << 32) | (pid.getPageNumber() & 0xffffffffL);
+    }
+
+    private int capacity() {
+        return 2 * maxWindow;
+    }
+
+    /**
+     * Queue a read of pid on the I/O thread.
+     *
+     * @return false if the staging area is full
+     */
+    private boolean prefetch(final DbFile file, final PageId pid) {
+        if (bufferPool.isCached(pid) || staged.containsKey(key(pid))) {
+            return true;
+        }
+        if (staged.size() >= capacity()) {
+            rejected.increment();
+            return false;
+        }
+        PendingRead read = new PendingRead(pid, () -> {
+            if (bufferPool.isCached(pid)) {
+                return null;
+            }
+            long epoch = writeEpoch.get();
+            Page page = file.readPage(pid);
+            //读的过程中有页被写回，读到的内容可能已过期
+            return writeEpoch.get() == epoch ? page : null;
+        });
+        if (staged.putIfAbsent(key(pid), read) != null) {
+            return true;
+        }
+        issued.increment();
+        IO_THREAD.execute(read);
+        return true;
+    }
+
+    /**
+     * Take the prefetched copy of a page, waiting for it if the read is still
+     * in flight. If the read has not started yet, it runs in the caller.
+     *
+     * @return the page, or null if it was not prefetched or the read failed
+     */
+    Page take(PageId pid) {
+        PendingRead read = staged.remove(key(pid));
+        if (read == null || !read.pid.equals(pid)) {
+            return null;
+        }
+        read.run();
+        try {
+            Page page = read.get();
+            if (page != null) {
+                used.increment();
+            }
+            return page;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a counter that changes whenever the buffer pool writes or
+     * discards a page; a page read from disk while it stays the same is
+     * current
+     */
+    long getWriteEpoch() {
+        return writeEpoch.get();
+    }
+
+    /**
+     * Drop any prefetched copy of pid. The buffer pool calls this before and
+     * after it writes the page and when it discards the page.
+     */
+    void invalidate(PageId pid) {
+        writeEpoch.incrementAndGet();
+        staged.remove(key(pid));
+    }
+
+    /**
+     * The read-ahead state of one scan. A stream is used by a single iterator
+     * and is not thread-safe.
+     */
+    public class Stream {
+        private final DbFile file;
+        private final PagePredictor predictor;
+        private final Set<PageId> inFlight = new LinkedHashSet<>();
+        private PageId expected;
+        private int window;
+
+        private Stream(DbFile file, PagePredictor predictor) {
+            this.file = file;
+            this.predictor = predictor;
+            this.window = 0;
+        }
+
+        /**
+         * @return the current read-ahead window, 0 if the stream is not
+         * considered sequential
+         */
+        public int getWindow() {
+            return window;
+        }
+
+        /**
+         * Report that the scan is about to read pid.
+         */
+        public void access(PageId pid) {
+            boolean sequential = pid.equals(expected);
+            inFlight.remove(pid);
+            if (!enabled) {
+                expected = null;
+                return;
+            }
+            if (!sequential) {
+                //非顺序访问，重新开始检测
+                window = 0;
+                inFlight.clear();
+                List<PageId> next = predictor.next(pid, 1);
+                expected = next.isEmpty() ? null : next.get(0);
+                return;
+            }
+            if (inFlight.size() <= window / 2) {
+                window = window == 0 ? initialWindow : Math.min(2 * window, maxWindow);
+                List<PageId> next = predictor.next(pid, inFlight.size() + window);
+                expected = next.isEmpty() ? null : next.get(0);
+                for (PageId p : next) {
+                    if (inFlight.contains(p)) {
+                        continue;
+                    }
+                    if (!prefetch(file, p)) {
+                        window = Math.max(initialWindow, window / 2);
+                        break;
+                    }
+                    inFlight.add(p);
+                }
+            } else {
+                List<PageId> next = predictor.next(pid, 1);
+                expected = next.isEmpty() ? null : next.get(0);
+            }
+        }
+
+        /**
+         * Drop the pages this stream prefetched but never read.
+         */
+        public void close() {
+            for (PageId p : inFlight) {
+                PendingRead read = staged.get(key(p));
+                if (read != null && read.pid.equals(p)) {
+                    staged.remove(key(p), read);
+                }
+            }
+            inFlight.clear();
+            expected = null;
+            window = 0;
+        }
+    }
+}
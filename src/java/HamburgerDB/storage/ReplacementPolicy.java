@@ -0,0 +1,95 @@
+package HamburgerDB.storage;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * ReplacementPolicy decides which frame of the {@link PageTable} is evicted
+ * when the {@link BufferPool} runs out of frames.
+ * <p>
+ * The page table calls {@link #onInsert}, {@link #onRemove} and
+ * {@link #victim} while holding its eviction lock, so those calls are never
+ * concurrent with each other. {@link #onAccess} is called on the hit path
+ * without that lock and may run concurrently with anything else; policies
+ * that keep an ordering must protect it themselves and should keep the
+ * critical section short.
+ * <p>
+ * A policy may keep per-frame bookkeeping in {@link PageTable.Frame#policyState}.
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Name of the system property used to pick the policy of the default
+     * buffer pool, e.g. -DHamburgerDB.storage.ReplacementPolicy=2q
+     */
+    String POLICY_PROPERTY = "HamburgerDB.storage.ReplacementPolicy";
+
+    /**
+     * A page was just cached in frame.
+     */
+    void onInsert(PageTable.Frame frame);
+
+    /**
+     * The page cached in frame was requested again.
+     */
+    void onAccess(PageTable.Frame frame);
+
+    /**
+     * frame left the page table, either through eviction or discard.
+     */
+    void onRemove(PageTable.Frame frame);
+
+    /**
+     * Choose the frame to evict. The frame stays in the table until the
+     * page table calls {@link #onRemove}.
+     *
+     * @param evictable decides whether a page may be evicted (e.g. it is clean)
+     * @return the chosen frame, or null if no frame can be evicted
+     */
+    PageTable.Frame victim(Predicate<Page> evictable);
+
+    /**
+     * @return the resident frames from the most to the least recently used,
+     * as far as the policy can tell
+     */
+    List<PageTable.Frame> recencyOrder();
+
+    /**
+     * Create a policy by name: "clock", "lru", "2q" or "lru-k" (K = 2). An
+     * explicit K can be given as "lru-3" and so on.
+     *
+     * @param name     the name of the policy, case insensitive
+     * @param capacity the number of frames of the buffer pool
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static ReplacementPolicy create(String name, int capacity) {
+        String n = name.trim().toLowerCase();
+        switch (n) {
+            case "clock":
+                return new ClockPolicy(capacity);
+            case "lru":
+                return new LruKPolicy(1, capacity);
+            case "2q":
+                return new TwoQueuePolicy(capacity);
+            case "lru-k":
+                return new LruKPolicy(2, capacity);
+            default:
+                if (n.startsWith("lru-")) {
+                    try {
+                        return new LruKPolicy(Integer.parseInt(n.substring(4)), capacity);
+                    } catch (NumberFormatException e) {
+                        //fall through
+                    }
+                }
+                throw new IllegalArgumentException("unknown replacement policy " + name);
+        }
+    }
+
+    /**
+     * Create the policy named by the {@link #POLICY_PROPERTY} system property,
+     * or CLOCK if it is not set.
+     */
+    static ReplacementPolicy createDefault(int capacity) {
+        return create(System.getProperty(POLICY_PROPERTY, "clock"), capacity);
+    }
+}
@@ -0,0 +1,225 @@
+package HamburgerDB.storage;
+
+import HamburgerDB.common.Type;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A slotted page: a small header and a slot directory at the start of the
+ * page, and variable-length records that grow from the end of the page
+ * towards the directory. Fields are stored in their compact encoding (see
+ * {@link Type#serializeCompact}), so a string only takes the bytes it needs.
+ * <p>
+ * The header holds three unsigned shorts: the number of directory entries,
+ * the start of the record area (0 for an empty page, meaning the end of the
+ * page) and the number of bytes of deleted records inside the record area.
+ * Each directory entry holds the offset and the length of a record as
+ * unsigned shorts; an offset of 0 marks an empty slot. Slot numbers never
+ * change, so record ids stay valid. An all-zero page is an empty page.
+ * <p>
+ * Deleted records leave holes in the record area. When an insert does not
+ * fit in the space between the directory and the records but the holes
+ * would make room for it, the records are moved together at the end of the
+ * page first. Free space is counted in bytes.
+ */
+class SlottedPageLayout extends HeapPageLayout {
+
+    /**
+     * Largest page a slotted page can address.
+     */
+    static final int MAX_PAGE_SIZE = 1 << 16;
+
+    static final int HEADER_SIZE = 6;
+    static final int ENTRY_SIZE = 4;
+
+    private final int maxRecordLen;
+
+    SlottedPageLayout(TupleDesc td, int pageSize) {
+        super(td, pageSize);
+        if (pageSize > MAX_PAGE_SIZE || pageSize < HEADER_SIZE) {
+            throw new IllegalArgumentException("slotted pages can not be " + pageSize + " bytes");
+        }
+        int max = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            max += td.getFieldType(i) == Type.STRING_TYPE ? 2 + Type.STRING_LEN : td.getFieldType(i).getLen();
+        }
+        this.maxRecordLen = max;
+    }
+
+    private static int getShort(ByteBuffer page, int index) {
+        return page.getShort(index) & 0xffff;
+    }
+
+    private static int entry(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    private int recordStart(ByteBuffer page) {
+        int start = getShort(page, 2);
+        return start == 0 ? pageSize : start;
+    }
+
+    @Override
+    int minLength() {
+        return pageSize;
+    }
+
+    @Override
+    int headerLength(ByteBuffer page) {
+        return entry(numSlots(page));
+    }
+
+    @Override
+    int numSlots(ByteBuffer page) {
+        return getShort(page, 0);
+    }
+
+    @Override
+    boolean slotUsed(ByteBuffer page, int slot) {
+        return slot < numSlots(page) && getShort(page, entry(slot)) != 0;
+    }
+
+    @Override
+    int getNumEmptySlots(ByteBuffer page) {
+        return getFreeSpace(page) / (maxRecordLen + ENTRY_SIZE);
+    }
+
+    @Override
+    int getCapacity() {
+        return pageSize - HEADER_SIZE;
+    }
+
+    @Override
+    int getFreeSpace(ByteBuffer page) {
+        return recordStart(page) - headerLength(page) + getShort(page, 4);
+    }
+
+    private int recordLen(Tuple t) {
+        int len = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            len += td.getFieldType(i).getCompactLen(t.getField(i));
+        }
+        return len;
+    }
+
+    @Override
+    int spaceNeeded(Tuple t) {
+        return recordLen(t) + ENTRY_SIZE;
+    }
+
+    @Override
+    Tuple readTuple(ByteBuffer page, HeapPageId pid, int slot) {
+        if (!slotUsed(page, slot)) {
+            return null;
+        }
+        ByteBuffer buf = page.duplicate();
+        buf.position(getShort(page, entry(slot)));
+        Tuple t = new Tuple(td);
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                t.setField(i, td.getFieldType(i).parseCompact(buf));
+            }
+        } catch (ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    @Override
+    Field readField(ByteBuffer page, int slot, int field) throws ParseException {
+        ByteBuffer buf = page.duplicate();
+        buf.position(getShort(page, entry(slot)));
+        for (int i = 0; i < field; i++) {
+            td.getFieldType(i).skipCompact(buf);
+        }
+        return td.getFieldType(field).parseCompact(buf);
+    }
+
+    @Override
+    int insertTuple(ByteBuffer page, Tuple t, int from) {
+        int n = numSlots(page);
+        int slot = from;
+        while (slot < n && getShort(page, entry(slot)) != 0) {
+            slot++;
+        }
+        int len = recordLen(t);
+        int needed = len + (slot == n ? ENTRY_SIZE : 0);
+        if (recordStart(page) - entry(n) < needed) {
+            if (getFreeSpace(page) < needed) {
+                return -1;
+            }
+            compact(page);
+        }
+        if (slot == n) {
+            page.putShort(0, (short) (n + 1));
+        }
+        int start = recordStart(page) - len;
+        ByteBuffer buf = page.duplicate();
+        buf.position(start);
+        for (int i = 0; i < td.numFields(); i++) {
+            td.getFieldType(i).serializeCompact(t.getField(i), buf);
+        }
+        page.putShort(2, (short) start);
+        page.putShort(entry(slot), (short) start);
+        page.putShort(entry(slot) + 2, (short) len);
+        return slot;
+    }
+
+    @Override
+    void deleteTuple(ByteBuffer page, int slot) {
+        int offset = getShort(page, entry(slot));
+        int len = getShort(page, entry(slot) + 2);
+        for (int i = 0; i < len; i++) {
+            page.put(offset + i, (byte) 0);
+        }
+        page.putInt(entry(slot), 0);
+        if (offset == recordStart(page)) {
+            //最前面的记录直接归还给空闲区
+            page.putShort(2, (short) (offset + len == pageSize ? 0 : offset + len));
+        } else {
+            page.putShort(4, (short) (getShort(page, 4) + len));
+        }
+    }
+
+    /**
+     * Move the records together at the end of the page, so that all free
+     * space lies between the directory and the records.
+     */
+    private void compact(ByteBuffer page) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < numSlots(page); i++) {
+            if (getShort(page, entry(i)) != 0) {
+                order.add(i);
+            }
+        }
+        // 从最靠后的记录开始往后挪，挪动的目标位置不会覆盖还没挪的记录
+        order.sort((a, b) -> getShort(page, entry(b)) - getShort(page, entry(a)));
+        int oldStart = recordStart(page);
+        int end = pageSize;
+        byte[] record = new byte[maxRecordLen];
+        ByteBuffer buf = page.duplicate();
+        for (int slot : order) {
+            int offset = getShort(page, entry(slot));
+            int len = getShort(page, entry(slot) + 2);
+            end -= len;
+            if (end != offset) {
+                buf.position(offset);
+                buf.get(record, 0, len);
+                buf.position(end);
+                buf.put(record, 0, len);
+                page.putShort(entry(slot), (short) end);
+            }
+        }
+        for (int i = oldStart; i < end; i++) {
+            page.put(i, (byte) 0);
+        }
+        page.putShort(2, (short) (end == pageSize ? 0 : end));
+        page.putShort(4, (short) 0);
+    }
+}
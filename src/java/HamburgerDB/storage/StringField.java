@@ -5,6 +5,7 @@ import HamburgerDB.execution.Predicate;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
@@ -67,6 +68,22 @@ public class StringField implements Field {
             dos.write((byte) 0);
     }
 
+    @Override
+    public void serialize(ByteBuffer buf) {
+        String s = value;
+        if (s.length() > maxSize) {
+            s = s.substring(0, maxSize);
+        }
+        buf.putInt(s.length());
+        // 与DataOutputStream.writeBytes一样，每个字符只写低8位
+        for (int i = 0; i < s.length(); i++) {
+            buf.put((byte) s.charAt(i));
+        }
+        for (int i = s.length(); i < maxSize; i++) {
+            buf.put((byte) 0);
+        }
+    }
+
     /**
      * Compare the specified field to the value of this Field. Return semantics
      * are as specified by Field.compare
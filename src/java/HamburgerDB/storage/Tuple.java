@@ -1,14 +1,20 @@
 package HamburgerDB.storage;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * Tuples read from a page carry the encoded bytes of their slot and decode a
+ * field the first time it is accessed, so fields nobody looks at are never
+ * decoded.
  */
 
 /**
@@ -22,7 +28,9 @@ public class Tuple implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private TupleDesc tupleDesc;
-    private List<Field> fieldList;
+    private Field[] fields;
+    // 尚未解码的字段的原始字节（slot的内容），全部为null时不再需要
+    private byte[] encoded;
     private RecordId recordId;
 
 
@@ -35,7 +43,20 @@ public class Tuple implements Serializable {
     public Tuple(TupleDesc td) {
         // some code goes here
         this.tupleDesc = td;
-        this.fieldList = new ArrayList<>(td.numFields());
+        this.fields = new Field[td.numFields()];
+    }
+
+    /**
+     * Create a tuple whose fields are decoded from encoded, laid out as in a
+     * slot of a page of td, when they are first accessed.
+     *
+     * @param encoded the bytes of the tuple; the tuple keeps the array, so
+     *                the caller must not modify it afterwards
+     */
+    Tuple(TupleDesc td, RecordId rid, byte[] encoded) {
+        this(td);
+        this.recordId = rid;
+        this.encoded = encoded;
     }
 
     /**
@@ -73,11 +94,10 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        if (i >= this.fieldList.size()) {
-            this.fieldList.add(i, f);
-        } else {
-            this.fieldList.set(i, f);
+        if (i >= this.fields.length) {
+            this.fields = Arrays.copyOf(this.fields, i + 1);
         }
+        this.fields[i] = f;
     }
 
     /**
@@ -86,10 +106,40 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        if (i < 0 || i >= this.fieldList.size()) {
+        if (i < 0 || i >= this.fields.length) {
             return null;
         }
-        return this.fieldList.get(i);
+        Field f = this.fields[i];
+        byte[] enc = this.encoded;
+        if (f == null && enc != null && i < this.tupleDesc.numFields()) {
+            f = decode(enc, i);
+            this.fields[i] = f;
+        }
+        return f;
+    }
+
+    private Field decode(byte[] enc, int i) {
+        ByteBuffer buf = ByteBuffer.wrap(enc);
+        buf.position(this.tupleDesc.getFieldOffset(i));
+        try {
+            return this.tupleDesc.getFieldType(i).parse(buf);
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
+
+    /**
+     * Decode all fields that have not been decoded yet.
+     */
+    private Field[] decodeAll() {
+        if (this.encoded != null) {
+            for (int i = 0; i < this.fields.length; i++) {
+                getField(i);
+            }
+            this.encoded = null;
+        }
+        return this.fields;
     }
 
     /**
@@ -106,7 +156,7 @@ public class Tuple implements Serializable {
 //        throw new UnsupportedOperationException("Implement this");
         return "Tuple{" +
                 "tupleDesc=" + tupleDesc +
-                ", fieldList=" + fieldList +
+                ", fieldList=" + Arrays.toString(decodeAll()) +
                 '}';
 
     }
@@ -116,7 +166,7 @@ public class Tuple implements Serializable {
      */
     public Iterator<Field> fields() {
         // some code goes here
-        return this.fieldList.iterator();
+        return Arrays.asList(decodeAll()).iterator();
     }
 
     /**
@@ -124,13 +174,21 @@ public class Tuple implements Serializable {
      */
     public void resetTupleDesc(TupleDesc td) {
         // some code goes here
+        decodeAll();
         this.tupleDesc = td;
     }
 
     @Override
     public boolean equals(Object o) {
         if (o instanceof Tuple) {
-            if (((Tuple) o).tupleDesc.equals(tupleDesc) && ((Tuple) o).recordId.equals(recordId) && ((Tuple) o).fieldList.equals(fieldList)) {
+            Tuple other = (Tuple) o;
+            if (other.tupleDesc.equals(tupleDesc) && other.recordId.equals(recordId)
+                    && other.fields.length == fields.length) {
+                for (int i = 0; i < fields.length; i++) {
+                    if (!Objects.equals(other.getField(i), getField(i))) {
+                        return false;
+                    }
+                }
                 return true;
             }
         }
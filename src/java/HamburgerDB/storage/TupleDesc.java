@@ -14,6 +14,8 @@ import java.util.NoSuchElementException;
 public class TupleDesc implements Serializable {
 
     private List<TDItem> tupleDescList = new ArrayList<>();
+    // 每个字段在tuple中的字节偏移，第一次使用时计算
+    private transient int[] fieldOffsets;
 
     /**
      * A help class to facilitate organizing the information of each field
@@ -186,6 +188,27 @@ public class TupleDesc implements Serializable {
 
     }
 
+    /**
+     * @param i index of a field. It must be a valid index.
+     * @return the offset in bytes of the ith field from the start of a tuple
+     * of this TupleDesc in its on-disk format
+     * @throws NoSuchElementException if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        if (i < 0 || i >= this.tupleDescList.size()) {
+            throw new NoSuchElementException();
+        }
+        int[] offsets = this.fieldOffsets;
+        if (offsets == null) {
+            offsets = new int[this.tupleDescList.size()];
+            for (int j = 1; j < offsets.length; j++) {
+                offsets[j] = offsets[j - 1] + this.tupleDescList.get(j - 1).fieldType.getLen();
+            }
+            this.fieldOffsets = offsets;
+        }
+        return offsets[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -0,0 +1,131 @@
+package HamburgerDB.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 2Q replacement (Johnson and Shasha, full version). A page read for the
+ * first time enters A1in, a FIFO queue. Pages evicted from A1in leave their
+ * id in A1out, a queue of ghosts. Only a page that is read again while its
+ * ghost is still in A1out is admitted to Am, an LRU queue. A large scan
+ * therefore only cycles through A1in and never pushes hot pages out of Am.
+ * <p>
+ * All queues are protected by the policy's monitor, which the hit path takes
+ * briefly to move a page to the front of Am.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+
+    private enum Queue { A1IN, AM }
+
+    private final int kin;
+    private final int kout;
+    private final Set<PageTable.Frame> a1in;
+    private final LinkedHashMap<PageTable.Frame, Boolean> am;
+    private final Set<PageId> a1out;
+
+    /**
+     * Creates a 2Q policy with the recommended sizes: A1in holds a quarter of
+     * the frames and A1out remembers half as many pages as there are frames.
+     */
+    public TwoQueuePolicy(int capacity) {
+        this(capacity, Math.max(1, capacity / 4), Math.max(1, capacity / 2));
+    }
+
+    /**
+     * @param capacity the number of frames of the buffer pool
+     * @param kin      the target size of A1in
+     * @param kout     the number of ghosts kept in A1out
+     */
+    public TwoQueuePolicy(int capacity, int kin, int kout) {
+        this.kin = kin;
+        this.kout = kout;
+        this.a1in = new LinkedHashSet<>();
+        this.am = new LinkedHashMap<>(capacity * 2, 0.75f, true);
+        this.a1out = new LinkedHashSet<>();
+    }
+
+    @Override
+    public synchronized void onInsert(PageTable.Frame frame) {
+        if (a1out.remove(frame.getPageId())) {
+            frame.policyState = Queue.AM;
+            am.put(frame, Boolean.TRUE);
+        } else {
+            frame.policyState = Queue.A1IN;
+            a1in.add(frame);
+        }
+    }
+
+    @Override
+    public synchronized void onAccess(PageTable.Frame frame) {
+        //A1in中的页再次访问不改变位置
+        if (frame.policyState == Queue.AM) {
+            am.get(frame);
+        }
+    }
+
+    @Override
+    public synchronized void onRemove(PageTable.Frame frame) {
+        if (frame.policyState == Queue.AM) {
+            am.remove(frame);
+            return;
+        }
+        a1in.remove(frame);
+        a1out.add(frame.getPageId());
+        if (a1out.size() > kout) {
+            Iterator<PageId> it = a1out.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    @Override
+    public synchronized PageTable.Frame victim(Predicate<Page> evictable) {
+        PageTable.Frame frame;
+        if (a1in.size() > kin || am.isEmpty()) {
+            frame = first(a1in, evictable);
+            if (frame == null) {
+                frame = first(am.keySet(), evictable);
+            }
+        } else {
+            frame = first(am.keySet(), evictable);
+            if (frame == null) {
+                frame = first(a1in, evictable);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * The pages of Am come first, most recently used first, followed by
+     * those of A1in, newest first.
+     */
+    @Override
+    public synchronized List<PageTable.Frame> recencyOrder() {
+        List<PageTable.Frame> res = new ArrayList<>(am.keySet());
+        Collections.reverse(res);
+        List<PageTable.Frame> in = new ArrayList<>(a1in);
+        Collections.reverse(in);
+        res.addAll(in);
+        return res;
+    }
+
+    private static PageTable.Frame first(Set<PageTable.Frame> queue, Predicate<Page> evictable) {
+        for (PageTable.Frame frame : queue) {
+            if (evictable.test(frame.getPage())) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "2q";
+    }
+}
@@ -1,32 +1,30 @@
 package HamburgerDB.transaction;
 
-import HamburgerDB.common.Permissions;
-
 public class Lock {
     private TransactionId transactionId;
-    private Permissions permissions;
+    private LockMode mode;
 
-    public Lock(TransactionId transactionId, Permissions permissions) {
+    public Lock(TransactionId transactionId, LockMode mode) {
         this.transactionId = transactionId;
-        this.permissions = permissions;
+        this.mode = mode;
     }
 
     public TransactionId getTransactionId() {
         return transactionId;
     }
 
-    public Permissions getPermissions() {
-        return permissions;
+    public LockMode getMode() {
+        return mode;
     }
 
-    public void setPermissions(Permissions permissions) {
-        this.permissions = permissions;
+    public void setMode(LockMode mode) {
+        this.mode = mode;
     }
 
     @Override
     public String toString() {
         return "Lock{" +
-                "permissions=" + permissions +
+                "mode=" + mode +
                 ", transactionId=" + transactionId +
                 '}';
     }
@@ -3,131 +3,693 @@ package HamburgerDB.transaction;
 import HamburgerDB.common.Permissions;
 import HamburgerDB.storage.PageId;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 锁管理器
+ * <p>
+ * Locks are taken on two levels, tables and pages, in the {@link LockMode}s
+ * of multi-granularity locking. A transaction that locks a page first holds
+ * the intention mode on its table (IS to read, IX to write); a transaction
+ * that locks a whole table with {@link #acquireTableLock} needs no page
+ * locks for the pages its table lock covers, so a full scan takes one lock
+ * instead of one per page.
+ * <p>
+ * Each locked table or page has the locks granted on it and a FIFO queue of
+ * waiting requests. A request that conflicts with the granted locks, or
+ * arrives while others are waiting, joins the queue and parks on its own
+ * condition until it is granted, so waiters use no CPU and a request is
+ * never overtaken by a later one. When locks are released, the requests at
+ * the head of the queue are granted as far as they are compatible with the
+ * locks still held. A transaction that strengthens a lock it holds is
+ * queued ahead of the other waiters.
+ * <p>
+ * Next to the table of locked objects, each transaction has the set of
+ * locks it holds, so that {@link #releaseAllLock} at commit or abort visits
+ * only its own locks and {@link #holdsLock} is a lookup.
+ * <p>
+ * A transaction that holds more page locks on one table than the
+ * escalation threshold has them converted into a single table lock, S or,
+ * if any of them is X, X. Escalation never waits: if another transaction
+ * holds a conflicting lock on the table, the page locks are kept and the
+ * escalation is tried again after another threshold's worth of page locks.
+ * <p>
+ * Waiting transactions are kept in a {@link WaitsForGraph}. Each time a
+ * request blocks, the manager looks for a cycle through its transaction; if
+ * there is one, a victim on the cycle, chosen by the {@link VictimRule}, is
+ * taken out of the queues and its waiting request fails with a
+ * {@link TransactionAbortedException}. The other transactions keep waiting,
+ * however long that takes.
  */
 public class LockManager {
-    //key：页id，value：作用于该页的所有lock
-    private Map<Integer, List<Lock>> lockCache;
 
+    /**
+     * Name of the system property used to pick the victim rule, e.g.
+     * -DHamburgerDB.transaction.VictimRule=least_work
+     */
+    public static final String VICTIM_PROPERTY = "HamburgerDB.transaction.VictimRule";
 
-    public LockManager() {
-        this.lockCache = new ConcurrentHashMap<>();
+    /**
+     * Name of the system property used to set the escalation threshold, e.g.
+     * -DHamburgerDB.transaction.EscalationThreshold=500
+     */
+    public static final String ESCALATION_PROPERTY = "HamburgerDB.transaction.EscalationThreshold";
+
+    /**
+     * Default number of page locks a transaction may hold on one table
+     * before they are escalated to a table lock.
+     */
+    public static final int DEFAULT_ESCALATION_THRESHOLD = 1000;
+
+    /**
+     * How to choose the transaction to abort on a cycle of the waits-for
+     * graph.
+     */
+    public enum VictimRule {
+        /**
+         * The transaction that began last, which has probably done the
+         * least.
+         */
+        YOUNGEST,
+        /**
+         * The transaction that holds the fewest locks, the youngest of them
+         * on a tie.
+         */
+        LEAST_WORK
     }
 
     /**
-     * 获取锁
-     *
-     * @param tid
-     * @param pageId
-     * @param permissions
-     * @return
+     * The key of a table in the lock table, next to the {@link PageId}s.
      */
-    public synchronized Boolean acquireLock(TransactionId tid, PageId pageId, Permissions permissions) {
-        Lock lock = new Lock(tid, permissions);
-        int pid = pageId.getPageNumber();
-        List<Lock> locks = lockCache.get(pid);
-        if (locks == null || locks.size() == 0) {
-            locks = new ArrayList<>();
-            locks.add(lock);
-            lockCache.put(pid, locks);
-            return true;
+    private static final class TableKey {
+        final int tableId;
+
+        TableKey(int tableId) {
+            this.tableId = tableId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TableKey && ((TableKey) o).tableId == tableId;
         }
 
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(tableId);
+        }
+    }
+
+    private static boolean conflicts(Lock lock, TransactionId tid, LockMode mode) {
+        return !lock.getTransactionId().equals(tid) && !lock.getMode().compatibleWith(mode);
+    }
 
-        if (locks.size() == 1) {
-            //当只有一个事务抢占锁
-            Lock curLock = locks.get(0);
-            if (curLock.getTransactionId().equals(tid)) {
-                //判断是否进行锁升级
-                if (curLock.getPermissions().equals(Permissions.READ_ONLY) && lock.getPermissions().equals(Permissions.READ_WRITE)) {
-                    curLock.setPermissions(Permissions.READ_WRITE);
+    /**
+     * A request waiting in the queue of a table or page.
+     */
+    private static class Request {
+        final Lock lock;
+        final LockState state;
+        final Condition granted;
+        boolean done = false;
+        //被选为死锁的牺牲者
+        boolean aborted = false;
+
+        Request(Lock lock, LockState state, Condition granted) {
+            this.lock = lock;
+            this.state = state;
+            this.granted = granted;
+        }
+
+        TransactionId tid() {
+            return lock.getTransactionId();
+        }
+    }
+
+    /**
+     * 一个表或页上已授予的锁和等待队列
+     */
+    private static class LockState {
+        //PageId或TableKey
+        final Object key;
+        final Map<TransactionId, Lock> holders = new LinkedHashMap<>();
+        final Deque<Request> waiters = new ArrayDeque<>();
+
+        LockState(Object key) {
+            this.key = key;
+        }
+
+        Lock find(TransactionId tid) {
+            return holders.get(tid);
+        }
+
+        /**
+         * @return true if a lock of tid in mode fits with the locks held by
+         * the other transactions
+         */
+        boolean compatible(TransactionId tid, LockMode mode) {
+            for (Lock l : holders.values()) {
+                if (conflicts(l, tid, mode)) {
+                    return false;
                 }
-                return true;
-            } else {
-                if (curLock.getPermissions().equals(Permissions.READ_ONLY) && lock.getPermissions().equals(Permissions.READ_ONLY)) {
-                    locks.add(lock);
-                    return true;
+            }
+            return true;
+        }
+
+        /**
+         * Add to blockers the transactions that request waits for: the
+         * holders it conflicts with, and every request ahead of it, since
+         * the queue is granted in order.
+         */
+        void blockers(Request request, Set<TransactionId> blockers) {
+            TransactionId tid = request.tid();
+            for (Lock l : holders.values()) {
+                if (conflicts(l, tid, request.lock.getMode())) {
+                    blockers.add(l.getTransactionId());
+                }
+            }
+            for (Request ahead : waiters) {
+                if (ahead == request) {
+                    break;
+                }
+                if (!ahead.tid().equals(tid)) {
+                    blockers.add(ahead.tid());
                 }
-                return false;
             }
         }
 
-        //当有多个事务抢占锁，说明必然是多个读事务
-        if (lock.getPermissions().equals(Permissions.READ_WRITE)) {
-            return false;
+        boolean isUnused() {
+            return holders.isEmpty() && waiters.isEmpty();
+        }
+    }
+
+    //key：页id或表，value：作用于其上的所有lock
+    private final Map<Object, LockState> lockTable = new HashMap<>();
+    private final ReentrantLock latch = new ReentrantLock();
+    //key：事务id，value：该事务持有的锁，与lockTable同步维护
+    private final Map<TransactionId, Map<Object, Lock>> lockSets = new HashMap<>();
+    //key：事务id，value：该事务在每个表上持有的页锁数
+    private final Map<TransactionId, Map<Integer, Integer>> pageLockCounts = new HashMap<>();
+    //key：事务id，value：该事务正在等待的请求
+    private final Map<TransactionId, List<Request>> waiting = new HashMap<>();
+    private final WaitsForGraph waitsFor = new WaitsForGraph();
+    private final VictimRule victimRule;
+    private final LongAdder deadlocks = new LongAdder();
+    private volatile int escalationThreshold;
+    private final LongAdder escalations = new LongAdder();
+    private final LongAdder failedEscalations = new LongAdder();
+
+    public LockManager() {
+        this(VictimRule.valueOf(System.getProperty(VICTIM_PROPERTY, "youngest").toUpperCase()));
+    }
+
+    public LockManager(VictimRule victimRule) {
+        this.victimRule = victimRule;
+        setEscalationThreshold(Integer.getInteger(ESCALATION_PROPERTY, DEFAULT_ESCALATION_THRESHOLD));
+    }
+
+    /**
+     * Set how many page locks a transaction may hold on one table before
+     * they are escalated to a table lock; Integer.MAX_VALUE turns escalation
+     * off.
+     */
+    public void setEscalationThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("escalation threshold must be positive: " + threshold);
         }
+        this.escalationThreshold = threshold;
+    }
+
+    public int getEscalationThreshold() {
+        return escalationThreshold;
+    }
 
-        //每一个事物读锁并不需要重复获取
-        for (Lock l : locks) {
-            if (l.getTransactionId().equals(lock.getTransactionId())) {
+    /**
+     * 获取锁，必要时一直等待，直到获得锁或被选为死锁的牺牲者
+     *
+     * @see #acquireLock(TransactionId, PageId, Permissions, long)
+     */
+    public boolean acquireLock(TransactionId tid, PageId pageId, Permissions permissions)
+            throws TransactionAbortedException {
+        return acquireLock(tid, pageId, permissions, Long.MAX_VALUE);
+    }
+
+    /**
+     * 获取页锁，必要时排队等待。先获取表上的意向锁；表锁已经覆盖该页时不再加页锁
+     *
+     * @param tid         the transaction requesting the lock
+     * @param pageId      the page to lock
+     * @param permissions READ_ONLY for a shared lock, READ_WRITE for an
+     *                    exclusive one
+     * @param timeout     how long to wait at most, in milliseconds
+     * @return true once the lock is granted, false if it was not granted in
+     * time or the thread was interrupted while waiting
+     * @throws TransactionAbortedException if waiting for the lock would close
+     *                                     a cycle of waiting transactions and
+     *                                     tid was chosen to break it
+     */
+    public boolean acquireLock(TransactionId tid, PageId pageId, Permissions permissions, long timeout)
+            throws TransactionAbortedException {
+        LockMode mode = LockMode.of(permissions);
+        TableKey table = new TableKey(pageId.getTableId());
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        latch.lock();
+        try {
+            Lock tableLock = heldLock(tid, table);
+            if (tableLock != null && tableLock.getMode().covers(mode)) {
                 return true;
             }
+            boolean newPage = heldLock(tid, pageId) == null;
+            long start = System.nanoTime();
+            if (!acquire(tid, table, mode.intention(), nanos)) {
+                return false;
+            }
+            if (nanos != Long.MAX_VALUE) {
+                nanos -= System.nanoTime() - start;
+            }
+            if (!acquire(tid, pageId, mode, Math.max(0, nanos))) {
+                return false;
+            }
+            if (!newPage) {
+                return true;
+            }
+            int count = pageLockCounts.get(tid).getOrDefault(table.tableId, 0);
+            //超过阈值时尝试升级，失败后每多一个阈值的页锁再试一次
+            if (count > escalationThreshold && (count - 1) % escalationThreshold == 0) {
+                escalate(tid, table);
+            }
+            return true;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * 获取表锁，覆盖表中所有页，必要时排队等待
+     *
+     * @param tid         the transaction requesting the lock
+     * @param tableId     the table to lock
+     * @param permissions READ_ONLY to read every page of the table,
+     *                    READ_WRITE to also write them
+     * @param timeout     how long to wait at most, in milliseconds
+     * @return true once the lock is granted, false if it was not granted in
+     * time or the thread was interrupted while waiting
+     * @throws TransactionAbortedException if tid was chosen as the victim of
+     *                                     a deadlock
+     */
+    public boolean acquireTableLock(TransactionId tid, int tableId, Permissions permissions, long timeout)
+            throws TransactionAbortedException {
+        latch.lock();
+        try {
+            return acquire(tid, new TableKey(tableId), LockMode.of(permissions),
+                    TimeUnit.MILLISECONDS.toNanos(timeout));
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * Replace the page locks tid holds on table by one table lock, if that
+     * can be granted without waiting. Called with the latch held.
+     */
+    private void escalate(TransactionId tid, TableKey table) {
+        Map<Object, Lock> lockSet = lockSets.get(tid);
+        List<PageId> pages = new ArrayList<>();
+        LockMode mode = LockMode.S;
+        for (Map.Entry<Object, Lock> e : lockSet.entrySet()) {
+            if (e.getKey() instanceof PageId && ((PageId) e.getKey()).getTableId() == table.tableId) {
+                pages.add((PageId) e.getKey());
+                mode = mode.combine(e.getValue().getMode());
+            }
+        }
+        LockState state = lockTable.get(table);
+        LockMode wanted = state.find(tid).getMode().combine(mode);
+        if (!state.compatible(tid, wanted)) {
+            failedEscalations.increment();
+            return;
+        }
+        grant(state, new Lock(tid, wanted));
+        updateWaitsFor(state);
+        for (PageId pid : pages) {
+            lockSet.remove(pid);
+            release(tid, lockTable.get(pid));
+        }
+        pageLockCounts.get(tid).remove(table.tableId);
+        escalations.increment();
+    }
+
+    private Lock heldLock(TransactionId tid, Object key) {
+        Map<Object, Lock> lockSet = lockSets.get(tid);
+        return lockSet == null ? null : lockSet.get(key);
+    }
+
+    /**
+     * Lock key in mode, or strengthen the lock tid holds on it so that it
+     * also allows mode. Called with the latch held.
+     */
+    private boolean acquire(TransactionId tid, Object key, LockMode mode, long nanos)
+            throws TransactionAbortedException {
+        LockState state = lockTable.computeIfAbsent(key, LockState::new);
+        Lock held = state.find(tid);
+        if (held != null && held.getMode().covers(mode)) {
+            return true;
+        }
+        LockMode wanted = held == null ? mode : held.getMode().combine(mode);
+        boolean upgrade = held != null;
+        //升级可以越过等待的请求，其他请求要等队列空了才能直接获取
+        if ((upgrade || state.waiters.isEmpty()) && state.compatible(tid, wanted)) {
+            grant(state, new Lock(tid, wanted));
+            //升级后等待的请求可能也要等这个事务
+            updateWaitsFor(state);
+            return true;
+        }
+        Request request = new Request(new Lock(tid, wanted), state, latch.newCondition());
+        if (upgrade) {
+            state.waiters.addFirst(request);
+        } else {
+            state.waiters.addLast(request);
+        }
+        waiting.computeIfAbsent(tid, k -> new ArrayList<>()).add(request);
+        //升级排在队首，后面的请求也要等它
+        updateWaitsFor(state);
+        detectDeadlock(tid);
+        if (!await(request, nanos) && request.aborted) {
+            throw new TransactionAbortedException();
+        }
+        return request.done;
+    }
+
+    /**
+     * Look for cycles through tid, which has just started waiting, and abort
+     * a victim on each. A request may close several cycles at once, as it
+     * can wait for several transactions. Called with the latch held.
+     */
+    private void detectDeadlock(TransactionId tid) {
+        List<TransactionId> cycle;
+        while (waiting.containsKey(tid) && (cycle = waitsFor.findCycle(tid)) != null) {
+            deadlocks.increment();
+            TransactionId victim = chooseVictim(cycle);
+            List<Request> requests = waiting.remove(victim);
+            waitsFor.remove(victim);
+            for (Request request : requests) {
+                request.aborted = true;
+                request.state.waiters.remove(request);
+                request.granted.signal();
+            }
+            for (Request request : requests) {
+                grantWaiters(request.state);
+            }
+        }
+    }
+
+    private TransactionId chooseVictim(List<TransactionId> cycle) {
+        Comparator<TransactionId> youngest = Comparator.comparingLong(TransactionId::getId);
+        if (victimRule == VictimRule.LEAST_WORK) {
+            Map<TransactionId, Integer> work = new HashMap<>();
+            for (TransactionId tid : cycle) {
+                work.put(tid, locksHeld(tid));
+            }
+            //持有的锁最少，其次最年轻
+            return cycle.stream()
+                    .max(Comparator.<TransactionId>comparingInt(work::get).reversed().thenComparing(youngest))
+                    .get();
+        }
+        return cycle.stream().max(youngest).get();
+    }
+
+    private int locksHeld(TransactionId tid) {
+        return lockSets.getOrDefault(tid, Collections.emptyMap()).size();
+    }
+
+    /**
+     * Add lock to the holders of state and to the lock set of its
+     * transaction, or strengthen the lock the transaction already holds.
+     * Called with the latch held.
+     */
+    private void grant(LockState state, Lock lock) {
+        TransactionId tid = lock.getTransactionId();
+        Lock held = state.find(tid);
+        if (held == null) {
+            state.holders.put(tid, lock);
+            lockSets.computeIfAbsent(tid, k -> new HashMap<>()).put(state.key, lock);
+            if (state.key instanceof PageId) {
+                pageLockCounts.computeIfAbsent(tid, k -> new HashMap<>())
+                        .merge(((PageId) state.key).getTableId(), 1, Integer::sum);
+            }
+        } else {
+            held.setMode(held.getMode().combine(lock.getMode()));
+        }
+    }
+
+    /**
+     * Take the lock of tid off state and let the waiters in. The caller
+     * updates the lock set of tid. Called with the latch held.
+     */
+    private void release(TransactionId tid, LockState state) {
+        if (state.holders.remove(tid) != null) {
+            grantWaiters(state);
+        }
+    }
+
+    /**
+     * Recompute the edges of the transactions waiting on state. Called with
+     * the latch held.
+     */
+    private void updateWaitsFor(LockState state) {
+        Set<TransactionId> done = new HashSet<>();
+        for (Request request : state.waiters) {
+            if (done.add(request.tid())) {
+                updateWaitsFor(request.tid());
+            }
+        }
+    }
+
+    private void updateWaitsFor(TransactionId tid) {
+        Set<TransactionId> blockers = new HashSet<>();
+        for (Request r : waiting.getOrDefault(tid, Collections.emptyList())) {
+            r.state.blockers(r, blockers);
+        }
+        waitsFor.setEdges(tid, blockers);
+    }
+
+    private void stopWaiting(Request request) {
+        List<Request> requests = waiting.get(request.tid());
+        if (requests != null) {
+            requests.remove(request);
+            if (requests.isEmpty()) {
+                waiting.remove(request.tid());
+            }
+            updateWaitsFor(request.tid());
+        }
+    }
+
+    /**
+     * Park until request is granted or the time is up. Called with the latch
+     * held.
+     */
+    private boolean await(Request request, long nanos) {
+        try {
+            while (!request.done && !request.aborted && nanos > 0) {
+                nanos = request.granted.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //线程在等待时被stop()不会重新获得latch
+            if (!latch.isHeldByCurrentThread()) {
+                latch.lock();
+            }
+            if (!request.done && !request.aborted) {
+                //超时或被中断：退出队列，后面的请求也许可以获取了
+                request.state.waiters.remove(request);
+                stopWaiting(request);
+                grantWaiters(request.state);
+            }
         }
-        locks.add(lock);
-        return true;
+        return request.done;
     }
 
+    /**
+     * Grant the requests at the head of the queue of state for as long as
+     * they are compatible, and wake them up. Called with the latch held.
+     */
+    private void grantWaiters(LockState state) {
+        Iterator<Request> it = state.waiters.iterator();
+        while (it.hasNext()) {
+            Request request = it.next();
+            if (!state.compatible(request.tid(), request.lock.getMode())) {
+                break;
+            }
+            it.remove();
+            grant(state, request.lock);
+            stopWaiting(request);
+            request.done = true;
+            request.granted.signal();
+        }
+        if (state.isUnused()) {
+            lockTable.remove(state.key);
+        } else {
+            updateWaitsFor(state);
+        }
+    }
 
     /**
-     * 释放锁
+     * 释放页锁，表上的意向锁保留到事务结束
      *
      * @param tid
      * @param pageId
      */
-    public synchronized void releaseLock(TransactionId tid, PageId pageId) {
-        int pid = pageId.getPageNumber();
-        List<Lock> locks = lockCache.get(pid);
-        for (Lock l : locks) {
-            if (l.getTransactionId().equals(tid)) {
-                locks.remove(l);
-                if (locks.size() == 0) {
-                    lockCache.remove(pid);
+    public void releaseLock(TransactionId tid, PageId pageId) {
+        latch.lock();
+        try {
+            Map<Object, Lock> lockSet = lockSets.get(tid);
+            if (lockSet != null && lockSet.remove(pageId) != null) {
+                Map<Integer, Integer> counts = pageLockCounts.get(tid);
+                counts.computeIfPresent(pageId.getTableId(), (k, n) -> n == 1 ? null : n - 1);
+                if (lockSet.isEmpty()) {
+                    lockSets.remove(tid);
+                    pageLockCounts.remove(tid);
                 }
-                return;
+                release(tid, lockTable.get(pageId));
             }
+        } finally {
+            latch.unlock();
         }
     }
 
     /**
-     * 释放当前事务的所有锁
+     * 释放当前事务的所有锁，只访问该事务持有锁的页和表
      *
      * @param tid
      */
-    public synchronized void releaseAllLock(TransactionId tid) {
-        for (Integer pid : lockCache.keySet()) {
-            List<Lock> locks = lockCache.get(pid);
-            for (Lock lock : locks) {
-                if (lock.getTransactionId().equals(tid)) {
-                    locks.remove(lock);
-                    if (locks.size() == 0) {
-                        lockCache.remove(pid);
-                    }
-                    break;
-                }
+    public void releaseAllLock(TransactionId tid) {
+        latch.lock();
+        try {
+            Map<Object, Lock> lockSet = lockSets.remove(tid);
+            pageLockCounts.remove(tid);
+            if (lockSet == null) {
+                return;
             }
+            for (Object key : lockSet.keySet()) {
+                release(tid, lockTable.get(key));
+            }
+        } finally {
+            latch.unlock();
         }
     }
 
     /**
-     * 判断是否持有锁
+     * 判断是否持有锁，页锁或覆盖该页的表锁都算
      *
      * @param tid
      * @param pageId
      * @return
      */
-    public synchronized Boolean holdsLock(TransactionId tid, PageId pageId) {
-        for (Lock lock : lockCache.get(pageId.getPageNumber())) {
-            if (lock.getTransactionId().equals(tid)) {
-                return true;
+    public boolean holdsLock(TransactionId tid, PageId pageId) {
+        latch.lock();
+        try {
+            Map<Object, Lock> lockSet = lockSets.get(tid);
+            if (lockSet == null) {
+                return false;
             }
+            Lock tableLock = lockSet.get(new TableKey(pageId.getTableId()));
+            return lockSet.containsKey(pageId)
+                    || tableLock != null && tableLock.getMode().covers(LockMode.S);
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * @return the mode tid holds on table tableId, or null if it holds no
+     * lock on it
+     */
+    public LockMode getTableLockMode(TransactionId tid, int tableId) {
+        latch.lock();
+        try {
+            Lock lock = heldLock(tid, new TableKey(tableId));
+            return lock == null ? null : lock.getMode();
+        } finally {
+            latch.unlock();
         }
-        return false;
     }
 
+    /**
+     * @return the number of requests waiting for a lock on pageId
+     */
+    public int getQueueLength(PageId pageId) {
+        latch.lock();
+        try {
+            LockState state = lockTable.get(pageId);
+            return state == null ? 0 : state.waiters.size();
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * @return the pages tid holds a page lock on
+     */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+        latch.lock();
+        try {
+            Set<PageId> pages = new HashSet<>();
+            for (Object key : lockSets.getOrDefault(tid, Collections.emptyMap()).keySet()) {
+                if (key instanceof PageId) {
+                    pages.add((PageId) key);
+                }
+            }
+            return pages;
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    /**
+     * @return the number of deadlocks broken so far
+     */
+    public long getDeadlocks() {
+        return deadlocks.sum();
+    }
+
+    /**
+     * @return the number of times page locks were escalated to a table lock
+     */
+    public long getEscalations() {
+        return escalations.sum();
+    }
+
+    /**
+     * @return the number of escalations given up because another transaction
+     * held a conflicting lock on the table
+     */
+    public long getFailedEscalations() {
+        return failedEscalations.sum();
+    }
+
+    /**
+     * @return the transactions that tid waits for
+     */
+    public Set<TransactionId> getWaitsFor(TransactionId tid) {
+        latch.lock();
+        try {
+            return new HashSet<>(waitsFor.getEdges(tid));
+        } finally {
+            latch.unlock();
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package HamburgerDB.transaction;
+
+import HamburgerDB.common.Permissions;
+
+/**
+ * 锁的模式
+ * <p>
+ * Pages are locked S or X. Tables are locked with the same modes, which then
+ * cover every page of the table, or with an intention mode saying that the
+ * transaction locks pages of the table: IS before S page locks, IX before X
+ * page locks, and SIX for a transaction that reads the whole table and
+ * writes some of its pages.
+ */
+public enum LockMode {
+    IS, IX, S, SIX, X;
+
+    //兼容矩阵，按声明顺序
+    private static final boolean[][] COMPATIBLE = {
+            //          IS     IX     S      SIX    X
+            /* IS  */ {true, true, true, true, false},
+            /* IX  */ {true, true, false, false, false},
+            /* S   */ {true, false, true, false, false},
+            /* SIX */ {true, false, false, false, false},
+            /* X   */ {false, false, false, false, false},
+    };
+
+    /**
+     * @return the mode of a page lock for perm
+     */
+    public static LockMode of(Permissions perm) {
+        return perm == Permissions.READ_WRITE ? X : S;
+    }
+
+    /**
+     * @return true if two transactions may hold this mode and other on the
+     * same object at once
+     */
+    public boolean compatibleWith(LockMode other) {
+        return COMPATIBLE[ordinal()][other.ordinal()];
+    }
+
+    /**
+     * @return the weakest mode that allows all this mode and other allow
+     */
+    public LockMode combine(LockMode other) {
+        if (this == other) {
+            return this;
+        }
+        if (this == X || other == X) {
+            return X;
+        }
+        if (this == IS) {
+            return other;
+        }
+        if (other == IS) {
+            return this;
+        }
+        //IX、S、SIX两两组合
+        return SIX;
+    }
+
+    /**
+     * @return true if holding this mode makes a request for other redundant
+     */
+    public boolean covers(LockMode other) {
+        return combine(other) == this;
+    }
+
+    /**
+     * @return the mode to hold on the table before locking one of its pages
+     * in this mode
+     */
+    public LockMode intention() {
+        return this == S || this == IS ? IS : IX;
+    }
+}
@@ -0,0 +1,82 @@
+package HamburgerDB.transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 等待图
+ * <p>
+ * There is an edge from a transaction to each transaction it waits for. The
+ * graph has no cycle as long as there is no deadlock, so a cycle can only
+ * appear when a transaction starts waiting, and then it goes through that
+ * transaction: {@link #findCycle} only searches from it. Not thread safe,
+ * the {@link LockManager} guards it.
+ */
+public class WaitsForGraph {
+
+    private final Map<TransactionId, Set<TransactionId>> edges = new HashMap<>();
+
+    /**
+     * Replace the transactions that waiter waits for.
+     */
+    public void setEdges(TransactionId waiter, Set<TransactionId> blockers) {
+        if (blockers.isEmpty()) {
+            edges.remove(waiter);
+        } else {
+            edges.put(waiter, blockers);
+        }
+    }
+
+    /**
+     * waiter no longer waits for anything.
+     */
+    public void remove(TransactionId waiter) {
+        edges.remove(waiter);
+    }
+
+    /**
+     * @return the transactions that waiter waits for
+     */
+    public Set<TransactionId> getEdges(TransactionId waiter) {
+        return edges.getOrDefault(waiter, Collections.emptySet());
+    }
+
+    /**
+     * @return the transactions on a cycle through start, in the order of the
+     * edges and starting with start, or null if there is no such cycle
+     */
+    public List<TransactionId> findCycle(TransactionId start) {
+        List<TransactionId> path = new ArrayList<>();
+        path.add(start);
+        return search(start, path, new HashSet<>()) ? path : null;
+    }
+
+    private boolean search(TransactionId tid, List<TransactionId> path, Set<TransactionId> visited) {
+        for (TransactionId next : getEdges(tid)) {
+            if (next.equals(path.get(0))) {
+                return true;
+            }
+            //从已访问过的节点出发回不到起点
+            if (visited.add(next)) {
+                path.add(next);
+                if (search(next, path, visited)) {
+                    return true;
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of waiting transactions
+     */
+    public int size() {
+        return edges.size();
+    }
+}
@@ -15,11 +15,13 @@ import HamburgerDB.systemtest.SystemTestUtil;
 
 //import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -321,6 +323,44 @@ public class BTreeInternalPageTest extends SimpleDbTestBase {
 		}
 	}
 
+	/**
+	 * Unit test for BTreeInternalPage.getPageData() and writePageData() after
+	 * the page was modified between serializations
+	 */
+	@Test public void serializeAfterChanges() throws Exception {
+		BTreeInternalPage page = new BTreeInternalPage(pid, EXAMPLE_DATA, 0);
+		assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+
+		Iterator<BTreeEntry> it = page.iterator();
+		page.deleteKeyAndRightChild(it.next());
+		BTreeEntry e = it.next();
+		e.setRightChild(new BTreePageId(pid.getTableId(), 99, e.getRightChild().pgcateg()));
+		page.updateEntry(e);
+		page.getPageData();
+		page.deleteKeyAndLeftChild(it.next());
+		page.setParentId(new BTreePageId(pid.getTableId(), 7, BTreePageId.INTERNAL));
+
+		byte[] data = page.getPageData();
+		BTreeInternalPage copy = new BTreeInternalPage(pid, data, 0);
+		assertEquals(page.getParentId(), copy.getParentId());
+		assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+		Iterator<BTreeEntry> it0 = page.iterator();
+		Iterator<BTreeEntry> it1 = copy.iterator();
+		while (it0.hasNext()) {
+			BTreeEntry e0 = it0.next();
+			BTreeEntry e1 = it1.next();
+			assertEquals(e0.getKey(), e1.getKey());
+			assertEquals(e0.getLeftChild(), e1.getLeftChild());
+			assertEquals(e0.getRightChild(), e1.getRightChild());
+		}
+		assertFalse(it1.hasNext());
+
+		ByteBuffer buf = ByteBuffer.allocate(data.length + 3);
+		buf.position(3);
+		page.writePageData(buf);
+		assertArrayEquals(data, Arrays.copyOfRange(buf.array(), 3, buf.capacity()));
+	}
+
 	/**
 	 * JUnit suite target
 	 */
@@ -18,6 +18,7 @@ import HamburgerDB.systemtest.SystemTestUtil;
 
 //import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.junit.Before;
@@ -347,6 +348,62 @@ public class BTreeLeafPageTest extends SimpleDbTestBase {
 		}
 	}
 
+	/**
+	 * Unit test for BTreeLeafPage.getPageData() and writePageData() after the
+	 * page was modified between serializations
+	 */
+	@Test public void serializeAfterChanges() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+
+		Iterator<Tuple> it = page.iterator();
+		page.deleteTuple(it.next());
+		page.deleteTuple(it.next());
+		page.getPageData();
+		page.insertTuple(BTreeUtility.getBTreeTuple(new int[]{20000, 1}));
+		page.insertTuple(BTreeUtility.getBTreeTuple(new int[]{70000, 2}));
+		page.setRightSiblingId(new BTreePageId(pid.getTableId(), 5, BTreePageId.LEAF));
+
+		byte[] data = page.getPageData();
+		BTreeLeafPage copy = new BTreeLeafPage(pid, data, 0);
+		assertEquals(page.getRightSiblingId(), copy.getRightSiblingId());
+		assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+		Iterator<Tuple> it0 = page.iterator();
+		Iterator<Tuple> it1 = copy.iterator();
+		while (it0.hasNext()) {
+			assertEquals(it0.next(), it1.next());
+		}
+		assertFalse(it1.hasNext());
+
+		ByteBuffer buf = ByteBuffer.allocate(data.length + 3);
+		buf.position(3);
+		page.writePageData(buf);
+		assertEquals(buf.capacity(), buf.position());
+		assertArrayEquals(data, Arrays.copyOfRange(buf.array(), 3, buf.capacity()));
+	}
+
+	/**
+	 * Unit test for BTreeLeafPage.getBeforeImage() and setBeforeImage()
+	 */
+	@Test public void beforeImage() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		assertArrayEquals(EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.deleteTuple(page.iterator().next());
+		page.setRightSiblingId(new BTreePageId(pid.getTableId(), 5, BTreePageId.LEAF));
+		page.getPageData();
+		page.insertTuple(BTreeUtility.getBTreeTuple(new int[]{20000, 1}));
+		assertArrayEquals(EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.setBeforeImage();
+		byte[] committed = page.getPageData();
+		page.setParentId(new BTreePageId(pid.getTableId(), 3, BTreePageId.INTERNAL));
+		BTreeLeafPage before = page.getBeforeImage();
+		assertArrayEquals(committed, before.getPageData());
+		assertEquals(page.getNumTuples(), before.getNumTuples());
+		assertEquals(BTreePageId.ROOT_PTR, before.getParentId().pgcateg());
+	}
+
 	/**
 	 * JUnit suite target
 	 */
@@ -0,0 +1,152 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.execution.SeqScan;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferAccessStrategyTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = BufferPool.DEFAULT_PAGES;
+
+    private HeapFile hot;
+    private HeapFile big;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // 10 pages of hot data and a table more than twice the size of the pool
+        hot = SystemTestUtil.createRandomHeapFile(2, 10 * 504, null, null);
+        big = SystemTestUtil.createRandomHeapFile(2, 120 * 504, null, null);
+        assertTrue(big.numPages() > 2 * POOL_PAGES);
+    }
+
+    @After public void tearDown() {
+        BufferAccessStrategy.setBulkReadEnabled(true);
+    }
+
+    @Test public void forScan() {
+        Database.resetBufferPool(POOL_PAGES);
+        assertNull(BufferAccessStrategy.forScan(hot));
+        BufferAccessStrategy ring = BufferAccessStrategy.forScan(big);
+        assertNotNull(ring);
+        assertTrue(ring.getRingSize() <= POOL_PAGES / 4);
+        BufferAccessStrategy.setBulkReadEnabled(false);
+        assertNull(BufferAccessStrategy.forScan(big));
+    }
+
+    private void readHotPages(BufferPool pool, TransactionId tid) throws Exception {
+        for (int i = 0; i < hot.numPages(); i++) {
+            pool.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    private int scanBig(TransactionId tid) throws Exception {
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        return count;
+    }
+
+    /**
+     * A large scan through the ring leaves the hot pages resident; without
+     * the ring it pushes all of them out.
+     */
+    @Test public void scanKeepsHotPagesResident() throws Exception {
+        for (boolean ring : new boolean[]{true, false}) {
+            BufferAccessStrategy.setBulkReadEnabled(ring);
+            BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+            TransactionId tid = new TransactionId();
+            readHotPages(pool, tid);
+            assertEquals(120 * 504, scanBig(tid));
+            pool.resetStatistics();
+            readHotPages(pool, tid);
+            if (ring) {
+                assertEquals(0, pool.getMisses());
+            } else {
+                assertEquals(hot.numPages(), pool.getMisses());
+            }
+            pool.transactionComplete(tid);
+        }
+    }
+
+    /**
+     * Hit ratio of point lookups on the hot table while a large scan runs
+     * concurrently.
+     */
+    private double lookupHitRatio(boolean ring) throws Exception {
+        BufferAccessStrategy.setBulkReadEnabled(ring);
+        final BufferPool pool = Database.resetBufferPool(POOL_PAGES);
+        TransactionId warm = new TransactionId();
+        readHotPages(pool, warm);
+        pool.transactionComplete(warm);
+        pool.resetStatistics();
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+        List<Thread> lookups = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Thread lookup = new Thread(() -> {
+                TransactionId tid = new TransactionId();
+                Random random = new Random();
+                try {
+                    while (!done.get()) {
+                        HeapPageId pid = new HeapPageId(hot.getId(), random.nextInt(hot.numPages()));
+                        pool.getPage(tid, pid, Permissions.READ_ONLY);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    pool.transactionComplete(tid);
+                }
+            });
+            lookup.start();
+            lookups.add(lookup);
+        }
+        TransactionId tid = new TransactionId();
+        scanBig(tid);
+        done.set(true);
+        for (Thread lookup : lookups) {
+            lookup.join();
+        }
+        pool.transactionComplete(tid);
+        long hits = pool.getHits();
+        long total = hits + pool.getMisses();
+        double ratio = total == 0 ? 1.0 : (double) hits / total;
+        System.out.printf("point lookups %s ring: %d of %d hit (%.4f)%n",
+                ring ? "with" : "without", hits, total, ratio);
+        return ratio;
+    }
+
+    @Test public void concurrentLookupHitRatio() throws Exception {
+        double without = lookupHitRatio(false);
+        double with = lookupHitRatio(true);
+        assertEquals(1.0, with, 0.0);
+        assertTrue(with >= without);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferAccessStrategyTest.class);
+    }
+}
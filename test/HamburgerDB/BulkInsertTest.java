@@ -0,0 +1,137 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Utility;
+import HamburgerDB.execution.Insert;
+import HamburgerDB.index.BTreeUtility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BulkInsertTest extends SimpleDbTestBase {
+
+    private static List<Tuple> tuples(int n) {
+        List<Tuple> res = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            res.add(Utility.getHeapTuple(new int[]{i, -i}));
+        }
+        return res;
+    }
+
+    private static HeapFile emptyFile() throws Exception {
+        File f = new File(System.getProperty("java.io.tmpdir"), "bulk" + SystemTestUtil.getUUID() + ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        return Utility.createEmptyHeapFile(f.getPath(), 2);
+    }
+
+    /**
+     * A batch first fills the free slots of existing pages, then appends the
+     * new pages of an extent with one write, and returns each page once.
+     */
+    @Test public void fillsPagesInOrder() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 + 500, null, null);
+        Database.resetBufferPool(50);
+        PageStore store = hf.getPageStore();
+        long writes = store.getWrites();
+        TransactionId tid = new TransactionId();
+
+        List<Tuple> batch = tuples(4 + 504 * 3 + 1);
+        List<Page> pages = hf.insertTuples(tid, batch);
+        assertEquals(5, pages.size());
+        assertEquals(6, hf.numPages());
+        assertEquals(writes + 1, store.getWrites());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, pages.get(i).getId().getPageNumber());
+            assertEquals(tid, pages.get(i).isDirty());
+        }
+        assertEquals(0, ((HeapPage) pages.get(0)).getNumEmptySlots());
+        assertEquals(503, ((HeapPage) pages.get(4)).getNumEmptySlots());
+
+        Set<RecordId> rids = new HashSet<>();
+        for (Tuple t : batch) {
+            assertNotNull(t.getRecordId());
+            assertTrue(rids.add(t.getRecordId()));
+        }
+        assertEquals(1, batch.get(0).getRecordId().getPageId().getPageNumber());
+        assertEquals(5, batch.get(batch.size() - 1).getRecordId().getPageId().getPageNumber());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Files without a batched insert get one through the DbFile default.
+     */
+    @Test public void defaultInsertTuples() throws Exception {
+        DbFile f = BTreeUtility.createRandomBTreeFile(2, 0, null, null, 0);
+        Database.resetBufferPool(50);
+        TransactionId tid = new TransactionId();
+        List<Tuple> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(BTreeUtility.getBTreeTuple(new int[]{i, i}));
+        }
+        Database.getBufferPool().insertTuples(tid, f.getId(), batch);
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(10, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts the same tuples through the Insert operator and one at a time,
+     * and prints the time of each.
+     */
+    @Test public void insertOperator() throws Exception {
+        final int n = 504 * 40;
+        HeapFile batched = emptyFile();
+        HeapFile single = emptyFile();
+        Database.resetBufferPool(100);
+
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        Insert insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), tuples(n)), batched.getId());
+        insert.open();
+        assertEquals(n, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        long batchedTime = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(40, batched.numPages());
+
+        Database.resetBufferPool(100);
+        tid = new TransactionId();
+        start = System.nanoTime();
+        for (Tuple t : tuples(n)) {
+            Database.getBufferPool().insertTuple(tid, single.getId(), t);
+        }
+        long singleTime = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(40, single.numPages());
+
+        System.out.printf("insert of %d tuples: %.1f ms batched, %.1f ms one at a time%n",
+                n, batchedTime / 1e6, singleTime / 1e6);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkInsertTest.class);
+    }
+}
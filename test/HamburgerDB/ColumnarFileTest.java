@@ -0,0 +1,216 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Type;
+import HamburgerDB.execution.OpIterator;
+import HamburgerDB.execution.Predicate;
+import HamburgerDB.optimizer.LogicalPlan;
+import HamburgerDB.optimizer.TableStats;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ColumnarFileTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+            new String[]{"id", "city", "amount"});
+    private static final String[] CITIES = {"Berlin", "Hamburg", "Munich", "Cologne"};
+    private static final int ROWS = 20000;
+
+    private ColumnarFile table;
+
+    private static Tuple row(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(CITIES[(i / 7) % CITIES.length], Type.STRING_LEN));
+        t.setField(2, new IntField(1000 + (i * 37) % 500));
+        return t;
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = new File(System.getProperty("java.io.tmpdir"), "columnar" + SystemTestUtil.getUUID() + ".dat");
+        f.deleteOnExit();
+        table = new ColumnarFile(f, TD);
+        Database.getCatalog().addTable(table, "sales");
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(row(i));
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(100);
+    }
+
+    private static ColumnPage intPage(List<Integer> values) throws Exception {
+        ColumnPageId pid = new ColumnPageId(0, 0);
+        ColumnPage page = new ColumnPage(pid, ColumnPage.createEmptyPageData(0, Type.INT_TYPE, 0, true));
+        for (int v : values) {
+            assertTrue(page.append(new IntField(v)));
+        }
+        ColumnPage read = new ColumnPage(pid, page.getPageData());
+        assertEquals(values.size(), read.getNumValues());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(new IntField(values.get(i)), read.getValue(i));
+        }
+        return read;
+    }
+
+    /**
+     * Each page is written in the encoding that suits its values, and reads
+     * back the same values.
+     */
+    @Test public void encodings() throws Exception {
+        List<Integer> runs = new ArrayList<>();
+        List<Integer> few = new ArrayList<>();
+        List<Integer> narrow = new ArrayList<>();
+        Random r = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            runs.add(i / 50 * 100000000);
+            few.add(1 << (i % 3 * 15));
+            narrow.add(1 + r.nextInt(2000));
+        }
+        assertEquals(ColumnEncoding.RUN_LENGTH, intPage(runs).getEncoding());
+        assertEquals(ColumnEncoding.DICTIONARY, intPage(few).getEncoding());
+        assertEquals(ColumnEncoding.BIT_PACKED, intPage(narrow).getEncoding());
+
+        ColumnPageId pid = new ColumnPageId(0, 0);
+        ColumnPage strings = new ColumnPage(pid, ColumnPage.createEmptyPageData(1, Type.STRING_TYPE, 0, true));
+        for (int i = 0; i < 50; i++) {
+            assertTrue(strings.append(new StringField("s" + r.nextInt(), Type.STRING_LEN)));
+        }
+        assertEquals(ColumnEncoding.PLAIN, strings.getEncoding());
+        ColumnPage readStrings = new ColumnPage(pid, strings.getPageData());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(strings.getValue(i), readStrings.getValue(i));
+        }
+        // 页满时追加失败，页不变
+        int n = strings.getNumValues();
+        while (strings.append(new StringField("t" + r.nextInt() + String.join("", Collections.nCopies(100, "x")),
+                Type.STRING_LEN))) {
+            n++;
+        }
+        assertEquals(n, strings.getNumValues());
+        assertEquals(n, new ColumnPage(pid, strings.getPageData()).getNumValues());
+    }
+
+    /**
+     * All rows come back in insertion order, and the columns compress well
+     * enough that the table needs far fewer pages than a heap file.
+     */
+    @Test public void scanAllColumns() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int i = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(row(i).toString(), t.toString());
+            i++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, i);
+        int heapPages = ROWS / (BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1));
+        assertTrue(table.numPages() * 10 < heapPages);
+    }
+
+    /**
+     * A scan of one column reads only the pages of that column.
+     */
+    @Test public void scanOneColumn() throws Exception {
+        PageStore store = table.getPageStore();
+        store.resetStatistics();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid, null, new int[]{1});
+        it.open();
+        int[] counts = new int[CITIES.length];
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull(t.getField(0));
+            assertNull(t.getField(2));
+            String city = ((StringField) t.getField(1)).getValue();
+            for (int c = 0; c < CITIES.length; c++) {
+                if (CITIES[c].equals(city)) {
+                    counts[c]++;
+                }
+            }
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, n);
+        assertEquals(ROWS, counts[0] + counts[1] + counts[2] + counts[3]);
+        assertTrue(store.getReads() < table.numPages());
+        assertTrue(store.getReads() > 0);
+    }
+
+    /**
+     * A query plan only reads the columns the query refers to, and a
+     * columnar table can be declared in a catalog file.
+     */
+    @Test public void planReadsUsedColumns() throws Exception {
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("sales", new TableStats(table.getId(), 1000));
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "s");
+        lp.addFilter("s.id", Predicate.Op.LESS_THAN, "70");
+        lp.addProjectField("s.city", null);
+        TransactionId tid = new TransactionId();
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        Database.resetBufferPool(100);
+        table.getPageStore().resetStatistics();
+        plan.open();
+        Set<String> cities = new HashSet<>();
+        int n = 0;
+        while (plan.hasNext()) {
+            cities.add(((StringField) plan.next().getField(0)).getValue());
+            n++;
+        }
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(70, n);
+        assertEquals(CITIES.length, cities.size());
+        assertTrue(table.getPageStore().getReads() < table.numPages());
+
+        File dir = new File(System.getProperty("java.io.tmpdir"), "columnar" + SystemTestUtil.getUUID());
+        assertTrue(dir.mkdir());
+        File schema = new File(dir, "catalog.txt");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write("facts (a int, b string) columnar\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        assertTrue(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("facts")) instanceof ColumnarFile);
+        schema.delete();
+        dir.delete();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnarFileTest.class);
+    }
+}
@@ -0,0 +1,162 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Utility;
+import HamburgerDB.execution.IndexPredicate;
+import HamburgerDB.execution.Predicate;
+import HamburgerDB.index.BTreeFile;
+import HamburgerDB.index.BTreeUtility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class CompressedPageStoreTest extends SimpleDbTestBase {
+
+    private static File tempFile(String prefix) {
+        File f = new File(System.getProperty("java.io.tmpdir"), prefix + SystemTestUtil.getUUID() + ".dat");
+        f.deleteOnExit();
+        CompressedPageStore.indexFile(f).deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        return f;
+    }
+
+    private static byte[] block(int len, int seed) {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++) {
+            data[i] = (byte) ((i / 16) * seed);
+        }
+        return data;
+    }
+
+    /**
+     * Blocks read back as written, before and after reopening the store, and
+     * a block that grows moves to the end of the data file.
+     */
+    @Test public void roundTrip() throws Exception {
+        File f = tempFile("compressed");
+        CompressedPageStore store = new CompressedPageStore(f);
+        byte[] a = block(4096, 3);
+        byte[] b = block(4096, 5);
+        store.write(0, a);
+        store.write(4096, b);
+        assertEquals(8192, store.size());
+        assertTrue(f.length() < 4096);
+        assertArrayEquals(a, store.read(0, 4096));
+        assertArrayEquals(b, store.read(4096, 4096));
+        assertNull(store.read(8192, 4096));
+
+        // 随机数据压缩不了，原样存放并移到文件末尾
+        byte[] noise = new byte[4096];
+        new Random(1).nextBytes(noise);
+        long garbage = store.getGarbageBytes();
+        store.write(0, noise);
+        assertTrue(store.getGarbageBytes() > garbage);
+        assertArrayEquals(noise, store.read(0, 4096));
+        assertEquals(8192, store.append(a));
+        store.close();
+
+        CompressedPageStore reopened = new CompressedPageStore(f);
+        assertEquals(3 * 4096, reopened.size());
+        assertArrayEquals(noise, reopened.read(0, 4096));
+        assertArrayEquals(b, reopened.read(4096, 4096));
+        assertArrayEquals(a, reopened.read(8192, 4096));
+        assertEquals(store.getStoredBytes(), reopened.getStoredBytes());
+        assertNull(reopened.map());
+        reopened.close();
+    }
+
+    /**
+     * A compressed heap file is smaller on disk, reads fewer bytes to scan
+     * and returns the same tuples after it is reopened.
+     */
+    @Test public void heapFile() throws Exception {
+        File f = tempFile("compressedheap");
+        assertTrue(f.createNewFile());
+        TupleDesc td = Utility.getTupleDesc(2);
+        HeapFile hf = new HeapFile(f, td, true);
+        assertTrue(hf.isCompressed());
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{i, i % 10}));
+        }
+        hf.insertTuples(tid, tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        int pages = hf.numPages();
+        assertEquals(10, pages);
+        CompressedPageStore store = (CompressedPageStore) hf.getPageStore();
+        assertTrue(store.getCompressionRatio() > 2);
+        assertTrue(f.length() < (long) pages * BufferPool.getPageSize() / 2);
+
+        HeapFile reopened = new HeapFile(f, td, true);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Database.resetBufferPool(50);
+        assertEquals(pages, reopened.numPages());
+        tid = new TransactionId();
+        DbFileIterator it = reopened.iterator(tid);
+        it.open();
+        int[] counts = new int[10];
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            counts[((IntField) t.getField(1)).getValue()]++;
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(5000, n);
+        int[] expected = new int[10];
+        Arrays.fill(expected, 500);
+        assertArrayEquals(expected, counts);
+        assertTrue(reopened.getPageStore().getBytesRead() < (long) pages * BufferPool.getPageSize() / 2);
+    }
+
+    /**
+     * A compressed B+ tree file finds keys after its pages went through
+     * disk.
+     */
+    @Test public void btreeFile() throws Exception {
+        File f = tempFile("compressedbtree");
+        TupleDesc td = Utility.getTupleDesc(2);
+        BTreeFile bf = new BTreeFile(f, 0, td, true);
+        assertTrue(bf.isCompressed());
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++) {
+            Database.getBufferPool().insertTuple(tid, bf.getId(), BTreeUtility.getBTreeTuple(new int[]{i, 7}));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(50);
+        assertTrue(bf.numPages() > 4);
+        assertTrue(f.length() < (long) bf.numPages() * BufferPool.getPageSize());
+
+        tid = new TransactionId();
+        DbFileIterator it = bf.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(1234)));
+        it.open();
+        assertTrue(it.hasNext());
+        assertEquals(1234, ((IntField) it.next().getField(0)).getValue());
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedPageStoreTest.class);
+    }
+}
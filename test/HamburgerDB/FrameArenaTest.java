@@ -0,0 +1,146 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Utility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FrameArenaTest extends SimpleDbTestBase {
+
+    @After public void tearDown() {
+        BufferPool.setFrameArenaEnabled(true);
+    }
+
+    @Test public void allocateAndRelease() {
+        FrameArena arena = new FrameArena(FrameArena.CHUNK_FRAMES + 2, 64);
+        assertEquals(0, arena.getReservedBytes());
+        List<ByteBuffer> frames = new ArrayList<>();
+        ByteBuffer f;
+        while ((f = arena.allocate()) != null) {
+            assertTrue(f.isDirect());
+            assertEquals(64, f.capacity());
+            frames.add(f);
+        }
+        assertEquals(FrameArena.CHUNK_FRAMES + 2, frames.size());
+        assertEquals(frames.size(), arena.getFramesInUse());
+        assertEquals(64L * frames.size(), arena.getReservedBytes());
+
+        // frames do not overlap
+        for (int i = 0; i < frames.size(); i++) {
+            frames.get(i).putInt(0, i);
+        }
+        for (int i = 0; i < frames.size(); i++) {
+            assertEquals(i, frames.get(i).getInt(0));
+        }
+
+        arena.release(frames.get(0));
+        assertEquals(frames.size() - 1, arena.getFramesInUse());
+        assertSame(frames.get(0), arena.allocate());
+    }
+
+    /**
+     * Cached heap pages live in frames of the pool's arena and leave their
+     * frame, with their content intact, when they are evicted.
+     */
+    @Test public void cachedPagesLiveInFrames() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 6, null, null);
+        BufferPool pool = Database.resetBufferPool(4);
+        FrameArena arena = pool.getFrameArena();
+        assertNotNull(arena);
+        assertEquals(4, arena.getCapacity());
+
+        TransactionId tid = new TransactionId();
+        HeapPage first = (HeapPage) pool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        assertTrue(first.isInFrame());
+        List<Tuple> before = new ArrayList<>();
+        first.iterator().forEachRemaining(before::add);
+
+        for (int i = 1; i < 6; i++) {
+            pool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+            assertTrue(arena.getFramesInUse() <= 4);
+        }
+        // page 0 was evicted, but whoever still holds it can read it
+        assertNull(pool.peekPage(first.getId()));
+        assertFalse(first.isInFrame());
+        Iterator<Tuple> it = first.iterator();
+        for (Tuple t : before) {
+            assertEquals(t, it.next());
+        }
+        assertFalse(it.hasNext());
+        pool.transactionComplete(tid);
+    }
+
+    /**
+     * Inserts and deletes on a page in a frame update its bytes in place.
+     */
+    @Test public void modifyPageInFrame() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool pool = Database.resetBufferPool(4);
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) pool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_WRITE);
+        assertTrue(page.isInFrame());
+        int empty = page.getNumEmptySlots();
+
+        Tuple t = Utility.getHeapTuple(new int[]{42, 43});
+        page.insertTuple(t);
+        assertEquals(empty - 1, page.getNumEmptySlots());
+        assertEquals(t, page.getTuple(t.getRecordId().getTupleNumber()));
+        page.deleteTuple(page.iterator().next());
+        assertEquals(empty, page.getNumEmptySlots());
+
+        HeapPage copy = new HeapPage(page.getId(), page.getPageData());
+        assertFalse(copy.isInFrame());
+        assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+        pool.transactionComplete(tid, false);
+    }
+
+    /**
+     * Prints the heap retained by a full pool with and without the arena.
+     */
+    @Test public void heapFootprint() throws Exception {
+        final int pages = 500;
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * pages, null, null);
+        long[] used = new long[2];
+        for (int mode = 0; mode < 2; mode++) {
+            BufferPool.setFrameArenaEnabled(mode == 1);
+            Database.resetBufferPool(pages);
+            System.gc();
+            long start = usedHeap();
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < pages; i++) {
+                Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+            }
+            used[mode] = usedHeap() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        System.out.printf("heap retained by %d cached pages: %d KB on the heap, %d KB with the arena%n",
+                pages, used[0] / 1024, used[1] / 1024);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FrameArenaTest.class);
+    }
+}
@@ -0,0 +1,127 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Utility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    @Test public void categories() {
+        assertEquals(0, FreeSpaceMap.category(0, 504));
+        assertEquals(1, FreeSpaceMap.category(1, 504));
+        assertEquals(FreeSpaceMap.CATEGORIES - 1, FreeSpaceMap.category(504, 504));
+        assertTrue(FreeSpaceMap.category(100, 504) < FreeSpaceMap.category(400, 504));
+    }
+
+    @Test public void findPage() throws Exception {
+        File f = File.createTempFile("fsm", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap map = new FreeSpaceMap(f);
+        // 未知的页也是候选
+        assertEquals(0, map.findPage(3));
+        map.update(0, 0, 10);
+        map.update(1, 0, 10);
+        assertEquals(2, map.findPage(3));
+        map.update(2, 0, 10);
+        assertEquals(-1, map.findPage(3));
+
+        // 有空间的页优先于未知的页，空间少的优先于空间多的
+        map.update(1, 10, 10);
+        assertEquals(1, map.findPage(5));
+        map.update(2, 1, 10);
+        assertEquals(2, map.findPage(5));
+        map.update(1, 0, 10);
+        map.update(2, 0, 10);
+        assertEquals(3, map.findPage(5));
+        assertEquals(-1, map.getCategory(3));
+
+        // 只写出改变过的部分，重新读取后内容不变
+        map.flush();
+        map.close();
+        FreeSpaceMap reread = new FreeSpaceMap(f);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, reread.getCategory(i));
+        }
+        assertEquals(-1, reread.getCategory(3));
+        assertEquals(3, reread.findPage(5));
+        reread.close();
+        new File(f.getPath() + ".fsm").delete();
+    }
+
+    /**
+     * Once the file is full, inserts append pages without trying the full
+     * pages again, and a delete makes its page the target of the next insert.
+     */
+    @Test public void insertsUseMap() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 4, null, null);
+        Database.resetBufferPool(50);
+        PageStore store = hf.getPageStore();
+        TransactionId tid = new TransactionId();
+
+        // 第一次插入要逐页确认前四页已满
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{1, 2}));
+        assertEquals(5, hf.numPages());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, hf.getFreeSpaceMap().getCategory(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(50);
+        long reads = store.getReads();
+        tid = new TransactionId();
+        for (int i = 0; i < 10; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{i, i}));
+        }
+        assertEquals(5, hf.numPages());
+        // 只读了第4页
+        assertEquals(reads + 1, store.getReads());
+
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), 2), Permissions.READ_ONLY);
+        Tuple victim = page.iterator().next();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        assertEquals(1, hf.getFreeSpaceMap().getCategory(2));
+        Tuple t = Utility.getHeapTuple(new int[]{7, 7});
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(2, t.getRecordId().getPageId().getPageNumber());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The map is written with the pages and read back by a new HeapFile on
+     * the same file.
+     */
+    @Test public void persistedWithFile() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        Database.resetBufferPool(50);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{1, 2}));
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(new File(hf.getFile().getPath() + ".fsm").exists());
+
+        HeapFile reopened = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, reopened.getFreeSpaceMap().getCategory(i));
+        }
+        assertEquals(FreeSpaceMap.CATEGORIES - 1, reopened.getFreeSpaceMap().getCategory(3));
+        assertEquals(3, reopened.getFreeSpaceMap().findPage(reopened.numPages()));
+        new File(hf.getFile().getPath() + ".fsm").delete();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
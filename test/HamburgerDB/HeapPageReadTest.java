@@ -15,6 +15,7 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -123,6 +124,50 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getField()
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int i = 0; i < EXAMPLE_VALUES.length; i++) {
+            assertEquals(EXAMPLE_VALUES[i][1], ((IntField) page.getField(i, 1)).getValue());
+            assertEquals(EXAMPLE_VALUES[i][0], ((IntField) page.getField(i, 0)).getValue());
+        }
+        assertNull(page.getField(EXAMPLE_VALUES.length, 0));
+    }
+
+    /**
+     * The iterator skips tuples deleted after it was created and does not
+     * return tuples inserted after it was created.
+     */
+    @Test public void iteratorWhileModified() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+        assertEquals(EXAMPLE_VALUES[0][0], ((IntField) first.getField(0)).getValue());
+        page.insertTuple(Utility.getHeapTuple(new int[]{7, 7}));
+        page.deleteTuple(page.getTuple(1));
+
+        int row = 2;
+        while (it.hasNext()) {
+            Tuple tup = it.next();
+            assertEquals(row, tup.getRecordId().getTupleNumber());
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) tup.getField(0)).getValue());
+            row++;
+        }
+        assertEquals(EXAMPLE_VALUES.length, row);
+    }
+
+    /**
+     * Tuples keep their values after their slot is emptied.
+     */
+    @Test public void tupleOutlivesSlot() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Tuple t = page.getTuple(3);
+        page.deleteTuple(page.getTuple(3));
+        assertEquals(EXAMPLE_VALUES[3][1], ((IntField) t.getField(1)).getValue());
+    }
+
     /**
      * JUnit suite target
      */
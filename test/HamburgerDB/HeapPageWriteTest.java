@@ -1,7 +1,9 @@
 package HamburgerDB;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -131,6 +133,57 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage() and setBeforeImage(): the
+     * before image is the content as of the last setBeforeImage(), no matter
+     * how often the page is modified after it
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        page.insertTuple(Utility.getHeapTuple(new int[]{1, 2}));
+        HeapPage before = page.getBeforeImage();
+        page.deleteTuple(page.iterator().next());
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, before.getPageData());
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        byte[] committed = page.getPageData();
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+        page.insertTuple(Utility.getHeapTuple(new int[]{3, 4}));
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+        assertEquals(page.getNumEmptySlots() + 1, page.getBeforeImage().getNumEmptySlots());
+    }
+
+    /**
+     * Writing to a page that shares a read-only buffer copies the bytes
+     * first, while readers of the page keep going, and leaves the buffer as
+     * it was.
+     */
+    @Test public void copyOnWriteWithReaders() throws Exception {
+        byte[] bytes = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        int free = page.getNumEmptySlots();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                page.isSlotUsed(0);
+                page.getNumEmptySlots();
+            }
+        });
+        reader.start();
+        try {
+            page.insertTuple(Utility.getHeapTuple(new int[]{1, 2}));
+            page.deleteTuple(page.iterator().next());
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+        assertEquals(free, page.getNumEmptySlots());
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, bytes);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,112 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Utility;
+import HamburgerDB.storage.BufferPool;
+import HamburgerDB.storage.HeapPageId;
+import HamburgerDB.storage.PageId;
+import HamburgerDB.transaction.TransactionAbortedException;
+import HamburgerDB.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+/**
+ * Many transactions lock the same few pages in random order, like the
+ * transactions of {@link DeadlockTest} but many times over, so that they
+ * deadlock often.
+ */
+public class LockContentionTest extends TestUtil.CreateHeapFile {
+
+    private static final int THREADS = 8;
+    private static final int COMMITS_PER_THREAD = 200;
+    private static final int LOCKS_PER_TRANSACTION = 3;
+
+    private BufferPool bp;
+    private final List<PageId> pages = new ArrayList<>();
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1025; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(3, empty.numPages());
+        for (int i = 0; i < empty.numPages(); i++) {
+            PageId pid = new HeapPageId(empty.getId(), i);
+            pages.add(pid);
+            bp.getPage(tid, pid, Permissions.READ_WRITE).markDirty(true, tid);
+        }
+        bp.flushAllPages();
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * Every transaction eventually commits, and only deadlock victims abort:
+     * no transaction is aborted because it merely waited.
+     */
+    @Test public void onlyDeadlockVictimsAbort() throws Exception {
+        AtomicInteger commits = new AtomicInteger();
+        AtomicInteger aborts = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(() -> {
+                Random rand = new Random();
+                try {
+                    while (commits.get() < THREADS * COMMITS_PER_THREAD) {
+                        TransactionId tid = new TransactionId();
+                        try {
+                            for (int j = 0; j < LOCKS_PER_TRANSACTION; j++) {
+                                PageId pid = pages.get(rand.nextInt(pages.size()));
+                                Permissions perm = rand.nextBoolean() ? Permissions.READ_ONLY : Permissions.READ_WRITE;
+                                bp.getPage(tid, pid, perm);
+                            }
+                            bp.transactionComplete(tid);
+                            commits.incrementAndGet();
+                        } catch (TransactionAbortedException e) {
+                            bp.transactionComplete(tid, false);
+                            aborts.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join(60000);
+            assertFalse("transactions still running after a minute", t.isAlive());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertNull(error.get());
+
+        long deadlocks = bp.getLockManager().getDeadlocks();
+        System.out.printf("%d threads on %d pages: %d commits, %d aborts (%.1f%%), %.0f commits/s%n",
+                THREADS, pages.size(), commits.get(), aborts.get(),
+                100.0 * aborts.get() / (commits.get() + aborts.get()), commits.get() / seconds);
+        assertTrue(commits.get() >= THREADS * COMMITS_PER_THREAD);
+        assertEquals(deadlocks, aborts.get());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockContentionTest.class);
+    }
+}
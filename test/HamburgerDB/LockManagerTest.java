@@ -0,0 +1,390 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Permissions;
+import HamburgerDB.storage.HeapPageId;
+import HamburgerDB.storage.PageId;
+import HamburgerDB.transaction.LockManager;
+import HamburgerDB.transaction.LockManager.VictimRule;
+import HamburgerDB.transaction.LockMode;
+import HamburgerDB.transaction.TransactionAbortedException;
+import HamburgerDB.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LockManagerTest {
+
+    private static final long WAIT = 5000;
+
+    private LockManager lm;
+    private PageId p0;
+
+    @Before public void setUp() {
+        lm = new LockManager();
+        p0 = new HeapPageId(1, 0);
+    }
+
+    /**
+     * Start a thread that asks for a lock and records the tid once granted.
+     */
+    private Thread request(TransactionId tid, PageId pid, Permissions perm, List<TransactionId> granted) {
+        return request(tid, pid, perm, granted, null);
+    }
+
+    /**
+     * Same, also recording the tid in aborted if it is chosen as a deadlock
+     * victim.
+     */
+    private Thread request(TransactionId tid, PageId pid, Permissions perm, List<TransactionId> granted,
+                           List<TransactionId> aborted) {
+        Thread t = new Thread(() -> {
+            try {
+                if (lm.acquireLock(tid, pid, perm, WAIT)) {
+                    granted.add(tid);
+                }
+            } catch (TransactionAbortedException e) {
+                aborted.add(tid);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private void awaitQueue(PageId pid, int n) throws InterruptedException {
+        long end = System.currentTimeMillis() + WAIT;
+        while (lm.getQueueLength(pid) != n && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(n, lm.getQueueLength(pid));
+    }
+
+    /**
+     * Pages with the same number in different tables are different locks.
+     */
+    @Test public void samePageNumberOtherTable() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        PageId other = new HeapPageId(2, 0);
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE, 0));
+        assertTrue(lm.acquireLock(t2, other, Permissions.READ_WRITE, 0));
+        assertTrue(lm.holdsLock(t1, p0));
+        assertFalse(lm.holdsLock(t1, other));
+        assertFalse(lm.holdsLock(t2, new HeapPageId(3, 0)));
+    }
+
+    /**
+     * The lock set of a transaction follows its grants and releases, and
+     * releasing all its locks leaves the locks of others alone.
+     */
+    @Test public void lockSets() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        Set<PageId> pages = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            PageId pid = new HeapPageId(1, i);
+            pages.add(pid);
+            assertTrue(lm.acquireLock(t1, pid, Permissions.READ_ONLY, 0));
+            assertTrue(lm.acquireLock(t2, pid, Permissions.READ_ONLY, 0));
+        }
+        assertTrue(lm.acquireLock(t2, new HeapPageId(2, 0), Permissions.READ_WRITE, 0));
+        assertEquals(pages, lm.getLockedPages(t1));
+        lm.releaseLock(t1, p0);
+        assertFalse(lm.holdsLock(t1, p0));
+        assertTrue(lm.holdsLock(t2, p0));
+        assertEquals(9, lm.getLockedPages(t1).size());
+
+        lm.releaseAllLock(t1);
+        assertTrue(lm.getLockedPages(t1).isEmpty());
+        assertEquals(11, lm.getLockedPages(t2).size());
+        // t1的锁都释放了，t2可以升级
+        for (PageId pid : pages) {
+            assertTrue(lm.acquireLock(t2, pid, Permissions.READ_WRITE, 0));
+        }
+        lm.releaseAllLock(t2);
+        assertFalse(lm.holdsLock(t2, p0));
+        assertEquals(0, lm.getQueueLength(p0));
+    }
+
+    /**
+     * The modes combine into the weakest mode allowing both, and intention
+     * modes conflict only with the table modes they would see through.
+     */
+    @Test public void lockModes() {
+        assertEquals(LockMode.SIX, LockMode.S.combine(LockMode.IX));
+        assertEquals(LockMode.IX, LockMode.IS.combine(LockMode.IX));
+        assertEquals(LockMode.X, LockMode.SIX.combine(LockMode.X));
+        assertTrue(LockMode.SIX.covers(LockMode.S));
+        assertFalse(LockMode.S.covers(LockMode.IX));
+        assertTrue(LockMode.IX.compatibleWith(LockMode.IS));
+        assertFalse(LockMode.IX.compatibleWith(LockMode.S));
+        assertTrue(LockMode.SIX.compatibleWith(LockMode.IS));
+        assertFalse(LockMode.SIX.compatibleWith(LockMode.SIX));
+        assertFalse(LockMode.X.compatibleWith(LockMode.IS));
+        assertEquals(LockMode.IS, LockMode.of(Permissions.READ_ONLY).intention());
+        assertEquals(LockMode.IX, LockMode.of(Permissions.READ_WRITE).intention());
+    }
+
+    /**
+     * A table lock covers the pages of the table without page locks, and
+     * conflicts with the intention locks of page lockers.
+     */
+    @Test public void tableLocks() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        PageId p1 = new HeapPageId(1, 1);
+        assertTrue(lm.acquireTableLock(t1, 1, Permissions.READ_ONLY, 0));
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY, 0));
+        assertTrue(lm.getLockedPages(t1).isEmpty());
+        assertTrue(lm.holdsLock(t1, p1));
+
+        // 读锁兼容，写锁要等表锁
+        assertTrue(lm.acquireLock(t2, p1, Permissions.READ_ONLY, 0));
+        assertEquals(LockMode.IS, lm.getTableLockMode(t2, 1));
+        assertFalse(lm.acquireLock(t2, p1, Permissions.READ_WRITE, 10));
+        assertTrue(lm.acquireLock(t2, new HeapPageId(2, 1), Permissions.READ_WRITE, 0));
+
+        lm.releaseAllLock(t2);
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE, 0));
+        assertEquals(LockMode.SIX, lm.getTableLockMode(t1, 1));
+        assertEquals(Collections.singleton(p0), lm.getLockedPages(t1));
+        assertTrue(lm.acquireLock(t2, p1, Permissions.READ_ONLY, 0));
+        assertFalse(lm.acquireLock(t2, p1, Permissions.READ_WRITE, 10));
+        assertFalse(lm.acquireTableLock(t2, 1, Permissions.READ_ONLY, 10));
+        lm.releaseAllLock(t1);
+        assertTrue(lm.acquireTableLock(t2, 1, Permissions.READ_WRITE, 0));
+    }
+
+    /**
+     * Past the threshold the page locks of a table become one table lock, X
+     * if any was X; a conflicting lock on the table makes the escalation
+     * fail without waiting, and it is tried again a threshold later.
+     */
+    @Test public void escalation() throws Exception {
+        lm.setEscalationThreshold(3);
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        PageId other = new HeapPageId(2, 0);
+        assertTrue(lm.acquireLock(t1, other, Permissions.READ_ONLY, 0));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), i == 1 ? Permissions.READ_WRITE : Permissions.READ_ONLY, 0));
+        }
+        assertEquals(LockMode.IX, lm.getTableLockMode(t1, 1));
+        assertTrue(lm.acquireLock(t1, new HeapPageId(1, 3), Permissions.READ_ONLY, 0));
+        assertEquals(1, lm.getEscalations());
+        assertEquals(LockMode.X, lm.getTableLockMode(t1, 1));
+        assertEquals(Collections.singleton(other), lm.getLockedPages(t1));
+        assertTrue(lm.holdsLock(t1, new HeapPageId(1, 7)));
+        assertFalse(lm.acquireLock(t2, p0, Permissions.READ_ONLY, 10));
+        lm.releaseAllLock(t1);
+
+        // t1读表1的页时t2持有IX，升级不等待，直接放弃
+        assertTrue(lm.acquireLock(t2, new HeapPageId(1, 9), Permissions.READ_WRITE, 0));
+        for (int i = 0; i < 7; i++) {
+            assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_ONLY, 0));
+        }
+        assertEquals(2, lm.getFailedEscalations());
+        assertEquals(LockMode.IS, lm.getTableLockMode(t1, 1));
+        assertEquals(7, lm.getLockedPages(t1).size());
+        lm.releaseAllLock(t2);
+        for (int i = 7; i < 10; i++) {
+            assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_ONLY, 0));
+        }
+        assertEquals(2, lm.getEscalations());
+        assertEquals(LockMode.S, lm.getTableLockMode(t1, 1));
+        assertTrue(lm.getLockedPages(t1).isEmpty());
+    }
+
+    /**
+     * Shared locks are granted together, an exclusive lock waits for them,
+     * and the lock of a sole reader is upgraded at once.
+     */
+    @Test public void sharedAndExclusive() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY, 0));
+        assertTrue(lm.acquireLock(t2, p0, Permissions.READ_ONLY, 0));
+        assertFalse(lm.acquireLock(t2, p0, Permissions.READ_WRITE, 10));
+        assertEquals(0, lm.getQueueLength(p0));
+        lm.releaseLock(t1, p0);
+        assertTrue(lm.acquireLock(t2, p0, Permissions.READ_WRITE, 0));
+        assertFalse(lm.acquireLock(t1, p0, Permissions.READ_ONLY, 10));
+        assertTrue(lm.acquireLock(t2, p0, Permissions.READ_ONLY, 0));
+    }
+
+    /**
+     * A waiter is woken up and granted the lock when the holder releases it.
+     */
+    @Test public void waiterGrantedOnRelease() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE, 0));
+        Thread t = request(t2, p0, Permissions.READ_ONLY, granted);
+        awaitQueue(p0, 1);
+        assertTrue(granted.isEmpty());
+        lm.releaseAllLock(t1);
+        t.join(WAIT);
+        assertEquals(Collections.singletonList(t2), granted);
+        assertTrue(lm.holdsLock(t2, p0));
+    }
+
+    /**
+     * Waiters are granted in the order they asked, and a shared request does
+     * not overtake an exclusive one that waits before it.
+     */
+    @Test public void fifoOrder() throws Exception {
+        TransactionId holder = new TransactionId();
+        assertTrue(lm.acquireLock(holder, p0, Permissions.READ_ONLY, 0));
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        List<TransactionId> order = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            TransactionId tid = new TransactionId();
+            order.add(tid);
+            threads.add(request(tid, p0, Permissions.READ_WRITE, granted));
+            awaitQueue(p0, i + 1);
+        }
+        // 队列不空时，读锁也要排队
+        TransactionId reader = new TransactionId();
+        assertFalse(lm.acquireLock(reader, p0, Permissions.READ_ONLY, 10));
+        lm.releaseLock(holder, p0);
+        for (int i = 0; i < order.size(); i++) {
+            long end = System.currentTimeMillis() + WAIT;
+            while (granted.size() <= i && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            assertEquals(order.subList(0, i + 1), granted);
+            lm.releaseLock(order.get(i), p0);
+        }
+        for (Thread t : threads) {
+            t.join(WAIT);
+        }
+    }
+
+    /**
+     * A request that times out leaves the queue, so those behind it are not
+     * held up by it.
+     */
+    @Test public void timeoutLeavesQueue() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        TransactionId t3 = new TransactionId();
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY, 0));
+        CountDownLatch queued = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            queued.countDown();
+            try {
+                assertFalse(lm.acquireLock(t2, p0, Permissions.READ_WRITE, 200));
+            } catch (TransactionAbortedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        assertTrue(queued.await(WAIT, TimeUnit.MILLISECONDS));
+        awaitQueue(p0, 1);
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = request(t3, p0, Permissions.READ_ONLY, granted);
+        awaitQueue(p0, 2);
+        writer.join(WAIT);
+        reader.join(WAIT);
+        assertEquals(Collections.singletonList(t3), granted);
+        assertFalse(lm.holdsLock(t2, p0));
+        assertEquals(0, lm.getQueueLength(p0));
+    }
+
+    /**
+     * Two transactions that wait for each other: the request closing the
+     * cycle aborts the youngest one at once, and the other one gets its lock
+     * when the victim releases its locks.
+     */
+    @Test public void deadlockAbortsYoungest() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        PageId p1 = new HeapPageId(1, 1);
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE, 0));
+        assertTrue(lm.acquireLock(t2, p1, Permissions.READ_WRITE, 0));
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        List<TransactionId> aborted = Collections.synchronizedList(new ArrayList<>());
+        Thread w2 = request(t2, p0, Permissions.READ_WRITE, granted, aborted);
+        awaitQueue(p0, 1);
+        assertEquals(Collections.singleton(t1), lm.getWaitsFor(t2));
+        long start = System.currentTimeMillis();
+        Thread w1 = request(t1, p1, Permissions.READ_WRITE, granted, aborted);
+        w2.join(WAIT);
+        // 不等超时就中止
+        assertTrue(System.currentTimeMillis() - start < WAIT);
+        assertEquals(Collections.singletonList(t2), aborted);
+        assertEquals(1, lm.getDeadlocks());
+        assertEquals(0, lm.getQueueLength(p0));
+        assertTrue(lm.getWaitsFor(t2).isEmpty());
+        assertEquals(Collections.singleton(t2), lm.getWaitsFor(t1));
+
+        lm.releaseAllLock(t2);
+        w1.join(WAIT);
+        assertEquals(Collections.singletonList(t1), granted);
+        assertTrue(lm.getWaitsFor(t1).isEmpty());
+    }
+
+    /**
+     * Two readers that both upgrade deadlock, and the younger one is aborted.
+     */
+    @Test public void upgradeDeadlock() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY, 0));
+        assertTrue(lm.acquireLock(t2, p0, Permissions.READ_ONLY, 0));
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        List<TransactionId> aborted = Collections.synchronizedList(new ArrayList<>());
+        Thread w1 = request(t1, p0, Permissions.READ_WRITE, granted, aborted);
+        awaitQueue(p0, 1);
+        Thread w2 = request(t2, p0, Permissions.READ_WRITE, granted, aborted);
+        w2.join(WAIT);
+        assertEquals(Collections.singletonList(t2), aborted);
+        lm.releaseAllLock(t2);
+        w1.join(WAIT);
+        assertEquals(Collections.singletonList(t1), granted);
+    }
+
+    /**
+     * With the least work rule, the transaction holding fewer locks is the
+     * victim even if it is older.
+     */
+    @Test public void leastWorkVictim() throws Exception {
+        lm = new LockManager(VictimRule.LEAST_WORK);
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        PageId p1 = new HeapPageId(1, 1);
+        assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE, 0));
+        for (int i = 1; i < 5; i++) {
+            assertTrue(lm.acquireLock(t2, new HeapPageId(1, i), Permissions.READ_WRITE, 0));
+        }
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        List<TransactionId> aborted = Collections.synchronizedList(new ArrayList<>());
+        Thread w1 = request(t1, p1, Permissions.READ_WRITE, granted, aborted);
+        awaitQueue(p1, 1);
+        Thread w2 = request(t2, p0, Permissions.READ_WRITE, granted, aborted);
+        w1.join(WAIT);
+        assertEquals(Collections.singletonList(t1), aborted);
+        lm.releaseAllLock(t1);
+        w2.join(WAIT);
+        assertEquals(Collections.singletonList(t2), granted);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
@@ -0,0 +1,130 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class MemoryMappedScanTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 20;
+    private static final int TABLE_PAGES = 10 * POOL_PAGES;
+
+    private HeapFile table;
+    private List<List<Integer>> tuples;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 1000, null, tuples);
+        Database.resetBufferPool(POOL_PAGES);
+    }
+
+    /**
+     * Scan the table and return the sum of all fields.
+     */
+    private long scan() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        long sum = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            sum += ((IntField) t.getField(0)).getValue() + ((IntField) t.getField(1)).getValue();
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return sum;
+    }
+
+    private long timeScans(int rounds, long expected) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            assertEquals(expected, scan());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Scans of a table ten times the size of the buffer pool return the same
+     * tuples with and without the mapping, and the mapped scan issues no
+     * reads. Prints the best scan time of each mode.
+     */
+    @Test public void mappedScanOfLargeTable() throws Exception {
+        long expected = 0;
+        for (List<Integer> t : tuples) {
+            expected += t.get(0) + t.get(1);
+        }
+        PageStore store = table.getPageStore();
+
+        long channel = timeScans(5, expected);
+        assertTrue(store.getReads() >= TABLE_PAGES);
+
+        Database.getCatalog().setMemoryMapped(table.getId(), true);
+        assertTrue(table.isMemoryMapped());
+        long reads = store.getReads();
+        long mapped = timeScans(5, expected);
+        assertEquals(reads, store.getReads());
+
+        System.out.printf("scan of %d pages with a %d page pool: %.1f ms through the channel, %.1f ms mapped%n",
+                TABLE_PAGES, POOL_PAGES, channel / 1e6, mapped / 1e6);
+    }
+
+    /**
+     * Pages written while the table is mapped, including pages that extend
+     * the file, are read back through the mapping.
+     */
+    @Test public void writesAreVisibleThroughMapping() throws Exception {
+        table.setMemoryMapped(true);
+        HeapPageId pid = new HeapPageId(table.getId(), 3);
+        HeapPage page = (HeapPage) table.readPage(pid);
+        int empty = page.getNumEmptySlots();
+        page.deleteTuple(page.iterator().next());
+        table.writePage(page);
+        assertEquals(empty + 1, ((HeapPage) table.readPage(pid)).getNumEmptySlots());
+
+        HeapPageId next = new HeapPageId(table.getId(), TABLE_PAGES);
+        assertNull(table.readPage(next));
+        table.writePage(new HeapPage(next, HeapPage.createEmptyPageData()));
+        assertEquals(TABLE_PAGES + 1, table.numPages());
+        assertEquals(504, ((HeapPage) table.readPage(next)).getNumEmptySlots());
+    }
+
+    @Test public void catalogOption() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "mmapcatalog" + SystemTestUtil.getUUID());
+        assertTrue(dir.mkdir());
+        File schema = new File(dir, "catalog.txt");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write("plain (a int, b int)\n");
+            w.write("ref (a int pk, b int) mmap\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        assertFalse(((HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("plain"))).isMemoryMapped());
+        assertTrue(((HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("ref"))).isMemoryMapped());
+        schema.delete();
+        dir.delete();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MemoryMappedScanTest.class);
+    }
+}
@@ -0,0 +1,193 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Type;
+import HamburgerDB.index.BTreeFile;
+import HamburgerDB.index.BTreeRootPtrPage;
+import HamburgerDB.index.BTreeUtility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageSizeTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE});
+    private static final int ROWS = 20000;
+
+    private HeapFile small;
+    private HeapFile large;
+
+    private static HeapFile createTable(int pageSize) throws Exception {
+        File f = File.createTempFile("pagesize", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile hf = new HeapFile(f, TD);
+        if (pageSize > 0) {
+            hf.setPageSize(pageSize);
+        }
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static Tuple tuple(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new IntField(-i));
+        return t;
+    }
+
+    private static void fill(DbFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(tuple(i));
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static int scan(DbFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(-((IntField) t.getField(0)).getValue(), ((IntField) t.getField(1)).getValue());
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(200);
+        small = createTable(0);
+        large = createTable(16384);
+        fill(small);
+        fill(large);
+    }
+
+    /**
+     * A table with 16 KB pages holds four times as many tuples per page as
+     * one with the default page size, and reads them back.
+     */
+    @Test public void largePages() throws Exception {
+        assertEquals(BufferPool.getPageSize(), small.getPageSize());
+        assertEquals(16384, large.getPageSize());
+        assertEquals(16384L * large.numPages(), large.getFile().length());
+        assertTrue(large.numPages() * 3 < small.numPages());
+        HeapPage page = (HeapPage) large.readPage(new HeapPageId(large.getId(), 0));
+        assertEquals(16384, page.getPageData().length);
+        assertEquals(4 * ((HeapPage) small.readPage(new HeapPageId(small.getId(), 0))).getNumSlots(),
+                page.getNumSlots(), 4);
+        assertEquals(ROWS, scan(large));
+        assertEquals(ROWS, scan(small));
+    }
+
+    /**
+     * Tables with different page sizes share a buffer pool, in which a page
+     * takes as many frames as it covers.
+     */
+    @Test public void sharedPool() throws Exception {
+        int frames = 16;
+        Database.resetBufferPool(frames);
+        BufferPool pool = Database.getBufferPool();
+        assertEquals(ROWS, scan(large));
+        assertTrue(pool.getFramesInUse() <= frames);
+        int resident = 0;
+        for (int i = 0; i < large.numPages(); i++) {
+            if (pool.peekPage(new HeapPageId(large.getId(), i)) != null) {
+                resident++;
+            }
+        }
+        assertEquals(frames / 4, resident);
+        assertEquals(4 * resident, pool.getFramesInUse());
+
+        assertEquals(ROWS, scan(small));
+        assertEquals(ROWS, scan(large));
+        assertTrue(pool.getFramesInUse() <= frames);
+    }
+
+    /**
+     * B+ tree leaves follow the page size of the tree.
+     */
+    @Test public void btreeLargePages() throws Exception {
+        File f = File.createTempFile("pagesize", ".btree");
+        f.deleteOnExit();
+        BTreeFile tree = BTreeUtility.createEmptyBTreeFile(f.getPath(), 2, 0);
+        tree.setPageSize(32768);
+        int rows = 3000;
+        TransactionId tid = new TransactionId();
+        for (int i = rows - 1; i >= 0; i--) {
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        // 默认页大小下需要好几个叶子，一个32 KB的叶子就放得下所有元组
+        assertTrue(BTreeUtility.getNumTuplesPerPage(2) * 4 < rows);
+        assertEquals(1, tree.numPages());
+        assertEquals(BTreeRootPtrPage.getPageSize() + 32768L * tree.numPages(), f.length());
+
+        tid = new TransactionId();
+        DbFileIterator it = tree.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            assertEquals(new IntField(n++), it.next().getField(0));
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(rows, n);
+    }
+
+    /**
+     * The page size of a table can be given in a catalog file, and must be a
+     * power of two in the allowed range.
+     */
+    @Test public void catalogOption() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "pagesize" + SystemTestUtil.getUUID());
+        assertTrue(dir.mkdir());
+        File schema = new File(dir, "catalog.txt");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write("wide (a int, b int) pagesize=64k\n");
+            w.write("facts (a int, b int) columnar pagesize=8192\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        assertEquals(65536, Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("wide")).getPageSize());
+        assertEquals(8192, Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("facts")).getPageSize());
+        schema.delete();
+        dir.delete();
+
+        for (int bad : new int[]{256, 5000, 1 << 17}) {
+            try {
+                small.setPageSize(bad);
+                fail("page size " + bad + " accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
@@ -0,0 +1,129 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.index.BTreeFile;
+import HamburgerDB.index.BTreeUtility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageStoreTest extends SimpleDbTestBase {
+
+    @After public void tearDown() {
+        PageStore.setMaxOpenFiles(PageStore.DEFAULT_MAX_OPEN_FILES);
+    }
+
+    @Test public void readWriteAndCounters() throws Exception {
+        File f = File.createTempFile("pagestore", ".dat");
+        f.deleteOnExit();
+        PageStore store = new PageStore(f);
+        byte[] data = new byte[64];
+        Arrays.fill(data, (byte) 7);
+        store.write(128, data);
+        assertEquals(192, store.size());
+
+        byte[] buf = store.read(128, 64);
+        assertArrayEquals(data, buf);
+        // bytes past the end of the file read as zero
+        buf = store.read(160, 64);
+        assertEquals(7, buf[31]);
+        assertEquals(0, buf[32]);
+        assertNull(store.read(192, 64));
+
+        assertEquals(192, store.append(data));
+        assertEquals(256, store.size());
+        assertEquals(2, store.getWrites());
+        assertEquals(128, store.getBytesWritten());
+        assertEquals(3, store.getReads());
+        assertEquals(96, store.getBytesRead());
+        assertEquals(1, store.getOpens());
+        store.close();
+    }
+
+    @Test public void missingFileIsNotCreatedByReads() throws Exception {
+        File f = new File(System.getProperty("java.io.tmpdir"), "pagestore-" + SystemTestUtil.getUUID());
+        PageStore store = new PageStore(f);
+        assertNull(store.read(0, 16));
+        assertEquals(0, store.size());
+        assertFalse(f.exists());
+    }
+
+    /**
+     * Scanning more tables than may be open at once closes and reopens
+     * channels without failing any read.
+     */
+    @Test public void channelsAreClosedBeyondLimit() throws Exception {
+        PageStore.setMaxOpenFiles(2);
+        List<HeapFile> tables = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tables.add(SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null));
+        }
+        for (int round = 0; round < 2; round++) {
+            for (HeapFile hf : tables) {
+                for (int p = 0; p < hf.numPages(); p++) {
+                    assertNotNull(hf.readPage(new HeapPageId(hf.getId(), p)));
+                }
+                assertTrue(PageStore.getOpenFiles() <= 2);
+            }
+        }
+        for (HeapFile hf : tables) {
+            assertEquals(2, hf.getPageStore().getOpens());
+            assertEquals(6, hf.getPageStore().getReads());
+        }
+    }
+
+    /**
+     * A B+ tree scan reads each page with at most one positional read.
+     */
+    @Test public void btreeReadsThroughStore() throws Exception {
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 20000, null, null, 0);
+        Database.resetBufferPool(500);
+        PageStore store = bf.getPageStore();
+        store.resetStatistics();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = bf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(20000, count);
+        // every page is read at most once, root pointer included
+        assertTrue(store.getReads() > 0);
+        assertTrue(store.getReads() <= bf.numPages() + 1);
+        assertTrue(store.getOpens() <= 1);
+
+        // pages written by the buffer pool are read back from the same channel
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), 1), Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        hf.writePage(page);
+        HeapPage onDisk = (HeapPage) hf.readPage(page.getId());
+        assertEquals(page.getNumEmptySlots(), onDisk.getNumEmptySlots());
+        assertEquals(1, hf.getPageStore().getOpens());
+        Database.getBufferPool().transactionComplete(tid, false);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageStoreTest.class);
+    }
+}
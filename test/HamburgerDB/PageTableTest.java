@@ -0,0 +1,173 @@
+package HamburgerDB;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import HamburgerDB.storage.HeapPage;
+import HamburgerDB.storage.HeapPageId;
+import HamburgerDB.storage.Page;
+import HamburgerDB.storage.PageTable;
+import HamburgerDB.transaction.TransactionId;
+
+public class PageTableTest extends TestUtil.CreateHeapFile {
+
+    private static final int CAPACITY = 50;
+
+    private PageTable table;
+    private List<HeapPage> pages;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        table = new PageTable(CAPACITY);
+        pages = new ArrayList<>();
+        for (int i = 0; i < CAPACITY; i++) {
+            HeapPage p = new HeapPage(new HeapPageId(empty.getId(), i), HeapPage.createEmptyPageData());
+            pages.add(p);
+            table.putIfAbsent(p.getId(), p);
+        }
+    }
+
+    @Test public void getAndRemove() {
+        assertEquals(CAPACITY, table.size());
+        assertTrue(table.isFull());
+        for (HeapPage p : pages) {
+            assertSame(p, table.get(p.getId()));
+        }
+        assertSame(pages.get(3), table.remove(pages.get(3).getId()));
+        assertNull(table.get(pages.get(3).getId()));
+        assertNull(table.remove(pages.get(3).getId()));
+        assertEquals(CAPACITY - 1, table.size());
+    }
+
+    @Test public void putIfAbsentKeepsFirstPage() throws Exception {
+        HeapPage other = new HeapPage(pages.get(0).getId(), HeapPage.createEmptyPageData());
+        assertSame(pages.get(0), table.putIfAbsent(other.getId(), other));
+        table.put(other.getId(), other);
+        assertSame(other, table.get(other.getId()));
+        assertEquals(CAPACITY, table.size());
+    }
+
+    /**
+     * putIfRoom adds a page only into a free frame, and only if the copy is
+     * still current when the table is locked.
+     */
+    @Test public void putIfRoomChecksCopyUnderLock() {
+        HeapPage p = pages.get(0);
+        assertFalse(table.putIfRoom(p.getId(), p, () -> true));
+        assertSame(p, table.remove(p.getId()));
+        assertFalse(table.putIfRoom(p.getId(), p, () -> false));
+        assertNull(table.get(p.getId()));
+        assertTrue(table.putIfRoom(p.getId(), p, () -> true));
+        assertSame(p, table.get(p.getId()));
+    }
+
+    /**
+     * Dirty pages must never be chosen, and a page touched since the last
+     * sweep gets a second chance.
+     */
+    @Test public void evictSkipsDirtyAndReferencedPages() {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < CAPACITY - 1; i++) {
+            pages.get(i).markDirty(true, tid);
+        }
+        Page victim = table.evict(p -> p.isDirty() == null);
+        assertSame(pages.get(CAPACITY - 1), victim);
+        assertNull(table.evict(p -> p.isDirty() == null));
+
+        for (HeapPage p : pages) {
+            p.markDirty(false, null);
+        }
+        // the first sweep clears all reference bits; touching page 1 protects it
+        Page first = table.evict(p -> true);
+        assertNotNull(first);
+        table.get(pages.get(1).getId());
+        for (int i = 0; i < CAPACITY - 3; i++) {
+            assertNotSame(pages.get(1), table.evict(p -> true));
+        }
+    }
+
+    /**
+     * Measures hit-path throughput with 1 to N reader threads. The numbers are
+     * printed rather than asserted, since they depend on the cores available.
+     */
+    @Test public void hitPathScaling() throws Exception {
+        final int lookupsPerThread = 200000;
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        // warm up the JIT before timing anything
+        for (int i = 0; i < lookupsPerThread; i++) {
+            table.get(pages.get(i % CAPACITY).getId());
+        }
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            final AtomicLong hits = new AtomicLong();
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                Thread w = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long local = 0;
+                    for (int i = 0; i < lookupsPerThread; i++) {
+                        HeapPage p = pages.get((i + seed) % CAPACITY);
+                        if (table.get(p.getId()) == p) {
+                            local++;
+                        }
+                    }
+                    hits.addAndGet(local);
+                });
+                w.start();
+                workers.add(w);
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread w : workers) {
+                w.join();
+            }
+            long elapsed = Math.max(1, System.nanoTime() - begin);
+            assertEquals((long) threads * lookupsPerThread, hits.get());
+            System.out.printf("PageTable hit path: %d thread(s), %.1f M lookups/s%n",
+                    threads, hits.get() * 1000.0 / elapsed);
+        }
+    }
+
+    /**
+     * A pinned page is never chosen until it has been unpinned as often as
+     * it was pinned.
+     */
+    @Test public void evictSkipsPinnedPages() throws Exception {
+        HeapPage p = pages.get(0);
+        assertTrue(table.pin(p));
+        assertTrue(table.pin(p));
+        assertFalse(table.pin(new HeapPage(pages.get(1).getId(), pages.get(1).getPageData())));
+        assertEquals(2, table.getPinCount(p.getId()));
+        for (int i = 1; i < CAPACITY; i++) {
+            assertNotNull(table.evict(page -> true));
+        }
+        assertNull(table.evict(page -> true));
+        table.unpin(new HeapPage(p.getId(), p.getPageData()));
+        assertNull(table.evict(page -> true));
+        table.unpin(p);
+        assertNull(table.evict(page -> true));
+        table.unpin(p);
+        assertSame(p, table.evict(page -> true));
+        table.unpin(p);
+        assertEquals(0, table.getPinCount(p.getId()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageTableTest.class);
+    }
+}
@@ -0,0 +1,158 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageWriterTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 100;
+
+    private HeapFile hf;
+    private BufferPool pool;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        pool = Database.resetBufferPool(2 * PAGES);
+    }
+
+    /**
+     * Delete the first tuple of page pgNo on behalf of t.
+     */
+    private HeapPage dirty(Transaction t, int pgNo) throws Exception {
+        HeapPage page = (HeapPage) pool.getPage(t.getId(), new HeapPageId(hf.getId(), pgNo), Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        page.markDirty(true, t.getId());
+        return page;
+    }
+
+    private void assertOnDisk(HeapPage page) {
+        HeapPage onDisk = (HeapPage) hf.readPage(page.getId());
+        assertEquals(page.getNumEmptySlots(), onDisk.getNumEmptySlots());
+    }
+
+    /**
+     * A commit that touches 100 pages forces the log once and writes every
+     * page. Prints the commit latency next to the old page-at-a-time scheme.
+     */
+    @Test public void commitForcesLogOnce() throws Exception {
+        PageWriter writer = pool.getPageWriter();
+        // warm up
+        for (int round = 0; round < 5; round++) {
+            Transaction warm = new Transaction();
+            warm.start();
+            for (int i = 0; i < PAGES; i++) {
+                dirty(warm, i);
+            }
+            warm.commit();
+        }
+        long forces = writer.getForces();
+        long written = writer.getPagesWritten();
+
+        Transaction t = new Transaction();
+        t.start();
+        List<HeapPage> pages = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            pages.add(dirty(t, i));
+        }
+        long start = System.nanoTime();
+        t.commit();
+        long batched = System.nanoTime() - start;
+        assertEquals(1, writer.getForces() - forces);
+        assertEquals(PAGES, writer.getPagesWritten() - written);
+        for (HeapPage page : pages) {
+            assertNull(page.isDirty());
+            assertOnDisk(page);
+        }
+
+        // the same amount of work, one log force and one write per page
+        Transaction t2 = new Transaction();
+        t2.start();
+        pages.clear();
+        for (int i = 0; i < PAGES; i++) {
+            pages.add(dirty(t2, i));
+        }
+        LogFile log = Database.getLogFile();
+        for (HeapPage page : pages) {
+            log.logWrite(t2.getId(), page.getBeforeImage(), page);
+            log.force();
+        }
+        start = System.nanoTime();
+        for (HeapPage page : pages) {
+            log.logWrite(t2.getId(), page.getBeforeImage(), page);
+            log.force();
+            hf.writePage(page);
+        }
+        long perPage = System.nanoTime() - start;
+        System.out.printf("commit of %d pages: %.1f ms batched, %.1f ms page at a time%n",
+                PAGES, batched / 1e6, perPage / 1e6);
+        pool.transactionComplete(t2.getId(), false);
+    }
+
+    /**
+     * Transactions committing concurrently all reach the disk, and never use
+     * more batches than there are commits.
+     */
+    @Test public void concurrentCommits() throws Exception {
+        final int threads = 4;
+        final int pagesPerTxn = PAGES / threads;
+        final List<HeapPage> pages = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int n = 0; n < threads; n++) {
+            final int first = n * pagesPerTxn;
+            Thread w = new Thread(() -> {
+                try {
+                    Transaction t = new Transaction();
+                    t.start();
+                    List<HeapPage> mine = new ArrayList<>();
+                    for (int i = first; i < first + pagesPerTxn; i++) {
+                        mine.add(dirty(t, i));
+                    }
+                    t.commit();
+                    synchronized (pages) {
+                        pages.addAll(mine);
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            w.start();
+            workers.add(w);
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        PageWriter writer = pool.getPageWriter();
+        System.out.printf("%d concurrent commits written in %d batch(es)%n", threads, writer.getBatches());
+        assertTrue(writer.getBatches() <= threads);
+        assertEquals(writer.getBatches(), writer.getForces());
+        assertEquals(PAGES, pages.size());
+        for (HeapPage page : pages) {
+            assertOnDisk(page);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageWriterTest.class);
+    }
+}
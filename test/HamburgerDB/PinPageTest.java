@@ -0,0 +1,171 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.DbException;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Utility;
+import HamburgerDB.index.BTreeFile;
+import HamburgerDB.index.BTreePageId;
+import HamburgerDB.index.BTreeUtility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PinPageTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+
+    private HeapFile table;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = File.createTempFile("pin", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        table = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(table.numPages() > 4);
+    }
+
+    private HeapPageId page(int pgNo) {
+        return new HeapPageId(table.getId(), pgNo);
+    }
+
+    /**
+     * A pinned page stays in the pool while other pages come and go, and the
+     * pool fails only once every page is pinned.
+     */
+    @Test public void pinnedPageStays() throws Exception {
+        BufferPool pool = Database.resetBufferPool(2);
+        TransactionId tid = new TransactionId();
+        Page pinned = pool.pinPage(tid, page(0), Permissions.READ_ONLY);
+        for (int i = 1; i < table.numPages(); i++) {
+            pool.getPage(tid, page(i), Permissions.READ_ONLY);
+            assertSame(pinned, pool.peekPage(page(0)));
+        }
+        Page pinned1 = pool.pinPage(tid, page(1), Permissions.READ_ONLY);
+        try {
+            pool.getPage(tid, page(2), Permissions.READ_ONLY);
+            fail("evicted a pinned page");
+        } catch (DbException expected) {
+            // 两页都被钉住
+        }
+        pool.unpinPage(tid, pinned1);
+        pool.unpinPage(tid, pinned);
+        pool.getPage(tid, page(2), Permissions.READ_ONLY);
+        pool.getPage(tid, page(3), Permissions.READ_ONLY);
+        assertNull(pool.peekPage(page(0)));
+        pool.transactionComplete(tid);
+    }
+
+    /**
+     * A heap scan pins the page it is on and nothing else, and releases it
+     * when it moves on or is closed.
+     */
+    @Test public void scanPinsCurrentPage() throws Exception {
+        BufferPool pool = Database.resetBufferPool(2);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        it.next();
+        assertEquals(1, pool.getPinCount(page(0)));
+        int n = 1;
+        int pgNo = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            n++;
+            int current = t.getRecordId().getPageId().getPageNumber();
+            if (current != pgNo) {
+                assertEquals(0, pool.getPinCount(page(pgNo)));
+                assertEquals(1, pool.getPinCount(page(current)));
+                pgNo = current;
+            }
+        }
+        assertEquals(ROWS, n);
+        assertEquals(0, pool.getPinCount(page(pgNo)));
+        it.rewind();
+        assertEquals(1, pool.getPinCount(page(0)));
+        it.close();
+        assertEquals(0, pool.getPinCount(page(0)));
+        pool.transactionComplete(tid);
+    }
+
+    /**
+     * The pins of an iterator that is never closed are undone when its
+     * transaction completes, and closing it afterwards does not touch the
+     * pin another transaction took on the page read back after an abort.
+     */
+    @Test public void pinsEndWithTransaction() throws Exception {
+        BufferPool pool = Database.resetBufferPool(4);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        pool.deleteTuple(tid, it.next());
+        assertEquals(1, pool.getPinCount(page(0)));
+        pool.transactionComplete(tid, false);
+        assertEquals(0, pool.getPinCount(page(0)));
+
+        TransactionId other = new TransactionId();
+        Page page = pool.pinPage(other, page(0), Permissions.READ_ONLY);
+        it.close();
+        assertEquals(1, pool.getPinCount(page(0)));
+        pool.unpinPage(other, page);
+        assertEquals(0, pool.getPinCount(page(0)));
+        pool.transactionComplete(other);
+    }
+
+    /**
+     * B+ tree inserts and scans leave no page pinned.
+     */
+    @Test public void btreeReleasesPins() throws Exception {
+        File f = File.createTempFile("pin", ".btree");
+        f.deleteOnExit();
+        BTreeFile tree = BTreeUtility.createEmptyBTreeFile(f.getPath(), 2, 0);
+        BufferPool pool = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            pool.insertTuple(tid, tree.getId(), Utility.getHeapTuple(i, 2));
+        }
+        pool.transactionComplete(tid);
+        assertTrue(tree.numPages() > 8);
+
+        tid = new TransactionId();
+        DbFileIterator it = tree.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            assertEquals(new IntField(n++), it.next().getField(0));
+        }
+        it.close();
+        pool.transactionComplete(tid);
+        assertEquals(ROWS, n);
+        for (int i = 1; i <= tree.numPages(); i++) {
+            for (int categ : new int[]{BTreePageId.LEAF, BTreePageId.INTERNAL}) {
+                assertEquals(0, pool.getPinCount(new BTreePageId(tree.getId(), i, categ)));
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PinPageTest.class);
+    }
+}
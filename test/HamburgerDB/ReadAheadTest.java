@@ -0,0 +1,180 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Utility;
+import HamburgerDB.index.BTreeFile;
+import HamburgerDB.index.BTreeUtility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 40;
+
+    /**
+     * A heap file whose reads take a while, like a cold disk.
+     */
+    private static class SlowHeapFile extends HeapFile {
+        private final long delayMillis;
+
+        SlowHeapFile(File f, TupleDesc td, long delayMillis) {
+            super(f, td);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    private HeapFile table;
+    private List<List<Integer>> tuples;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * PAGES, 1000, null, tuples);
+        table = new SlowHeapFile(f, Utility.getTupleDesc(2), 2);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        // the table must fit in the pool so that the scan does not use a ring
+        Database.resetBufferPool(2 * PAGES);
+    }
+
+    @After public void tearDown() {
+        ReadAhead.setEnabled(true);
+        ReadAhead.resetWindow();
+    }
+
+    /**
+     * Scan the table, spending some time on every page, and return the time
+     * taken in milliseconds.
+     */
+    private long scan() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        long start = System.nanoTime();
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            if (++count % 504 == 0) {
+                Thread.sleep(2);
+            }
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(tuples.size(), count);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    @Test public void sequentialScanIsPrefetched() throws Exception {
+        ReadAhead.setEnabled(false);
+        long without = scan();
+
+        ReadAhead.setEnabled(true);
+        BufferPool pool = Database.resetBufferPool(2 * PAGES);
+        long with = scan();
+        ReadAhead readAhead = pool.getReadAhead();
+        System.out.printf("scan of %d pages: %d ms without read-ahead, %d ms with (%d prefetched, %d used)%n",
+                PAGES, without, with, readAhead.getIssued(), readAhead.getUsed());
+        assertTrue(readAhead.getUsed() >= PAGES / 2);
+        assertTrue(readAhead.getUsed() <= readAhead.getIssued());
+    }
+
+    @Test public void windowAdapts() throws Exception {
+        ReadAhead.setWindow(2, 8);
+        BufferPool pool = Database.getBufferPool();
+        List<PageId> order = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            order.add(new HeapPageId(table.getId(), i));
+        }
+        ReadAhead.Stream stream = pool.getReadAhead().newStream(table, (current, count) -> {
+            int from = current.getPageNumber() + 1;
+            return new ArrayList<>(order.subList(Math.min(from, PAGES), Math.min(from + count, PAGES)));
+        });
+        stream.access(order.get(0));
+        assertEquals(0, stream.getWindow());
+        stream.access(order.get(1));
+        assertEquals(2, stream.getWindow());
+        int max = 0;
+        for (int i = 2; i < 20; i++) {
+            stream.access(order.get(i));
+            assertTrue(stream.getWindow() >= 2);
+            max = Math.max(max, stream.getWindow());
+        }
+        assertEquals(8, max);
+        // a jump backwards is not sequential
+        stream.access(order.get(3));
+        assertEquals(0, stream.getWindow());
+        stream.close();
+    }
+
+    @Test public void stagedPageIsDroppedOnDiscard() throws Exception {
+        BufferPool pool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        ReadAhead.Stream stream = pool.getReadAhead().newStream(table, (current, count) -> {
+            List<PageId> res = new ArrayList<>();
+            for (int i = 1; i <= count && current.getPageNumber() + i < PAGES; i++) {
+                res.add(new HeapPageId(table.getId(), current.getPageNumber() + i));
+            }
+            return res;
+        });
+        stream.access(new HeapPageId(table.getId(), 0));
+        stream.access(new HeapPageId(table.getId(), 1));
+        long issued = pool.getReadAhead().getIssued();
+        assertTrue(issued > 0);
+        pool.discardPage(new HeapPageId(table.getId(), 2));
+        pool.getPage(tid, new HeapPageId(table.getId(), 2), Permissions.READ_ONLY);
+        pool.getPage(tid, new HeapPageId(table.getId(), 3), Permissions.READ_ONLY);
+        assertEquals(1, pool.getReadAhead().getUsed());
+        stream.close();
+        pool.transactionComplete(tid);
+    }
+
+    @Test public void btreeLeafScanIsPrefetched() throws Exception {
+        List<List<Integer>> btreeTuples = new ArrayList<>();
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 20000, null, btreeTuples, 0);
+        BufferPool pool = Database.resetBufferPool(500);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = bf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        pool.transactionComplete(tid);
+        assertEquals(btreeTuples.size(), count);
+        System.out.printf("B+ tree scan: %d leaves prefetched, %d used%n",
+                pool.getReadAhead().getIssued(), pool.getReadAhead().getUsed());
+        assertTrue(pool.getReadAhead().getUsed() > 0);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,171 @@
+package HamburgerDB;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import HamburgerDB.storage.HeapPage;
+import HamburgerDB.storage.HeapPageId;
+import HamburgerDB.storage.LruKPolicy;
+import HamburgerDB.storage.Page;
+import HamburgerDB.storage.PageId;
+import HamburgerDB.storage.PageTable;
+import HamburgerDB.storage.ReplacementPolicy;
+import HamburgerDB.storage.TwoQueuePolicy;
+import HamburgerDB.transaction.TransactionId;
+
+public class ReplacementPolicyTest extends TestUtil.CreateHeapFile {
+
+    private static final int CAPACITY = 20;
+    private static final int HOT = 5;
+
+    private final Map<Integer, HeapPage> pages = new HashMap<>();
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    private HeapPage page(int pgNo) throws Exception {
+        HeapPage p = pages.get(pgNo);
+        if (p == null) {
+            p = new HeapPage(new HeapPageId(empty.getId(), pgNo), HeapPage.createEmptyPageData());
+            pages.put(pgNo, p);
+        }
+        return p;
+    }
+
+    /**
+     * Read a page the way BufferPool.getPage does.
+     *
+     * @return true on a hit
+     */
+    private boolean access(PageTable table, int pgNo) throws Exception {
+        HeapPage p = page(pgNo);
+        if (table.get(p.getId()) != null) {
+            return true;
+        }
+        if (table.isFull()) {
+            assertNotNull(table.evict(page -> page.isDirty() == null));
+        }
+        table.putIfAbsent(p.getId(), p);
+        return false;
+    }
+
+    @Test public void createByName() {
+        assertEquals("clock", ReplacementPolicy.create("clock", CAPACITY).toString());
+        assertEquals("lru", ReplacementPolicy.create("LRU", CAPACITY).toString());
+        assertEquals("lru-2", ReplacementPolicy.create("lru-k", CAPACITY).toString());
+        assertEquals(3, ((LruKPolicy) ReplacementPolicy.create("lru-3", CAPACITY)).getK());
+        assertTrue(ReplacementPolicy.create("2q", CAPACITY) instanceof TwoQueuePolicy);
+        try {
+            ReplacementPolicy.create("mru", CAPACITY);
+            fail("unknown policy accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * No policy may pick a page that the buffer pool refuses to evict.
+     */
+    @Test public void victimsAreEvictable() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (String name : new String[]{"clock", "lru", "2q", "lru-2"}) {
+            pages.clear();
+            PageTable table = new PageTable(CAPACITY, ReplacementPolicy.create(name, CAPACITY));
+            for (int i = 0; i < CAPACITY; i++) {
+                access(table, i);
+                access(table, i);
+            }
+            for (int i = 1; i < CAPACITY; i++) {
+                page(i).markDirty(true, tid);
+            }
+            Page victim = table.evict(p -> p.isDirty() == null);
+            assertSame(name, page(0), victim);
+            assertNull(name, table.evict(p -> p.isDirty() == null));
+            assertEquals(name, CAPACITY - 1, table.size());
+        }
+    }
+
+    /**
+     * A hot working set is established, a large sequential scan comes through
+     * and the hot set is read again. 2Q and LRU-2 must keep the hot pages
+     * resident, while plain LRU loses all of them.
+     */
+    @Test public void scanResistance() throws Exception {
+        Map<String, Integer> hotMisses = new HashMap<>();
+        for (String name : new String[]{"clock", "lru", "2q", "lru-2"}) {
+            pages.clear();
+            PageTable table = new PageTable(CAPACITY, ReplacementPolicy.create(name, CAPACITY));
+            int cold = 1000;
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < HOT; i++) {
+                    access(table, i);
+                }
+                for (int i = 0; i < 4; i++) {
+                    access(table, cold++);
+                }
+            }
+            // the scan
+            int hits = 0;
+            for (int i = 0; i < 10 * CAPACITY; i++) {
+                access(table, cold++);
+            }
+            for (int i = 0; i < HOT; i++) {
+                if (access(table, i)) {
+                    hits++;
+                }
+            }
+            hotMisses.put(name, HOT - hits);
+            System.out.printf("%s: %d of %d hot pages survived the scan%n", name, hits, HOT);
+        }
+        assertEquals(HOT, (int) hotMisses.get("lru"));
+        assertEquals(0, (int) hotMisses.get("2q"));
+        assertEquals(0, (int) hotMisses.get("lru-2"));
+    }
+
+    /**
+     * Every policy lists each resident page once, and a page that was read
+     * again recently before the pages that were not.
+     */
+    @Test public void recencyOrder() throws Exception {
+        for (String name : new String[]{"clock", "lru", "2q", "lru-2"}) {
+            pages.clear();
+            PageTable table = new PageTable(CAPACITY, ReplacementPolicy.create(name, CAPACITY));
+            for (int i = 0; i < CAPACITY; i++) {
+                access(table, i);
+            }
+            // 时钟转一圈清掉所有引用位；2Q中页0被淘汰后再读进入Am
+            access(table, CAPACITY);
+            access(table, 0);
+            List<PageId> order = table.recentPages();
+            assertEquals(name, CAPACITY, order.size());
+            assertEquals(name, CAPACITY, new HashSet<>(order).size());
+            // 时钟只知道引用位，页0和刚读入的页都排在前面
+            assertTrue(name, order.indexOf(page(0).getId()) < 2);
+            assertTrue(name, order.indexOf(page(0).getId()) < order.indexOf(page(5).getId()));
+        }
+        pages.clear();
+        PageTable lru = new PageTable(CAPACITY, ReplacementPolicy.create("lru", CAPACITY));
+        for (int i = CAPACITY - 1; i >= 0; i--) {
+            access(lru, i);
+        }
+        List<PageId> order = lru.recentPages();
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(page(i).getId(), order.get(i));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,222 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Type;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+
+    private HeapFile slotted;
+    private HeapFile fixed;
+
+    private static HeapFile createTable(HeapPageFormat format) throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile hf = new HeapFile(f, TD);
+        hf.setPageFormat(format);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static String name(int i) {
+        StringBuilder sb = new StringBuilder("n");
+        for (int j = 0; j < i % 20; j++) {
+            sb.append((char) ('a' + j));
+        }
+        return sb.toString();
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        slotted = createTable(HeapPageFormat.SLOTTED);
+        fixed = createTable(HeapPageFormat.FIXED);
+        Database.resetBufferPool(100);
+    }
+
+    private HeapPage emptyPage() throws Exception {
+        return new HeapPage(new HeapPageId(slotted.getId(), 0), HeapPage.createEmptyPageData());
+    }
+
+    /**
+     * Tuples with strings of different lengths survive serialization, and a
+     * single field can be read without decoding the tuple.
+     */
+    @Test public void roundTrip() throws Exception {
+        HeapPage page = emptyPage();
+        assertEquals(0, page.getNumSlots());
+        int capacity = page.getFreeSpace();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Tuple t = tuple(i, name(i));
+            page.insertTuple(t);
+            assertEquals(i, t.getRecordId().getTupleNumber());
+            tuples.add(t);
+        }
+        // 每个元组只占4字节的目录项、4字节的int和2字节长度加上字符串本身
+        int used = 0;
+        for (int i = 0; i < 30; i++) {
+            used += 4 + 4 + 2 + name(i).length();
+        }
+        assertEquals(capacity - used, page.getFreeSpace());
+
+        HeapPage copy = new HeapPage(page.getId(), page.getPageData());
+        assertEquals(30, copy.getNumSlots());
+        for (Tuple t : tuples) {
+            int slot = t.getRecordId().getTupleNumber();
+            assertEquals(t, copy.getTuple(slot));
+            assertEquals(t.getField(1), copy.getField(slot, 1));
+        }
+        int n = 0;
+        for (Tuple t : (Iterable<Tuple>) copy::iterator) {
+            assertEquals(tuples.get(n++), t);
+        }
+        assertEquals(30, n);
+    }
+
+    /**
+     * Deleted records leave holes that are reclaimed by compacting the page
+     * when an insert needs the room; record ids do not change.
+     */
+    @Test public void compaction() throws Exception {
+        HeapPage page = emptyPage();
+        List<Tuple> tuples = new ArrayList<>();
+        Tuple t;
+        while (page.getFreeSpace() >= page.spaceNeeded(t = tuple(tuples.size(), name(19)))) {
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        int full = page.getFreeSpace();
+        // 删掉一半，空出来的都是洞
+        List<Tuple> kept = new ArrayList<>();
+        for (int i = 0; i < tuples.size(); i++) {
+            if (i % 2 == 0) {
+                page.deleteTuple(tuples.get(i));
+            } else {
+                kept.add(tuples.get(i));
+            }
+        }
+        assertTrue(page.getFreeSpace() > full);
+
+        // 更长的字符串只有整理之后才放得下
+        String longer = name(19) + name(19) + name(19);
+        int added = 0;
+        while (page.getFreeSpace() >= page.spaceNeeded(t = tuple(-1, longer))) {
+            page.insertTuple(t);
+            assertEquals(0, t.getRecordId().getTupleNumber() % 2);
+            added++;
+        }
+        assertTrue(added > tuples.size() / 6);
+        for (Tuple k : kept) {
+            assertEquals(k, page.getTuple(k.getRecordId().getTupleNumber()));
+        }
+
+        HeapPage copy = new HeapPage(page.getId(), page.getPageData());
+        for (Tuple k : kept) {
+            assertEquals(k, copy.getTuple(k.getRecordId().getTupleNumber()));
+        }
+        assertEquals(page.getFreeSpace(), copy.getFreeSpace());
+    }
+
+    /**
+     * A string-heavy table takes several times fewer pages in the slotted
+     * format, and scans return the same tuples.
+     */
+    @Test public void fewerPages() throws Exception {
+        final int n = 5000;
+        Database.resetBufferPool(500);
+        TransactionId tid = new TransactionId();
+        List<Tuple> a = new ArrayList<>();
+        List<Tuple> b = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            a.add(tuple(i, name(i)));
+            b.add(tuple(i, name(i)));
+        }
+        Database.getBufferPool().insertTuples(tid, slotted.getId(), a);
+        Database.getBufferPool().insertTuples(tid, fixed.getId(), b);
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(slotted.numPages() * 4 < fixed.numPages());
+        System.out.printf("%d tuples with short strings: %d fixed pages, %d slotted pages%n",
+                n, fixed.numPages(), slotted.numPages());
+
+        Database.resetBufferPool(100);
+        tid = new TransactionId();
+        DbFileIterator it = slotted.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int i = ((IntField) t.getField(0)).getValue();
+            assertEquals(name(i), ((StringField) t.getField(1)).getValue());
+            count++;
+        }
+        it.close();
+        assertEquals(n, count);
+
+        // 删除后的空间会被后面的插入重新使用
+        int pages = slotted.numPages();
+        it.open();
+        List<Tuple> victims = new ArrayList<>();
+        while (it.hasNext()) {
+            victims.add(it.next());
+        }
+        it.close();
+        for (Tuple t : victims.subList(0, 500)) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        List<Tuple> more = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            more.add(tuple(i, name(i)));
+        }
+        Database.getBufferPool().insertTuples(tid, slotted.getId(), more);
+        assertEquals(pages, slotted.numPages());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void catalogOption() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "slottedcatalog" + SystemTestUtil.getUUID());
+        assertTrue(dir.mkdir());
+        File schema = new File(dir, "catalog.txt");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write("plain (a int, b string)\n");
+            w.write("names (a int pk, b string) slotted\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        assertEquals(HeapPageFormat.FIXED, ((HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("plain"))).getPageFormat());
+        assertEquals(HeapPageFormat.SLOTTED, ((HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("names"))).getPageFormat());
+        schema.delete();
+        dir.delete();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
@@ -0,0 +1,122 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Utility;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.transaction.Transaction;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class StealTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+    private static final int POOL_PAGES = 4;
+
+    private File file;
+    private HeapFile table;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("steal", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        table = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(table.numPages() > 2 * POOL_PAGES);
+        Database.resetBufferPool(POOL_PAGES);
+    }
+
+    private List<Tuple> scan(TransactionId tid) throws Exception {
+        List<Tuple> res = new ArrayList<>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            res.add(it.next());
+        }
+        it.close();
+        return res;
+    }
+
+    private int count() throws Exception {
+        TransactionId tid = new TransactionId();
+        int n = scan(tid).size();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    private void deleteAll(TransactionId tid) throws Exception {
+        for (Tuple t : scan(tid)) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+    }
+
+    /**
+     * A transaction that dirties more pages than the pool holds commits.
+     */
+    @Test public void largeTransactionCommits() throws Exception {
+        TransactionId tid = new TransactionId();
+        deleteAll(tid);
+        assertTrue(Database.getBufferPool().getSteals() > 0);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(POOL_PAGES);
+        assertEquals(0, count());
+    }
+
+    /**
+     * Aborting a transaction restores the pages that were written back
+     * before it finished, whether or not it was started.
+     */
+    @Test public void abortRestoresStolenPages() throws Exception {
+        TransactionId tid = new TransactionId();
+        deleteAll(tid);
+        assertTrue(Database.getBufferPool().getSteals() > 0);
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(ROWS, count());
+
+        Transaction t = new Transaction();
+        t.start();
+        deleteAll(t.getId());
+        t.abort();
+        Database.resetBufferPool(POOL_PAGES);
+        assertEquals(ROWS, count());
+    }
+
+    /**
+     * Recovery undoes the written back pages of a transaction that had not
+     * committed at the crash.
+     */
+    @Test public void recoveryUndoesStolenPages() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        deleteAll(t.getId());
+        assertTrue(Database.getBufferPool().getSteals() > 0);
+
+        Database.reset();
+        table = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+        assertEquals(ROWS, count());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StealTest.class);
+    }
+}
@@ -0,0 +1,202 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Utility;
+import HamburgerDB.execution.OpIterator;
+import HamburgerDB.optimizer.LogicalPlan;
+import HamburgerDB.optimizer.TableStats;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.transaction.LockManager;
+import HamburgerDB.transaction.LockMode;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class TableLockTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 20000;
+
+    private HeapFile table;
+    private String name;
+    private Map<String, TableStats> stats;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = File.createTempFile("tablelock", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        table = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(table.numPages() > 10);
+        name = Database.getCatalog().getTableName(table.getId());
+        stats = new HashMap<>();
+        stats.put(name, new TableStats(table.getId(), 1000));
+        // 统计信息的扫描不会提交，丢掉它留下的锁
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        LogicalPlan.setTableLockPages(10);
+    }
+
+    @After public void tearDown() {
+        LogicalPlan.setTableLockPages(LogicalPlan.DEFAULT_TABLE_LOCK_PAGES);
+    }
+
+    private int scan(TransactionId tid) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addProjectField("*", null);
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            n++;
+        }
+        plan.close();
+        return n;
+    }
+
+    /**
+     * A scan of more pages than the threshold takes one shared table lock
+     * and no page lock; a smaller one locks each page under IS.
+     */
+    @Test public void plannerPicksGranularity() throws Exception {
+        LockManager lm = Database.getBufferPool().getLockManager();
+        TransactionId tid = new TransactionId();
+        assertEquals(ROWS, scan(tid));
+        assertEquals(LockMode.S, lm.getTableLockMode(tid, table.getId()));
+        assertTrue(lm.getLockedPages(tid).isEmpty());
+        assertTrue(lm.holdsLock(tid, new HeapPageId(table.getId(), 0)));
+        Database.getBufferPool().transactionComplete(tid);
+
+        LogicalPlan.setTableLockPages(Integer.MAX_VALUE);
+        tid = new TransactionId();
+        assertEquals(ROWS, scan(tid));
+        assertEquals(LockMode.IS, lm.getTableLockMode(tid, table.getId()));
+        assertEquals(table.numPages(), lm.getLockedPages(tid).size());
+        Database.getBufferPool().transactionComplete(tid);
+        assertNull(lm.getTableLockMode(tid, table.getId()));
+    }
+
+    /**
+     * A table lock keeps writers out of every page until the scan commits,
+     * while other readers share it.
+     */
+    @Test public void tableLockBlocksWriters() throws Exception {
+        LockManager lm = Database.getBufferPool().getLockManager();
+        TransactionId reader = new TransactionId();
+        scan(reader);
+        PageId last = new HeapPageId(table.getId(), table.numPages() - 1);
+        TransactionId writer = new TransactionId();
+        assertFalse(lm.acquireLock(writer, last, Permissions.READ_WRITE, 50));
+        TransactionId other = new TransactionId();
+        assertTrue(lm.acquireLock(other, last, Permissions.READ_ONLY, 0));
+        Database.getBufferPool().transactionComplete(other);
+
+        Database.getBufferPool().transactionComplete(reader);
+        assertTrue(lm.acquireLock(writer, last, Permissions.READ_WRITE, 0));
+        assertEquals(LockMode.IX, lm.getTableLockMode(writer, table.getId()));
+        Database.getBufferPool().transactionComplete(writer);
+    }
+
+    /**
+     * An insert into a page with room write-locks the page, so it holds IX
+     * on the table, which conflicts with the S lock of a table scan.
+     */
+    @Test public void insertLocksPageForWriting() throws Exception {
+        LockManager lm = Database.getBufferPool().getLockManager();
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(ROWS, 2));
+        assertEquals(LockMode.IX, lm.getTableLockMode(tid, table.getId()));
+        assertEquals(table.numPages() - 1, lm.getLockedPages(tid).iterator().next().getPageNumber());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An insert into a full table appends a page, but writes it only under
+     * IX on the table and an X lock on the page: it waits for a scan's table
+     * lock, and its tuples are gone after an abort.
+     */
+    @Test public void insertIntoFullTable() throws Exception {
+        LockManager lm = Database.getBufferPool().getLockManager();
+        TransactionId tid = new TransactionId();
+        HeapPage last = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(table.getId(), table.numPages() - 1), Permissions.READ_ONLY);
+        List<Tuple> fill = new ArrayList<>();
+        for (int i = 0; i < last.getNumEmptySlots(); i++) {
+            fill.add(Utility.getHeapTuple(ROWS + i, 2));
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), fill);
+        Database.getBufferPool().transactionComplete(tid);
+        int pages = table.numPages();
+        int rows = ROWS + fill.size();
+
+        TransactionId reader = new TransactionId();
+        assertEquals(rows, scan(reader));
+        assertEquals(LockMode.S, lm.getTableLockMode(reader, table.getId()));
+        TransactionId writer = new TransactionId();
+        Thread t = new Thread(() -> {
+            try {
+                Database.getBufferPool().insertTuple(writer, table.getId(), Utility.getHeapTuple(-1, 2));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        t.start();
+        t.join(200);
+        assertTrue(t.isAlive());
+        assertNull(lm.getTableLockMode(writer, table.getId()));
+        Database.getBufferPool().transactionComplete(reader);
+        t.join();
+        assertEquals(LockMode.IX, lm.getTableLockMode(writer, table.getId()));
+        assertEquals(Collections.singleton(new HeapPageId(table.getId(), pages)), lm.getLockedPages(writer));
+        Database.getBufferPool().transactionComplete(writer, false);
+
+        tid = new TransactionId();
+        assertEquals(rows, scan(tid));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A transaction that scans the table and then writes to it holds SIX,
+     * with X locks on the pages it writes only.
+     */
+    @Test public void scanThenWrite() throws Exception {
+        LockManager lm = Database.getBufferPool().getLockManager();
+        TransactionId tid = new TransactionId();
+        scan(tid);
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        Database.getBufferPool().deleteTuple(tid, it.next());
+        it.close();
+        assertEquals(LockMode.SIX, lm.getTableLockMode(tid, table.getId()));
+        assertEquals(1, lm.getLockedPages(tid).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TableLockTest.class);
+    }
+}
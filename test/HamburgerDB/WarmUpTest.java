@@ -0,0 +1,142 @@
+package HamburgerDB;
+
+import HamburgerDB.common.Database;
+import HamburgerDB.common.Permissions;
+import HamburgerDB.common.Type;
+import HamburgerDB.storage.*;
+import HamburgerDB.systemtest.SimpleDbTestBase;
+import HamburgerDB.systemtest.SystemTestUtil;
+import HamburgerDB.transaction.TransactionId;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class WarmUpTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE});
+    private static final int ROWS = 20000;
+
+    private HeapFile table;
+    private File hot;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = File.createTempFile("warmup", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        table = new HeapFile(f, TD);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(TD);
+            t.setField(0, new IntField(i));
+            t.setField(1, new IntField(-i));
+            tuples.add(t);
+        }
+        Database.getBufferPool().insertTuples(tid, table.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        hot = File.createTempFile("warmup", ".hot");
+        hot.deleteOnExit();
+    }
+
+    private void read(int pgNo) throws Exception {
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), pgNo), Permissions.READ_ONLY);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The pages saved before a restart are back in the pool once the warm-up
+     * is done, and reading them again is a hit.
+     */
+    @Test public void reloadsSavedPages() throws Exception {
+        assertTrue(table.numPages() > 10);
+        Database.resetBufferPool(50);
+        for (int i = 0; i < 10; i++) {
+            read(i);
+        }
+        Database.getBufferPool().saveHotPages(hot);
+        assertEquals(10, HotPageSet.read(hot).size());
+
+        Database.resetBufferPool(50);
+        BufferPool pool = Database.getBufferPool();
+        assertEquals(Integer.valueOf(10), pool.warmUp(hot).get(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(pool.peekPage(new HeapPageId(table.getId(), i)));
+        }
+        pool.resetStatistics();
+        for (int i = 0; i < 10; i++) {
+            read(i);
+        }
+        assertEquals(0, pool.getMisses());
+    }
+
+    /**
+     * A smaller pool loads only the most recently used of the saved pages,
+     * and a missing file loads nothing.
+     */
+    @Test public void smallerPool() throws Exception {
+        // LRU知道精确的使用顺序
+        System.setProperty(ReplacementPolicy.POLICY_PROPERTY, "lru");
+        try {
+            Database.resetBufferPool(50);
+        } finally {
+            System.clearProperty(ReplacementPolicy.POLICY_PROPERTY);
+        }
+        for (int i = 0; i < 10; i++) {
+            read(i);
+        }
+        // 页9最先读，其余按0..8最近使用
+        read(9);
+        for (int i = 0; i < 9; i++) {
+            read(i);
+        }
+        Database.getBufferPool().saveHotPages(hot);
+
+        Database.resetBufferPool(4);
+        BufferPool pool = Database.getBufferPool();
+        assertEquals(Integer.valueOf(4), pool.warmUp(hot).get(10, TimeUnit.SECONDS));
+        assertTrue(pool.getFramesInUse() <= 4);
+        assertNull(pool.peekPage(new HeapPageId(table.getId(), 9)));
+        assertNotNull(pool.peekPage(new HeapPageId(table.getId(), 8)));
+
+        assertTrue(hot.delete());
+        Database.resetBufferPool(4);
+        assertEquals(Integer.valueOf(0), Database.getBufferPool().warmUp(hot).get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A checkpoint saves the pages of the pool next to the log.
+     */
+    @Test public void checkpointSaves() throws Exception {
+        Database.resetBufferPool(50);
+        for (int i = 0; i < 5; i++) {
+            read(i);
+        }
+        File file = Database.getLogFile().getHotPagesFile();
+        file.deleteOnExit();
+        Database.getLogFile().logCheckpoint();
+        assertTrue(file.exists());
+        List<PageId> pages = HotPageSet.read(file);
+        assertEquals(5, pages.size());
+        assertEquals(5, new HashSet<>(pages).size());
+        assertTrue(pages.contains(new HeapPageId(table.getId(), 4)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(WarmUpTest.class);
+    }
+}